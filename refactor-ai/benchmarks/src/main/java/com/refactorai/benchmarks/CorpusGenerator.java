@@ -0,0 +1,99 @@
+package com.refactorai.benchmarks;
+
+/**
+ * Builds benchmark inputs of a given size from code in the style of the BadCodeExample and
+ * GoodCodeExample samples: long, deeply nested methods full of magic numbers, string
+ * concatenation in loops and empty catch blocks, alternating with short, clean ones. Output is
+ * deterministic, so runs with the same size analyze the same source.
+ */
+public final class CorpusGenerator {
+
+    private CorpusGenerator() {
+    }
+
+    /**
+     * One compilation unit of at least {@code lines} lines.
+     */
+    public static String generate(int lines) {
+        StringBuilder code = new StringBuilder(lines * 40);
+        code.append("package com.refactorai.samples;\n\n")
+                .append("import java.util.List;\n")
+                .append("import java.util.Map;\n")
+                .append("import java.util.ArrayList;\n\n")
+                .append("public class GeneratedExample {\n\n");
+
+        int written = 7;
+        for (int block = 0; written < lines - 1; block++) {
+            written += block % 2 == 0 ? appendBadMethod(code, block) : appendGoodMethods(code, block);
+        }
+
+        return code.append("}\n").toString();
+    }
+
+    /**
+     * Same as {@link #generate(int)} with every tenth line of each method body changed, as an
+     * LLM refactoring of the whole file might.
+     */
+    public static String edit(String source) {
+        String[] lines = source.split("\n", -1);
+        for (int i = 0; i < lines.length; i += 10) {
+            if (lines[i].startsWith("        ")) {
+                lines[i] = lines[i].replace("System.out.println", "log.info");
+            }
+        }
+        return String.join("\n", lines);
+    }
+
+    private static int appendBadMethod(StringBuilder code, int block) {
+        code.append("    // This is a LONG method (>30 lines)\n")
+                .append("    public void processOrder").append(block).append("(String orderId) {\n")
+                .append("        System.out.println(\"Processing order: \" + orderId);\n")
+                .append("        String summary = \"\";\n")
+                .append("        if (orderId != null) {\n")
+                .append("            if (orderId.length() > 0) {\n")
+                .append("                if (orderId.startsWith(\"ORD\")) {\n")
+                .append("                    if (orderId.contains(\"-\")) {\n")
+                .append("                        System.out.println(\"Valid order format\");\n")
+                .append("                    }\n")
+                .append("                }\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("        int discount = 100 - ").append(block % 50 + 5).append(";\n")
+                .append("        double taxRate = 0.08;\n")
+                .append("        int maxRetries = 3;\n")
+                .append("        for (int i = 0; i < 10; i++) {\n")
+                .append("            summary += \"Line \" + i;\n")
+                .append("        }\n")
+                .append("        for (int i = 0; i < 20; i++) {\n")
+                .append("            System.out.println(\"More lines \" + i);\n")
+                .append("        }\n")
+                .append("        try {\n")
+                .append("            Thread.sleep(").append(block + 10).append(");\n")
+                .append("        } catch (InterruptedException e) {\n")
+                .append("        }\n")
+                .append("        while (maxRetries > 0) {\n")
+                .append("            maxRetries--;\n")
+                .append("        }\n")
+                .append("        System.out.println(\"Discount \" + discount + \" tax \" + taxRate);\n")
+                .append("        System.out.println(summary);\n")
+                .append("        System.out.println(\"Order processed\");\n")
+                .append("        System.out.println(\"Thank you\");\n")
+                .append("        System.out.println(\"Goodbye\");\n")
+                .append("    }\n\n");
+        return 37;
+    }
+
+    private static int appendGoodMethods(StringBuilder code, int block) {
+        code.append("    // This is a SHORT method (good practice)\n")
+                .append("    public void processOrder").append(block).append("(String orderId) {\n")
+                .append("        if (isValidOrder").append(block).append("(orderId)) {\n")
+                .append("            System.out.println(\"Processing: \" + orderId);\n")
+                .append("        }\n")
+                .append("    }\n\n")
+                .append("    // Small, focused helper method\n")
+                .append("    private boolean isValidOrder").append(block).append("(String orderId) {\n")
+                .append("        return orderId != null && orderId.length() > 0;\n")
+                .append("    }\n\n");
+        return 11;
+    }
+}
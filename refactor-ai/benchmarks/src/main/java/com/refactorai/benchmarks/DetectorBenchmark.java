@@ -0,0 +1,82 @@
+package com.refactorai.benchmarks;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.refactorai.analyzer.DeepNestingDetector;
+import com.refactorai.analyzer.EmptyCatchBlockDetector;
+import com.refactorai.analyzer.GodClassDetector;
+import com.refactorai.analyzer.LongMethodDetector;
+import com.refactorai.analyzer.MagicNumberDetector;
+import com.refactorai.analyzer.SmellDetector;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.analyzer.StringConcatenationInLoopDetector;
+import com.refactorai.analyzer.UnusedImportDetector;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.service.ParserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each detector on its own over a pre-parsed unit, plus all of them in the engine's shared walk.
+ * The engine runs sequentially and without the method cache, so only detection is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DetectorBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int lines;
+
+    @Param({"LongMethod", "DeepNesting", "UnusedImport", "MagicNumber", "GodClass",
+            "StringConcatenationInLoop", "EmptyCatchBlock", "All"})
+    public String detector;
+
+    private SmellDetectorEngine engine;
+    private CompilationUnit cu;
+
+    @Setup
+    public void setUp() {
+        ParserService parserService = new ParserService();
+        cu = parserService.parseCode(CorpusGenerator.generate(lines)).orElseThrow();
+
+        List<SmellDetector> detectors = allDetectors(parserService);
+        if (!detector.equals("All")) {
+            detectors = detectors.stream()
+                    .filter(candidate -> candidate.getClass().getSimpleName().equals(detector + "Detector"))
+                    .toList();
+        }
+        engine = new SmellDetectorEngine(detectors);
+    }
+
+    @Benchmark
+    public List<CodeSmell> detect() {
+        return engine.detect(cu);
+    }
+
+    static List<SmellDetector> allDetectors(ParserService parserService) {
+        return List.of(
+                new LongMethodDetector(parserService),
+                new DeepNestingDetector(),
+                new UnusedImportDetector(),
+                new MagicNumberDetector(),
+                new GodClassDetector(),
+                new StringConcatenationInLoopDetector(),
+                new EmptyCatchBlockDetector()
+        );
+    }
+}
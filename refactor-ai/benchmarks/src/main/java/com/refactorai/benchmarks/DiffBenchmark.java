@@ -0,0 +1,47 @@
+package com.refactorai.benchmarks;
+
+import com.refactorai.service.DiffService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DiffBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int lines;
+
+    @Param({"HISTOGRAM", "MYERS"})
+    public DiffService.Engine engine;
+
+    private DiffService diffService;
+    private String original;
+    private String refactored;
+
+    @Setup
+    public void setUp() {
+        diffService = new DiffService();
+        original = CorpusGenerator.generate(lines);
+        refactored = CorpusGenerator.edit(original);
+    }
+
+    @Benchmark
+    public String generateDiff() {
+        return diffService.generateDiff(original, refactored, engine);
+    }
+}
@@ -0,0 +1,43 @@
+package com.refactorai.benchmarks;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.refactorai.service.ParserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParserBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int lines;
+
+    private ParserService parserService;
+    private String source;
+
+    @Setup
+    public void setUp() {
+        parserService = new ParserService();
+        source = CorpusGenerator.generate(lines);
+    }
+
+    @Benchmark
+    public CompilationUnit parseCode() {
+        return parserService.parseCode(source).orElseThrow();
+    }
+}
@@ -0,0 +1,59 @@
+package com.refactorai.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.model.CompactSmellReport;
+import com.refactorai.service.ParserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the smells found in a generated unit, in the default (legacy) JSON
+ * shape and in the compact one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SerializationBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int lines;
+
+    private ObjectMapper objectMapper;
+    private List<CodeSmell> smells;
+
+    @Setup
+    public void setUp() {
+        ParserService parserService = new ParserService();
+        SmellDetectorEngine engine = new SmellDetectorEngine(DetectorBenchmark.allDetectors(parserService));
+        smells = engine.detect(parserService.parseCode(CorpusGenerator.generate(lines)).orElseThrow());
+        objectMapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public byte[] legacyShape() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(smells);
+    }
+
+    @Benchmark
+    public byte[] compactShape() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(CompactSmellReport.of(smells));
+    }
+}
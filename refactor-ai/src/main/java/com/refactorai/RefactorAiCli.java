@@ -0,0 +1,186 @@
+package com.refactorai;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.analyzer.SmellDetector;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.cli.BatchScanner;
+import com.refactorai.cli.SourceReader;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.model.Severity;
+import com.refactorai.service.ParserService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Headless entry point for CI: analyzes every .java file under a directory and writes a JSON
+ * report, without starting the web server or the database.
+ * <p>
+ * Only the detector beans and the parser are put in a plain application context (no web server,
+ * JPA or auto-configuration), so startup is a small fraction of the server's. Run it from the
+ * packaged jar with
+ * <pre>
+ * java -cp target/refactor-ai-0.0.1-SNAPSHOT-exec.jar -Dloader.main=com.refactorai.RefactorAiCli \
+ *     org.springframework.boot.loader.launch.PropertiesLauncher src/main/java --fail-on High
+ * </pre>
+ * Exit codes: 0 when no smell reaches the {@code --fail-on} severity, 1 when one does, 2 on bad
+ * arguments or an unreadable root. Settings such as {@code refactorai.analysis.parallel.threads}
+ * can be passed as system properties.
+ */
+public class RefactorAiCli {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_FINDINGS = 1;
+    static final int EXIT_ERROR = 2;
+
+    private static final String USAGE = "Usage: RefactorAiCli <directory> [--output <file>] "
+            + "[--fail-on Info|Low|Medium|High|Critical|none] [--threads <n>] [--map-threshold-bytes <n>]";
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        Path root = null;
+        Path output = null;
+        String failOn = "High";
+        int threads = 0;
+        long mapThresholdBytes = 1024 * 1024;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--output" -> output = Paths.get(args[++i]);
+                    case "--fail-on" -> failOn = args[++i];
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--map-threshold-bytes" -> mapThresholdBytes = Long.parseLong(args[++i]);
+                    default -> {
+                        if (root != null || args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        }
+                        root = Paths.get(args[i]);
+                    }
+                }
+            }
+            if (root == null) {
+                throw new IllegalArgumentException("Missing directory");
+            }
+            if (!failOn.equals("none")) {
+                Severity.fromLabel(failOn);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing value");
+            System.err.println(USAGE);
+            return EXIT_ERROR;
+        }
+
+        if (!Files.isDirectory(root)) {
+            System.err.println("Not a directory: " + root);
+            return EXIT_ERROR;
+        }
+
+        long start = System.nanoTime();
+        List<BatchScanner.FileResult> results;
+
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.scan(SmellDetector.class.getPackageName());
+            context.register(ParserService.class);
+            context.refresh();
+
+            BatchScanner scanner = new BatchScanner(
+                    context.getBean(ParserService.class),
+                    context.getBean(SmellDetectorEngine.class),
+                    new SourceReader(mapThresholdBytes),
+                    threads
+            );
+            results = scanner.scan(root);
+        }
+
+        Map<String, Object> report = report(root, failOn, results, start);
+
+        try {
+            writeReport(report, output);
+        } catch (IOException e) {
+            System.err.println("Failed to write report: " + e.getMessage());
+            return EXIT_ERROR;
+        }
+
+        System.err.println("Analyzed " + report.get("files") + " files: " + report.get("smells")
+                + " smells, " + report.get("failed") + " failed");
+
+        return reachesThreshold(results, failOn) ? EXIT_FINDINGS : EXIT_OK;
+    }
+
+    private static Map<String, Object> report(Path root, String failOn,
+                                              List<BatchScanner.FileResult> results, long start) {
+        Map<String, Integer> severities = new LinkedHashMap<>();
+        for (Severity severity : Severity.values()) {
+            severities.put(severity.getLabel(), 0);
+        }
+
+        int smells = 0;
+        int failed = 0;
+        for (BatchScanner.FileResult result : results) {
+            if (result.getError() != null) {
+                failed++;
+                continue;
+            }
+            for (CodeSmell smell : result.getSmells()) {
+                smells++;
+                severities.merge(smell.getSeverity(), 1, Integer::sum);
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("root", root.toString());
+        report.put("files", results.size());
+        report.put("failed", failed);
+        report.put("smells", smells);
+        report.put("severities", severities);
+        report.put("failOn", failOn);
+        report.put("elapsedMs", (System.nanoTime() - start) / 1_000_000);
+        report.put("results", results);
+        return report;
+    }
+
+    private static void writeReport(Map<String, Object> report, Path output) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        if (output == null) {
+            // Leave System.out open for the trailing newline
+            objectMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            objectMapper.writeValue(System.out, report);
+            System.out.println();
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(output)) {
+            objectMapper.writeValue(out, report);
+        }
+    }
+
+    private static boolean reachesThreshold(List<BatchScanner.FileResult> results, String failOn) {
+        if (failOn.equals("none")) {
+            return false;
+        }
+        Severity threshold = Severity.fromLabel(failOn);
+
+        for (BatchScanner.FileResult result : results) {
+            if (result.getSmells() == null) {
+                continue;
+            }
+            for (CodeSmell smell : result.getSmells()) {
+                if (smell.getSeverityLevel().compareTo(threshold) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -4,64 +4,99 @@ import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.stmt.*;
 import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
-public class DeepNestingDetector {
+@Order(2)
+public class DeepNestingDetector implements SmellDetector {
 
     private static final int MAX_NESTING_DEPTH = 3;
 
-    public List<CodeSmell> detect(List<MethodDeclaration> methods) {
-        List<CodeSmell> smells = new ArrayList<>();
+    @Override
+    public Set<Class<? extends Node>> nodeTypes() {
+        // Each of these statements increases the nesting depth
+        return Set.of(
+                MethodDeclaration.class,
+                IfStmt.class,
+                ForStmt.class,
+                WhileStmt.class,
+                DoStmt.class,
+                SwitchStmt.class
+        );
+    }
 
-        for (MethodDeclaration method : methods) {
-            int maxDepth = calculateMaxNestingDepth(method);
+    @Override
+    public Scope scope() {
+        return Scope.METHOD;
+    }
 
-            if (maxDepth > MAX_NESTING_DEPTH) {
-                String methodName = method.getNameAsString();
-                int startLine = method.getBegin().get().line;
+    @Override
+    public Scan newScan() {
+        return new NestingScan();
+    }
 
-                CodeSmell smell = new CodeSmell(
-                        "Deep Nesting",
-                        "Line " + startLine + " (Method: " + methodName + ")",
-                        "Medium",
-                        "Method has nesting depth of " + maxDepth + ", exceeds maximum of " + MAX_NESTING_DEPTH + ". " +
-                                "Deep nesting makes code harder to read and maintain. Consider extracting nested logic into separate methods."
-                );
+    private static class NestingScan extends MethodScopedScan {
 
-                smells.add(smell);
-            }
+        private final Deque<Frame> frames = new ArrayDeque<>();
+
+        @Override
+        protected void enterMethod(MethodDeclaration method) {
+            // Reserve the slot now so smells keep method order even though depth is known only on exit
+            frames.push(new Frame(smells.size()));
+            smells.add(null);
         }
 
-        return smells;
-    }
+        @Override
+        protected void enterInMethod(Node node, MethodDeclaration method) {
+            Frame frame = frames.peek();
+            frame.depth++;
+            frame.maxDepth = Math.max(frame.maxDepth, frame.depth);
+        }
 
-    private int calculateMaxNestingDepth(MethodDeclaration method) {
-        return calculateDepth(method, 0);
-    }
+        @Override
+        protected void exitInMethod(Node node) {
+            frames.peek().depth--;
+        }
+
+        @Override
+        protected void exitMethod(MethodDeclaration method) {
+            Frame frame = frames.pop();
+
+            if (frame.maxDepth > MAX_NESTING_DEPTH) {
+                CodeSmell smell = SmellDetector.smellAt(
+                        method,
+                        SmellType.DEEP_NESTING,
+                        method.getNameAsString(),
+                        String.valueOf(frame.maxDepth),
+                        String.valueOf(MAX_NESTING_DEPTH)
+                );
 
-    private int calculateDepth(Node node, int currentDepth) {
-        int maxDepth = currentDepth;
-
-        // Check if this node increases nesting depth
-        if (node instanceof IfStmt ||
-                node instanceof ForStmt ||
-                node instanceof WhileStmt ||
-                node instanceof DoStmt ||
-                node instanceof SwitchStmt) {
-            currentDepth++;
-            maxDepth = currentDepth;
+                smells.set(frame.slot, smell);
+            }
         }
 
-        // Recursively check all child nodes
-        for (Node child : node.getChildNodes()) {
-            int childDepth = calculateDepth(child, currentDepth);
-            maxDepth = Math.max(maxDepth, childDepth);
+        @Override
+        public List<CodeSmell> finish() {
+            return smells.stream().filter(Objects::nonNull).collect(Collectors.toList());
         }
+    }
 
-        return maxDepth;
+    private static class Frame {
+        private final int slot;
+        private int depth;
+        private int maxDepth;
+
+        private Frame(int slot) {
+            this.slot = slot;
+        }
     }
-}
\ No newline at end of file
+}
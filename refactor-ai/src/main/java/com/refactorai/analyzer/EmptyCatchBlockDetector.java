@@ -1,48 +1,59 @@
 package com.refactorai.analyzer;
 
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.stmt.CatchClause;
 import com.github.javaparser.ast.stmt.TryStmt;
 import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @Component
-public class EmptyCatchBlockDetector {
-
-    public List<CodeSmell> detect(List<MethodDeclaration> methods) {
-        List<CodeSmell> smells = new ArrayList<>();
-
-        for (MethodDeclaration method : methods) {
-            List<TryStmt> tryStatements = method.findAll(TryStmt.class);
-
-            for (TryStmt tryStmt : tryStatements) {
-                for (CatchClause catchClause : tryStmt.getCatchClauses()) {
-                    BlockStmt catchBlock = catchClause.getBody();
-
-                    // Check if catch block is empty or only has comments
-                    if (catchBlock.getStatements().isEmpty()) {
-                        int line = catchClause.getBegin().get().line;
-                        String exceptionType = catchClause.getParameter().getType().asString();
-
-                        CodeSmell smell = new CodeSmell(
-                                "Empty Catch Block",
-                                "Line " + line,
-                                "High",
-                                "Empty catch block for '" + exceptionType + "'. " +
-                                        "Silently swallowing exceptions makes debugging difficult and hides bugs. " +
-                                        "At minimum, log the exception. Consider: throw new RuntimeException(e), logger.error(), or handle the exception appropriately."
-                        );
-
-                        smells.add(smell);
-                    }
-                }
+@Order(7)
+public class EmptyCatchBlockDetector implements SmellDetector {
+
+    @Override
+    public Set<Class<? extends Node>> nodeTypes() {
+        return Set.of(MethodDeclaration.class, TryStmt.class);
+    }
+
+    @Override
+    public Scope scope() {
+        return Scope.METHOD;
+    }
+
+    @Override
+    public Scan newScan() {
+        return new MethodScopedScan() {
+            @Override
+            protected void enterInMethod(Node node, MethodDeclaration method) {
+                detect((TryStmt) node, smells);
             }
-        }
+        };
+    }
+
+    private void detect(TryStmt tryStmt, List<CodeSmell> smells) {
+        for (CatchClause catchClause : tryStmt.getCatchClauses()) {
+            BlockStmt catchBlock = catchClause.getBody();
+
+            // Check if catch block is empty or only has comments
+            if (catchBlock.getStatements().isEmpty()) {
+                String exceptionType = catchClause.getParameter().getType().asString();
 
-        return smells;
+                CodeSmell smell = SmellDetector.smellAt(
+                        catchClause,
+                        SmellType.EMPTY_CATCH_BLOCK,
+                        exceptionType,
+                        exceptionType
+                );
+
+                smells.add(smell);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,57 +1,71 @@
 package com.refactorai.analyzer;
 
-import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
-import com.github.javaparser.ast.body.MethodDeclaration;
 import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @Component
-public class GodClassDetector {
+@Order(5)
+public class GodClassDetector implements SmellDetector {
 
     private static final int MAX_LINES = 500;
     private static final int MAX_METHODS = 10;
 
-    public List<CodeSmell> detect(CompilationUnit cu) {
-        List<CodeSmell> smells = new ArrayList<>();
-
-        List<ClassOrInterfaceDeclaration> classes = cu.findAll(ClassOrInterfaceDeclaration.class);
-
-        for (ClassOrInterfaceDeclaration classDecl : classes) {
-            String className = classDecl.getNameAsString();
-            int lineCount = getClassLineCount(classDecl);
-            int methodCount = classDecl.getMethods().size();
+    @Override
+    public Set<Class<? extends Node>> nodeTypes() {
+        return Set.of(ClassOrInterfaceDeclaration.class);
+    }
 
-            List<String> violations = new ArrayList<>();
+    @Override
+    public Scan newScan() {
+        List<CodeSmell> smells = new ArrayList<>();
 
-            if (lineCount > MAX_LINES) {
-                violations.add(lineCount + " lines (exceeds " + MAX_LINES + ")");
+        return new Scan() {
+            @Override
+            public void enter(Node node) {
+                detect((ClassOrInterfaceDeclaration) node, smells);
             }
 
-            if (methodCount > MAX_METHODS) {
-                violations.add(methodCount + " methods (exceeds " + MAX_METHODS + ")");
+            @Override
+            public List<CodeSmell> finish() {
+                return smells;
             }
+        };
+    }
 
-            if (!violations.isEmpty()) {
-                int startLine = classDecl.getBegin().get().line;
+    private void detect(ClassOrInterfaceDeclaration classDecl, List<CodeSmell> smells) {
+        String className = classDecl.getNameAsString();
+        int lineCount = getClassLineCount(classDecl);
+        int methodCount = classDecl.getMethods().size();
 
-                CodeSmell smell = new CodeSmell(
-                        "God Class",
-                        "Line " + startLine + " (Class: " + className + ")",
-                        "High",
-                        "Class '" + className + "' is too large: " + String.join(", ", violations) + ". " +
-                                "God classes violate the Single Responsibility Principle and are hard to maintain. " +
-                                "Consider splitting into smaller, focused classes."
-                );
+        List<String> violations = new ArrayList<>();
 
-                smells.add(smell);
-            }
+        if (lineCount > MAX_LINES) {
+            violations.add(lineCount + " lines (exceeds " + MAX_LINES + ")");
+        }
+
+        if (methodCount > MAX_METHODS) {
+            violations.add(methodCount + " methods (exceeds " + MAX_METHODS + ")");
         }
 
-        return smells;
+        if (!violations.isEmpty()) {
+            CodeSmell smell = SmellDetector.smellAt(
+                    classDecl,
+                    SmellType.GOD_CLASS,
+                    className,
+                    className,
+                    String.join(", ", violations)
+            );
+
+            smells.add(smell);
+        }
     }
 
     private int getClassLineCount(ClassOrInterfaceDeclaration classDecl) {
@@ -62,4 +76,4 @@ public class GodClassDetector {
         }
         return 0;
     }
-}
\ No newline at end of file
+}
@@ -1,15 +1,19 @@
 package com.refactorai.analyzer;
 
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
 import com.refactorai.service.ParserService;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @Component
-public class LongMethodDetector {
+@Order(1)
+public class LongMethodDetector implements SmellDetector {
 
     private static final int MAX_LINES = 30;
     private final ParserService parserService;
@@ -18,28 +22,39 @@ public class LongMethodDetector {
         this.parserService = parserService;
     }
 
-    public List<CodeSmell> detect(List<MethodDeclaration> methods) {
-        List<CodeSmell> smells = new ArrayList<>();
+    @Override
+    public Set<Class<? extends Node>> nodeTypes() {
+        return Set.of(MethodDeclaration.class);
+    }
 
-        for (MethodDeclaration method : methods) {
-            int lineCount = parserService.getMethodLineCount(method);
+    @Override
+    public Scope scope() {
+        return Scope.METHOD;
+    }
 
-            if (lineCount > MAX_LINES) {
-                String methodName = method.getNameAsString();
-                int startLine = method.getBegin().get().line;
+    @Override
+    public Scan newScan() {
+        return new MethodScopedScan() {
+            @Override
+            protected void enterMethod(MethodDeclaration method) {
+                detect(method, smells);
+            }
+        };
+    }
 
-                CodeSmell smell = new CodeSmell(
-                        "Long Method",
-                        "Line " + startLine + " (Method: " + methodName + ")",
-                        "Medium",
-                        "Method has " + lineCount + " lines, exceeds maximum of " + MAX_LINES + " lines. " +
-                                "Long methods are harder to understand and maintain. Consider extracting smaller methods."
-                );
+    private void detect(MethodDeclaration method, List<CodeSmell> smells) {
+        int lineCount = parserService.getMethodLineCount(method);
 
-                smells.add(smell);
-            }
-        }
+        if (lineCount > MAX_LINES) {
+            CodeSmell smell = SmellDetector.smellAt(
+                    method,
+                    SmellType.LONG_METHOD,
+                    method.getNameAsString(),
+                    String.valueOf(lineCount),
+                    String.valueOf(MAX_LINES)
+            );
 
-        return smells;
+            smells.add(smell);
+        }
     }
-}
\ No newline at end of file
+}
@@ -6,30 +6,46 @@ import com.github.javaparser.ast.expr.IntegerLiteralExpr;
 import com.github.javaparser.ast.expr.LongLiteralExpr;
 import com.github.javaparser.ast.expr.DoubleLiteralExpr;
 import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 @Component
-public class MagicNumberDetector {
+@Order(4)
+public class MagicNumberDetector implements SmellDetector {
 
     // Numbers that are typically acceptable without being constants
     private static final Set<String> ACCEPTABLE_NUMBERS = Set.of("0", "1", "-1", "2");
 
-    public List<CodeSmell> detect(List<MethodDeclaration> methods) {
-        List<CodeSmell> smells = new ArrayList<>();
+    @Override
+    public Set<Class<? extends Node>> nodeTypes() {
+        return Set.of(
+                MethodDeclaration.class,
+                IntegerLiteralExpr.class,
+                LongLiteralExpr.class,
+                DoubleLiteralExpr.class
+        );
+    }
 
-        for (MethodDeclaration method : methods) {
-            detectMagicNumbers(method, smells);
-        }
+    @Override
+    public Scope scope() {
+        return Scope.METHOD;
+    }
 
-        return smells;
+    @Override
+    public Scan newScan() {
+        return new MethodScopedScan() {
+            @Override
+            protected void enterInMethod(Node node, MethodDeclaration method) {
+                detectMagicNumber(node, smells);
+            }
+        };
     }
 
-    private void detectMagicNumbers(Node node, List<CodeSmell> smells) {
+    private void detectMagicNumber(Node node, List<CodeSmell> smells) {
         // Check for integer literals
         if (node instanceof IntegerLiteralExpr) {
             IntegerLiteralExpr literal = (IntegerLiteralExpr) node;
@@ -47,11 +63,6 @@ public class MagicNumberDetector {
             DoubleLiteralExpr literal = (DoubleLiteralExpr) node;
             checkNumber(literal.getValue(), literal, smells);
         }
-
-        // Recursively check child nodes
-        for (Node child : node.getChildNodes()) {
-            detectMagicNumbers(child, smells);
-        }
     }
 
     private void checkNumber(String value, Node node, List<CodeSmell> smells) {
@@ -64,17 +75,9 @@ public class MagicNumberDetector {
         String cleanValue = value.replace(".", "");
 
         if (!ACCEPTABLE_NUMBERS.contains(cleanValue)) {
-            int line = node.getBegin().get().line;
-
-            CodeSmell smell = new CodeSmell(
-                    "Magic Number",
-                    "Line " + line,
-                    "Low",
-                    "Magic number '" + value + "' found. Consider extracting to a named constant. " +
-                            "Magic numbers make code harder to understand and maintain. Use descriptive constant names like 'MAX_RETRIES' or 'TAX_RATE'."
-            );
+            CodeSmell smell = SmellDetector.smellAt(node, SmellType.MAGIC_NUMBER, null, value);
 
             smells.add(smell);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,181 @@
+package com.refactorai.analyzer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.refactorai.model.CodeSmell;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Results of the method-scoped detectors per method fingerprint, so a resubmitted file only
+ * re-runs them on the methods that changed.
+ * <p>
+ * A fingerprint is the hash of the method's tokens with horizontal whitespace dropped, so
+ * re-indenting a method (or moving it) still hits. Line breaks are kept because they change what
+ * some detectors report (a method's line count). Findings are stored against the ordinals of the
+ * tokens they start and end on, and placed back onto wherever those tokens are now.
+ */
+@Component
+public class MethodResultCache {
+
+    private final Cache<String, List<List<Anchored>>> cache;
+
+    public MethodResultCache(@Value("${refactorai.analysis.method-cache.max-entries:100000}") long maxEntries) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Fingerprint of a method for the given detector set, or empty if the method has no tokens
+     * (e.g. it was built programmatically rather than parsed).
+     */
+    public Optional<String> fingerprint(MethodDeclaration method, String detectorVersion) {
+        if (method.getTokenRange().isEmpty()) {
+            return Optional.empty();
+        }
+
+        StringBuilder normalized = new StringBuilder(detectorVersion).append('\n');
+        for (JavaToken token : method.getTokenRange().get()) {
+            if (token.getCategory().isEndOfLine()) {
+                normalized.append('\n');
+            } else if (!token.getCategory().isWhitespace()) {
+                normalized.append(token.getText()).append(' ');
+            }
+        }
+
+        return Optional.of(sha256(normalized));
+    }
+
+    /**
+     * Findings per detector (same indexes as the engine's detector list) placed onto
+     * {@code method}, or null on a miss. The method must have the given fingerprint.
+     */
+    public List<List<CodeSmell>> get(String fingerprint, MethodDeclaration method) {
+        List<List<Anchored>> anchored = cache.getIfPresent(fingerprint);
+        if (anchored == null) {
+            return null;
+        }
+
+        List<JavaToken> tokens = significantTokens(method);
+        List<List<CodeSmell>> smells = new ArrayList<>(anchored.size());
+        for (List<Anchored> found : anchored) {
+            if (found == null) {
+                smells.add(null);
+                continue;
+            }
+            List<CodeSmell> placed = new ArrayList<>(found.size());
+            for (Anchored smell : found) {
+                placed.add(smell.placeOnto(tokens));
+            }
+            smells.add(placed);
+        }
+        return smells;
+    }
+
+    /**
+     * Remember the findings for {@code method}. Findings that do not start and end on one of its
+     * tokens can't be placed back, so such methods are not cached.
+     */
+    public void put(String fingerprint, MethodDeclaration method, List<List<CodeSmell>> smells) {
+        Map<Position, Integer> begins = new HashMap<>();
+        Map<Position, Integer> ends = new HashMap<>();
+        List<JavaToken> tokens = significantTokens(method);
+        for (int i = 0; i < tokens.size(); i++) {
+            Range range = tokens.get(i).getRange().orElseThrow();
+            begins.putIfAbsent(range.begin, i);
+            ends.put(range.end, i);
+        }
+
+        List<List<Anchored>> anchored = new ArrayList<>(smells.size());
+        for (List<CodeSmell> found : smells) {
+            if (found == null) {
+                anchored.add(null);
+                continue;
+            }
+            List<Anchored> anchoredFound = new ArrayList<>(found.size());
+            for (CodeSmell smell : found) {
+                Integer begin = begins.get(new Position(smell.getLine(), smell.getColumn()));
+                Integer end = ends.get(new Position(smell.getEndLine(), smell.getEndColumn()));
+                if (begin == null || end == null) {
+                    return;
+                }
+                anchoredFound.add(new Anchored(smell, begin, end));
+            }
+            anchored.add(anchoredFound);
+        }
+
+        cache.put(fingerprint, anchored);
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("entries", cache.estimatedSize());
+        return result;
+    }
+
+    /**
+     * Tokens of the method other than whitespace and line breaks: exactly the ones the fingerprint
+     * covers, so methods with the same fingerprint have the same number of them.
+     */
+    private List<JavaToken> significantTokens(MethodDeclaration method) {
+        List<JavaToken> tokens = new ArrayList<>();
+        for (JavaToken token : method.getTokenRange().orElseThrow()) {
+            if (!token.getCategory().isWhitespace()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Anchored {
+
+        private final CodeSmell smell;
+        private final int beginToken;
+        private final int endToken;
+
+        private Anchored(CodeSmell smell, int beginToken, int endToken) {
+            this.smell = smell;
+            this.beginToken = beginToken;
+            this.endToken = endToken;
+        }
+
+        private CodeSmell placeOnto(List<JavaToken> tokens) {
+            Position begin = tokens.get(beginToken).getRange().orElseThrow().begin;
+            Position end = tokens.get(endToken).getRange().orElseThrow().end;
+            return smell.withPosition(begin.line, begin.column, end.line, end.column);
+        }
+    }
+
+    private String sha256(CharSequence text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.refactorai.analyzer;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.refactorai.model.CodeSmell;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Base scan for detectors that only look inside method bodies.
+ * <p>
+ * Detectors using it must register {@link MethodDeclaration} in their node types. Nodes outside of
+ * any method (field initializers, constructors, ...) are ignored, and a node inside a method of a
+ * local or anonymous class is attributed to that innermost method only.
+ */
+abstract class MethodScopedScan implements SmellDetector.Scan {
+
+    protected final List<CodeSmell> smells = new ArrayList<>();
+    private final Deque<MethodDeclaration> methods = new ArrayDeque<>();
+
+    @Override
+    public final void enter(Node node) {
+        if (node instanceof MethodDeclaration) {
+            MethodDeclaration method = (MethodDeclaration) node;
+            methods.push(method);
+            enterMethod(method);
+        } else if (!methods.isEmpty()) {
+            enterInMethod(node, methods.peek());
+        }
+    }
+
+    @Override
+    public final void exit(Node node) {
+        if (node instanceof MethodDeclaration) {
+            exitMethod((MethodDeclaration) node);
+            methods.pop();
+        } else if (!methods.isEmpty()) {
+            exitInMethod(node);
+        }
+    }
+
+    protected void enterMethod(MethodDeclaration method) {
+    }
+
+    protected void exitMethod(MethodDeclaration method) {
+    }
+
+    protected void enterInMethod(Node node, MethodDeclaration method) {
+    }
+
+    protected void exitInMethod(Node node) {
+    }
+
+    @Override
+    public List<CodeSmell> finish() {
+        return smells;
+    }
+}
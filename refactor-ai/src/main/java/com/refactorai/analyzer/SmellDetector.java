@@ -0,0 +1,83 @@
+package com.refactorai.analyzer;
+
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A code smell check that runs inside the shared AST walk of {@link SmellDetectorEngine}.
+ * <p>
+ * The engine visits every node of a compilation unit exactly once and hands each node only to the
+ * detectors that registered for its type. Detectors are stateless singletons, so everything a check
+ * needs to remember while walking one unit lives in the {@link Scan} returned by {@link #newScan()}.
+ */
+public interface SmellDetector {
+
+    /**
+     * How much of the unit a detector needs to see to produce its findings.
+     */
+    enum Scope {
+        /**
+         * Needs the whole compilation unit in a single walk.
+         */
+        UNIT,
+        /**
+         * Only reports smells inside method bodies, and the findings for a method depend on nothing
+         * but that method's subtree. Walking each outermost method on its own and concatenating the
+         * results gives the same list as walking the whole unit, which lets the engine split the work.
+         */
+        METHOD
+    }
+
+    /**
+     * Node types this detector wants to see. Subtypes of a registered type are delivered as well.
+     */
+    Set<Class<? extends Node>> nodeTypes();
+
+    default Scope scope() {
+        return Scope.UNIT;
+    }
+
+    /**
+     * Bump whenever the detector's findings for the same source change, so cached results are
+     * not served for the old behavior.
+     */
+    default int version() {
+        return 1;
+    }
+
+    /**
+     * Start a scan of one compilation unit.
+     */
+    Scan newScan();
+
+    /**
+     * A finding spanning the source range of {@code node}.
+     */
+    static CodeSmell smellAt(Node node, SmellType smellType, String symbol, String... args) {
+        Range range = node.getRange().orElseThrow();
+        return new CodeSmell(smellType, range.begin.line, range.begin.column,
+                range.end.line, range.end.column, symbol, args);
+    }
+
+    /**
+     * Per-unit state of a detector. {@link #enter} and {@link #exit} are called in pre-order and
+     * post-order respectively, and only for nodes matching {@link SmellDetector#nodeTypes()}.
+     */
+    interface Scan {
+
+        void enter(Node node);
+
+        default void exit(Node node) {
+        }
+
+        /**
+         * Smells found during the walk, in the order the detector reports them.
+         */
+        List<CodeSmell> finish();
+    }
+}
@@ -0,0 +1,423 @@
+package com.refactorai.analyzer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.printer.DefaultPrettyPrinter;
+import com.refactorai.model.CodeSmell;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Runs every {@link SmellDetector} over a compilation unit in a single AST walk.
+ * <p>
+ * Detectors are injected in their {@code @Order}, and the result lists them in that order, each
+ * detector's smells in the order it reported them. This keeps the output identical between runs
+ * regardless of how many detectors are interested in a given node. The walk runs on an explicit
+ * stack ({@link TreeWalker}), so however deep an expression nests it can't overflow the thread.
+ * <p>
+ * Units of at least {@code refactorai.analysis.parallel.threshold-lines} lines are analyzed on a
+ * dedicated fork/join pool instead: every {@link SmellDetector.Scope#UNIT unit-scoped} detector gets
+ * its own walk, and the outermost methods are split into chunks of roughly
+ * {@code refactorai.analysis.parallel.chunk-lines} lines for the method-scoped ones. Chunk results
+ * are concatenated in source order, so both paths return the same list.
+ * <p>
+ * Method-scoped detectors run once per outermost method, and their findings are kept in the
+ * {@link MethodResultCache} under the method's fingerprint. When a file is resubmitted with one
+ * method changed, only that method is scanned again; unit-scoped detectors always see the whole unit.
+ */
+@Component
+public class SmellDetectorEngine {
+
+    private static final int[] NO_TARGETS = new int[0];
+
+    private final List<SmellDetector> detectors;
+    private final String version;
+
+    // Node class -> indexes of the detectors registered for it (or for one of its supertypes)
+    private final ConcurrentMap<Class<?>, int[]> dispatch = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool pool;
+    private final int parallelThresholdLines;
+    private final int chunkLines;
+
+    private final MethodResultCache methodResultCache;
+
+    public SmellDetectorEngine(List<SmellDetector> detectors) {
+        this(detectors, null, false, Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+    }
+
+    @Autowired
+    public SmellDetectorEngine(
+            List<SmellDetector> detectors,
+            MethodResultCache methodResultCache,
+            @Value("${refactorai.analysis.parallel.enabled:true}") boolean parallelEnabled,
+            @Value("${refactorai.analysis.parallel.threshold-lines:1500}") int parallelThresholdLines,
+            @Value("${refactorai.analysis.parallel.chunk-lines:400}") int chunkLines,
+            @Value("${refactorai.analysis.parallel.threads:0}") int threads
+    ) {
+        this.detectors = List.copyOf(detectors);
+        this.version = this.detectors.stream()
+                .map(detector -> detector.getClass().getName() + "@" + detector.version())
+                .collect(Collectors.joining(","));
+        this.methodResultCache = methodResultCache;
+        this.parallelThresholdLines = parallelThresholdLines;
+        this.chunkLines = Math.max(1, chunkLines);
+
+        if (parallelEnabled) {
+            int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+            this.pool = new ForkJoinPool(parallelism);
+        } else {
+            this.pool = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    public List<SmellDetector> getDetectors() {
+        return detectors;
+    }
+
+    /**
+     * Identifies the detector set and the version of each detector; results computed by engines
+     * with different versions are not interchangeable.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public List<CodeSmell> detect(CompilationUnit cu) {
+        List<CodeSmell> smells = new ArrayList<>();
+        for (List<CodeSmell> found : detectByDetector(cu)) {
+            smells.addAll(found);
+        }
+        return smells;
+    }
+
+    /**
+     * Findings of each detector, at the same index as in {@link #getDetectors()}.
+     */
+    public List<List<CodeSmell>> detectByDetector(CompilationUnit cu) {
+        if (pool != null && lineCount(cu) >= parallelThresholdLines) {
+            return detectInParallel(cu);
+        }
+        return detectSequentially(cu);
+    }
+
+    private List<List<CodeSmell>> detectSequentially(CompilationUnit cu) {
+        Pass pass = new Pass(unitScoped(), true);
+        walk(cu, pass);
+        return merge(List.of(pass.finish()));
+    }
+
+    private List<List<CodeSmell>> detectInParallel(CompilationUnit cu) {
+        // The unit creates its printer lazily in an unsynchronized data map; pin it before any
+        // detector calls toString() from a worker thread.
+        cu.printer(new DefaultPrettyPrinter());
+
+        List<Callable<List<List<CodeSmell>>>> tasks = new ArrayList<>();
+
+        // One task per unit-scoped detector, each walking the whole unit
+        boolean[] unitScoped = unitScoped();
+        for (int i = 0; i < detectors.size(); i++) {
+            if (unitScoped[i]) {
+                boolean[] selected = new boolean[detectors.size()];
+                selected[i] = true;
+                tasks.add(() -> {
+                    Pass pass = new Pass(selected, false);
+                    walk(cu, pass);
+                    return pass.finish();
+                });
+            }
+        }
+
+        // One task per chunk of outermost methods for all method-scoped detectors
+        for (List<MethodDeclaration> chunk : chunk(outermostMethods(cu))) {
+            tasks.add(() -> {
+                Pass pass = new Pass(new boolean[detectors.size()], true);
+                for (MethodDeclaration method : chunk) {
+                    walk(method, pass);
+                }
+                return pass.finish();
+            });
+        }
+
+        List<List<List<CodeSmell>>> results = new ArrayList<>();
+        for (Future<List<List<CodeSmell>>> future : pool.invokeAll(tasks)) {
+            results.add(join(future));
+        }
+        return merge(results);
+    }
+
+    /**
+     * Concatenate pass results per detector, in detector order. Passes must be given in source
+     * order for the method-scoped detectors, which makes the parallel result match the sequential one.
+     */
+    private List<List<CodeSmell>> merge(List<List<List<CodeSmell>>> results) {
+        List<List<CodeSmell>> smells = new ArrayList<>(detectors.size());
+        for (int i = 0; i < detectors.size(); i++) {
+            List<CodeSmell> merged = new ArrayList<>();
+            for (List<List<CodeSmell>> result : results) {
+                List<CodeSmell> found = result.get(i);
+                if (found != null) {
+                    merged.addAll(found);
+                }
+            }
+            smells.add(merged);
+        }
+        return smells;
+    }
+
+    private void walk(Node node, Pass pass) {
+        pass.walker.walk(node, pass);
+    }
+
+    private boolean[] unitScoped() {
+        boolean[] unitScoped = new boolean[detectors.size()];
+        for (int i = 0; i < detectors.size(); i++) {
+            unitScoped[i] = detectors.get(i).scope() == SmellDetector.Scope.UNIT;
+        }
+        return unitScoped;
+    }
+
+    /**
+     * One walk over part of a unit. Unit-scoped detectors share a scan for the whole walk;
+     * method-scoped detectors get a fresh scan per outermost method, so each method's findings can
+     * be cached on their own and skipped entirely when the method is unchanged.
+     */
+    private final class Pass implements TreeWalker.Visitor {
+
+        private final TreeWalker walker = new TreeWalker();
+        private final SmellDetector.Scan[] unitScans;
+        private final boolean methodScoped;
+        private final List<List<CodeSmell>> methodSmells;
+
+        // The outermost method being walked, and the scans for it (null on a cache hit)
+        private MethodDeclaration method;
+        private String fingerprint;
+        private SmellDetector.Scan[] methodScans;
+
+        private Pass(boolean[] unitDetectors, boolean methodScoped) {
+            this.unitScans = new SmellDetector.Scan[detectors.size()];
+            this.methodScoped = methodScoped;
+            this.methodSmells = new ArrayList<>(detectors.size());
+
+            for (int i = 0; i < detectors.size(); i++) {
+                if (unitDetectors[i]) {
+                    unitScans[i] = detectors.get(i).newScan();
+                }
+                boolean isMethodScoped = detectors.get(i).scope() == SmellDetector.Scope.METHOD;
+                methodSmells.add(methodScoped && isMethodScoped ? new ArrayList<>() : null);
+            }
+        }
+
+        @Override
+        public void enter(Node node) {
+            if (methodScoped && method == null && node instanceof MethodDeclaration) {
+                enterMethod((MethodDeclaration) node);
+            }
+
+            for (int target : targetsFor(node.getClass())) {
+                SmellDetector.Scan scan = scanFor(target);
+                if (scan != null) {
+                    scan.enter(node);
+                }
+            }
+        }
+
+        @Override
+        public void exit(Node node) {
+            int[] targets = targetsFor(node.getClass());
+            for (int i = targets.length - 1; i >= 0; i--) {
+                SmellDetector.Scan scan = scanFor(targets[i]);
+                if (scan != null) {
+                    scan.exit(node);
+                }
+            }
+
+            if (node == method) {
+                exitMethod();
+            }
+        }
+
+        private SmellDetector.Scan scanFor(int detector) {
+            if (detectors.get(detector).scope() == SmellDetector.Scope.METHOD) {
+                return methodScans != null ? methodScans[detector] : null;
+            }
+            return unitScans[detector];
+        }
+
+        private void enterMethod(MethodDeclaration method) {
+            this.method = method;
+            this.fingerprint = null;
+
+            if (methodResultCache != null && method.getBegin().isPresent()) {
+                fingerprint = methodResultCache.fingerprint(method, version).orElse(null);
+                List<List<CodeSmell>> cached = fingerprint != null
+                        ? methodResultCache.get(fingerprint, method)
+                        : null;
+
+                if (cached != null) {
+                    append(cached);
+                    return;
+                }
+            }
+
+            methodScans = new SmellDetector.Scan[detectors.size()];
+            for (int i = 0; i < detectors.size(); i++) {
+                if (methodSmells.get(i) != null) {
+                    methodScans[i] = detectors.get(i).newScan();
+                }
+            }
+        }
+
+        private void exitMethod() {
+            if (methodScans != null) {
+                List<List<CodeSmell>> found = new ArrayList<>(detectors.size());
+                for (SmellDetector.Scan scan : methodScans) {
+                    found.add(scan != null ? scan.finish() : null);
+                }
+
+                append(found);
+                if (fingerprint != null) {
+                    methodResultCache.put(fingerprint, method, found);
+                }
+            }
+
+            method = null;
+            fingerprint = null;
+            methodScans = null;
+        }
+
+        private void append(List<List<CodeSmell>> found) {
+            for (int i = 0; i < found.size(); i++) {
+                if (found.get(i) != null && methodSmells.get(i) != null) {
+                    methodSmells.get(i).addAll(found.get(i));
+                }
+            }
+        }
+
+        /**
+         * Findings per detector, null for detectors this pass did not run.
+         */
+        private List<List<CodeSmell>> finish() {
+            List<List<CodeSmell>> smells = new ArrayList<>(detectors.size());
+            for (int i = 0; i < detectors.size(); i++) {
+                smells.add(unitScans[i] != null ? unitScans[i].finish() : methodSmells.get(i));
+            }
+            return smells;
+        }
+    }
+
+    /**
+     * Methods that are not nested in another method, in source order.
+     */
+    private List<MethodDeclaration> outermostMethods(CompilationUnit cu) {
+        List<MethodDeclaration> methods = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(cu);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+
+            if (node instanceof MethodDeclaration) {
+                methods.add((MethodDeclaration) node);
+                continue;
+            }
+
+            List<Node> children = node.getChildNodes();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+
+        return methods;
+    }
+
+    private List<List<MethodDeclaration>> chunk(List<MethodDeclaration> methods) {
+        List<List<MethodDeclaration>> chunks = new ArrayList<>();
+        List<MethodDeclaration> current = new ArrayList<>();
+        int lines = 0;
+
+        for (MethodDeclaration method : methods) {
+            current.add(method);
+            lines += lineCount(method);
+
+            if (lines >= chunkLines) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                lines = 0;
+            }
+        }
+
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    private int lineCount(Node node) {
+        if (node.getBegin().isPresent() && node.getEnd().isPresent()) {
+            return node.getEnd().get().line - node.getBegin().get().line + 1;
+        }
+        return 0;
+    }
+
+    private <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running detectors", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Detector failed", e.getCause());
+        }
+    }
+
+    private int[] targetsFor(Class<?> nodeClass) {
+        return dispatch.computeIfAbsent(nodeClass, this::resolveTargets);
+    }
+
+    private int[] resolveTargets(Class<?> nodeClass) {
+        List<Integer> targets = new ArrayList<>();
+
+        for (int i = 0; i < detectors.size(); i++) {
+            for (Class<? extends Node> type : detectors.get(i).nodeTypes()) {
+                if (type.isAssignableFrom(nodeClass)) {
+                    targets.add(i);
+                    break;
+                }
+            }
+        }
+
+        if (targets.isEmpty()) {
+            return NO_TARGETS;
+        }
+        return targets.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
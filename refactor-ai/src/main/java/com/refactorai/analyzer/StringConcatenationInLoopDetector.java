@@ -4,84 +4,174 @@ import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.expr.AssignExpr;
 import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.expr.TextBlockLiteralExpr;
 import com.github.javaparser.ast.stmt.DoStmt;
 import com.github.javaparser.ast.stmt.ForStmt;
 import com.github.javaparser.ast.stmt.WhileStmt;
 import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
 
 @Component
-public class StringConcatenationInLoopDetector {
+@Order(6)
+public class StringConcatenationInLoopDetector implements SmellDetector {
+
+    @Override
+    public Set<Class<? extends Node>> nodeTypes() {
+        return Set.of(
+                MethodDeclaration.class,
+                ForStmt.class,
+                WhileStmt.class,
+                DoStmt.class,
+                AssignExpr.class,
+                BinaryExpr.class
+        );
+    }
+
+    @Override
+    public Scope scope() {
+        return Scope.METHOD;
+    }
+
+    @Override
+    public Scan newScan() {
+        return new ConcatenationScan();
+    }
 
-    public List<CodeSmell> detect(List<MethodDeclaration> methods) {
-        List<CodeSmell> smells = new ArrayList<>();
+    /**
+     * Tracks the loop depth of each open method on a stack, so every expression is looked at once
+     * no matter how many loops enclose it.
+     */
+    private static class ConcatenationScan extends MethodScopedScan {
 
-        for (MethodDeclaration method : methods) {
-            detectInMethod(method, smells);
+        // Loop depth per open method; a method of an anonymous class starts outside any loop
+        private final Deque<int[]> loopDepths = new ArrayDeque<>();
+
+        // Open '+=' smells; concatenations on their right-hand side are part of that smell
+        private final Deque<AssignExpr> reportedAssignments = new ArrayDeque<>();
+
+        private final Deque<Expression> operands = new ArrayDeque<>();
+
+        @Override
+        protected void enterMethod(MethodDeclaration method) {
+            loopDepths.push(new int[1]);
         }
 
-        return smells;
-    }
+        @Override
+        protected void exitMethod(MethodDeclaration method) {
+            loopDepths.pop();
+        }
+
+        @Override
+        protected void enterInMethod(Node node, MethodDeclaration method) {
+            if (node instanceof ForStmt || node instanceof WhileStmt || node instanceof DoStmt) {
+                loopDepths.peek()[0]++;
+                return;
+            }
+
+            if (loopDepths.peek()[0] == 0) {
+                return;
+            }
 
-    private void detectInMethod(Node node, List<CodeSmell> smells) {
-        // Check if we're inside a loop
-        if (node instanceof ForStmt || node instanceof WhileStmt || node instanceof DoStmt) {
-            // Now check for string concatenation inside this loop
-            checkForStringConcatenation(node, smells);
+            if (node instanceof AssignExpr) {
+                AssignExpr assign = (AssignExpr) node;
+                if (assign.getOperator() == AssignExpr.Operator.PLUS) {
+                    reportAssignment(assign);
+                    reportedAssignments.push(assign);
+                }
+            } else if (node instanceof BinaryExpr && reportedAssignments.isEmpty()) {
+                BinaryExpr binary = (BinaryExpr) node;
+                // Only the outermost '+' of a chain like a + "b" + c is reported
+                if (isConcatenation(binary) && !isConcatenationOperand(binary) && hasStringOperand(binary)) {
+                    reportBinary(binary);
+                }
+            }
         }
 
-        // Recursively check child nodes
-        for (Node child : node.getChildNodes()) {
-            detectInMethod(child, smells);
+        @Override
+        protected void exitInMethod(Node node) {
+            if (node instanceof ForStmt || node instanceof WhileStmt || node instanceof DoStmt) {
+                loopDepths.peek()[0]--;
+            } else if (node == reportedAssignments.peek()) {
+                reportedAssignments.pop();
+            }
+        }
+
+        private boolean isConcatenation(Node node) {
+            return node instanceof BinaryExpr && ((BinaryExpr) node).getOperator() == BinaryExpr.Operator.PLUS;
+        }
+
+        private boolean isConcatenationOperand(BinaryExpr binary) {
+            return binary.getParentNode().map(this::isConcatenation).orElse(false);
         }
-    }
 
-    private void checkForStringConcatenation(Node loopNode, List<CodeSmell> smells) {
-        // Look for += operations on strings
-        List<AssignExpr> assignments = loopNode.findAll(AssignExpr.class);
-
-        for (AssignExpr assign : assignments) {
-            if (assign.getOperator() == AssignExpr.Operator.PLUS) {
-                // Found += operator in loop
-                int line = assign.getBegin().get().line;
-
-                CodeSmell smell = new CodeSmell(
-                        "String Concatenation in Loop",
-                        "Line " + line,
-                        "Medium",
-                        "String concatenation using '+=' inside a loop is inefficient. " +
-                                "Each concatenation creates a new String object, leading to O(n²) performance. " +
-                                "Use StringBuilder for better performance: StringBuilder.append() is O(n)."
-                );
-
-                smells.add(smell);
+        /**
+         * Walk the operands of a '+' chain without recursing into anything but further '+'
+         * operators, and check each one structurally for a string.
+         */
+        private boolean hasStringOperand(BinaryExpr chain) {
+            operands.clear();
+            operands.push(chain);
+
+            while (!operands.isEmpty()) {
+                Expression operand = operands.pop();
+
+                if (isConcatenation(operand)) {
+                    BinaryExpr binary = (BinaryExpr) operand;
+                    operands.push(binary.getRight());
+                    operands.push(binary.getLeft());
+                } else if (isString(operand)) {
+                    operands.clear();
+                    return true;
+                }
             }
+
+            return false;
         }
 
-        // Also check for regular + concatenation in loops
-        List<BinaryExpr> binaryExprs = loopNode.findAll(BinaryExpr.class);
-
-        for (BinaryExpr binary : binaryExprs) {
-            if (binary.getOperator() == BinaryExpr.Operator.PLUS) {
-                // Check if it involves string operations
-                String exprStr = binary.toString();
-                if (exprStr.contains("\"") || exprStr.toLowerCase().contains("string")) {
-                    int line = binary.getBegin().get().line;
-
-                    CodeSmell smell = new CodeSmell(
-                            "String Concatenation in Loop",
-                            "Line " + line,
-                            "Medium",
-                            "String concatenation using '+' inside a loop may be inefficient. " +
-                                    "Consider using StringBuilder.append() for better performance."
-                    );
-
-                    smells.add(smell);
+        private boolean isString(Expression operand) {
+            if (operand instanceof StringLiteralExpr || operand instanceof TextBlockLiteralExpr) {
+                return true;
+            }
+            if (operand instanceof MethodCallExpr) {
+                return ((MethodCallExpr) operand).getNameAsString().equals("toString");
+            }
+            // Same naming heuristic as before: operands like 'result' are unknown, 'myString' is a string
+            if (operand instanceof NameExpr) {
+                return mentionsString(((NameExpr) operand).getNameAsString());
+            }
+            if (operand instanceof FieldAccessExpr) {
+                return mentionsString(((FieldAccessExpr) operand).getNameAsString());
+            }
+            return false;
+        }
+
+        private boolean mentionsString(String identifier) {
+            for (int i = 0; i + 6 <= identifier.length(); i++) {
+                if (identifier.regionMatches(true, i, "string", 0, 6)) {
+                    return true;
                 }
             }
+            return false;
+        }
+
+        private void reportAssignment(AssignExpr assign) {
+            // Found += operator in loop
+            smells.add(SmellDetector.smellAt(assign, SmellType.STRING_CONCATENATION_ASSIGN_IN_LOOP, null));
+        }
+
+        private void reportBinary(BinaryExpr binary) {
+            smells.add(SmellDetector.smellAt(binary, SmellType.STRING_CONCATENATION_IN_LOOP, null));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package com.refactorai.analyzer;
+
+import com.github.javaparser.ast.Node;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Depth-first AST traversal on an explicit stack instead of the call stack, so the depth of the
+ * tree can't overflow the thread: a generated 5,000-term string concatenation is a 5,000-deep
+ * chain of {@code BinaryExpr}s, and a long builder chain nests {@code MethodCallExpr}s the same way.
+ * <p>
+ * The stack grows to the deepest path seen and is kept for later walks, so a walker reused across
+ * methods or units stops allocating once it has seen the deepest one. A walker is not thread-safe.
+ */
+public final class TreeWalker {
+
+    /**
+     * Receives every node twice: before its children ({@link #enter}) and after ({@link #exit}).
+     */
+    public interface Visitor {
+
+        void enter(Node node);
+
+        void exit(Node node);
+    }
+
+    private Node[] nodes = new Node[64];
+    private Object[] children = new Object[64];
+    private int[] nextChild = new int[64];
+
+    /**
+     * Visit {@code root} and all its descendants in source order, exactly like a recursive walk
+     * over {@link Node#getChildNodes()}.
+     */
+    public void walk(Node root, Visitor visitor) {
+        int depth = 0;
+        visitor.enter(root);
+        push(depth++, root);
+
+        try {
+            while (depth > 0) {
+                int top = depth - 1;
+                @SuppressWarnings("unchecked")
+                List<Node> childNodes = (List<Node>) children[top];
+
+                if (nextChild[top] < childNodes.size()) {
+                    Node child = childNodes.get(nextChild[top]++);
+                    visitor.enter(child);
+                    push(depth++, child);
+                } else {
+                    Node node = nodes[top];
+                    // Drop references as the stack unwinds so a reused walker doesn't pin old trees
+                    nodes[top] = null;
+                    children[top] = null;
+                    depth--;
+                    visitor.exit(node);
+                }
+            }
+        } finally {
+            Arrays.fill(nodes, 0, depth, null);
+            Arrays.fill(children, 0, depth, null);
+        }
+    }
+
+    private void push(int depth, Node node) {
+        if (depth == nodes.length) {
+            int capacity = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            children = Arrays.copyOf(children, capacity);
+            nextChild = Arrays.copyOf(nextChild, capacity);
+        }
+        nodes[depth] = node;
+        // getChildNodes() wraps the list on every call, so it is fetched once per node
+        children[depth] = node.getChildNodes();
+        nextChild[depth] = 0;
+    }
+}
@@ -2,74 +2,133 @@ package com.refactorai.analyzer;
 
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.comments.JavadocComment;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import com.refactorai.service.ParserService;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
-public class UnusedImportDetector {
-
-    public List<CodeSmell> detect(CompilationUnit cu) {
-        List<CodeSmell> smells = new ArrayList<>();
-        List<ImportDeclaration> imports = cu.getImports();
-        String sourceCode = cu.toString();
-
-        for (ImportDeclaration importDecl : imports) {
-            String importName = importDecl.getNameAsString();
-
-            // Get the simple class name (last part after the last dot)
-            String simpleClassName = getSimpleClassName(importName);
-
-            // Check if this class name is used anywhere in the code
-            // (excluding the import statement itself)
-            String codeWithoutImports = removeImports(sourceCode);
+@Order(3)
+public class UnusedImportDetector implements SmellDetector {
+
+    // Type references inside Javadoc: {@link Foo}, {@linkplain Foo#bar}, {@value Foo#X}, @see Foo, @throws Foo
+    private static final Pattern JAVADOC_REFERENCE = Pattern.compile(
+            "(?:\\{@(?:link|linkplain|value)|@(?:see|throws|exception))\\s+([\\w$.]+)");
+
+    @Override
+    public Set<Class<? extends Node>> nodeTypes() {
+        return Set.of(
+                CompilationUnit.class,
+                ClassOrInterfaceType.class,
+                NameExpr.class,
+                AnnotationExpr.class,
+                MethodCallExpr.class
+        );
+    }
 
-            if (!isClassUsedInCode(simpleClassName, codeWithoutImports)) {
-                int line = importDecl.getBegin().get().line;
+    @Override
+    public Scan newScan() {
+        return new ImportScan();
+    }
 
-                CodeSmell smell = new CodeSmell(
-                        "Unused Import",
-                        "Line " + line,
-                        "Low",
-                        "Import '" + importName + "' is declared but never used. " +
-                                "Unused imports clutter code and should be removed."
-                );
+    /**
+     * Collects every simple name the unit refers to in one pass, then checks each import against
+     * that set. Static imports match member names, type imports match type names.
+     */
+    private static class ImportScan implements Scan {
+
+        private final Set<String> referencedNames = new HashSet<>();
+        private List<ImportDeclaration> imports = List.of();
+
+        @Override
+        public void enter(Node node) {
+            if (node instanceof CompilationUnit) {
+                CompilationUnit cu = (CompilationUnit) node;
+                imports = cu.getImports();
+                collectJavadocReferences(cu);
+            } else if (node instanceof ClassOrInterfaceType) {
+                referencedNames.add(((ClassOrInterfaceType) node).getNameAsString());
+            } else if (node instanceof NameExpr) {
+                referencedNames.add(((NameExpr) node).getNameAsString());
+            } else if (node instanceof AnnotationExpr) {
+                referencedNames.add(firstIdentifier(((AnnotationExpr) node).getNameAsString()));
+            } else if (node instanceof MethodCallExpr) {
+                MethodCallExpr call = (MethodCallExpr) node;
+                // Only unqualified calls can refer to a statically imported method
+                if (call.getScope().isEmpty()) {
+                    referencedNames.add(call.getNameAsString());
+                }
+            }
+        }
 
-                smells.add(smell);
+        private void collectJavadocReferences(CompilationUnit cu) {
+            List<Comment> comments = cu.containsData(ParserService.COMMENTS)
+                    ? cu.getData(ParserService.COMMENTS)
+                    : cu.getAllComments();
+
+            for (Comment comment : comments) {
+                if (comment instanceof JavadocComment) {
+                    Matcher matcher = JAVADOC_REFERENCE.matcher(comment.getContent());
+                    while (matcher.find()) {
+                        referencedNames.add(firstIdentifier(matcher.group(1)));
+                    }
+                }
             }
         }
 
-        return smells;
-    }
+        @Override
+        public List<CodeSmell> finish() {
+            List<CodeSmell> smells = new ArrayList<>();
+
+            for (ImportDeclaration importDecl : imports) {
+                // Members of a wildcard import can't be known without resolving the imported
+                // package or type, so those are never reported
+                if (importDecl.isAsterisk()) {
+                    continue;
+                }
+
+                String importName = importDecl.getNameAsString();
+
+                if (!referencedNames.contains(importDecl.getName().getIdentifier())) {
+                    CodeSmell smell = SmellDetector.smellAt(
+                            importDecl,
+                            SmellType.UNUSED_IMPORT,
+                            importName,
+                            importName
+                    );
+
+                    smells.add(smell);
+                }
+            }
 
-    private String getSimpleClassName(String fullClassName) {
-        int lastDot = fullClassName.lastIndexOf('.');
-        if (lastDot > 0) {
-            return fullClassName.substring(lastDot + 1);
+            return smells;
         }
-        return fullClassName;
-    }
-
-    private String removeImports(String sourceCode) {
-        // Remove all import statements to avoid false positives
-        String[] lines = sourceCode.split("\n");
-        StringBuilder result = new StringBuilder();
 
-        for (String line : lines) {
-            if (!line.trim().startsWith("import ")) {
-                result.append(line).append("\n");
+        private static String firstIdentifier(String reference) {
+            int end = reference.length();
+            for (int i = 0; i < reference.length(); i++) {
+                char c = reference.charAt(i);
+                if (c == '.' || c == '#') {
+                    end = i;
+                    break;
+                }
             }
+            return reference.substring(0, end);
         }
-
-        return result.toString();
-    }
-
-    private boolean isClassUsedInCode(String className, String code) {
-        // Check if the class name appears as a standalone word in the code
-        // Use word boundaries to avoid partial matches
-        String regex = "\\b" + className + "\\b";
-        return code.matches("(?s).*" + regex + ".*");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,165 @@
+package com.refactorai.cli;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.javaparser.ast.CompilationUnit;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.service.ParserService;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Analyzes every {@code .java} file under a directory on a fork/join pool. Each directory is
+ * listed by its own task, which forks one task per subdirectory and per source file, so listing
+ * and analysis both spread over all workers. Hidden directories (such as {@code .git}) are skipped.
+ */
+public class BatchScanner {
+
+    private final ParserService parserService;
+    private final SmellDetectorEngine smellDetectorEngine;
+    private final SourceReader sourceReader;
+    private final int threads;
+
+    public BatchScanner(ParserService parserService, SmellDetectorEngine smellDetectorEngine,
+                        SourceReader sourceReader, int threads) {
+        this.parserService = parserService;
+        this.smellDetectorEngine = smellDetectorEngine;
+        this.sourceReader = sourceReader;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Results for every source file under {@code root}, sorted by path.
+     */
+    public List<FileResult> scan(Path root) {
+        Queue<FileResult> results = new ConcurrentLinkedQueue<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new DirectoryTask(root, root, results));
+        } finally {
+            pool.shutdown();
+        }
+
+        List<FileResult> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparing(FileResult::getPath));
+        return sorted;
+    }
+
+    private FileResult analyze(Path root, Path file) {
+        String path = root.relativize(file).toString();
+        try {
+            Optional<CompilationUnit> cuOpt = parserService.parseCode(sourceReader.read(file));
+            if (cuOpt.isEmpty()) {
+                return FileResult.failed(path, "Failed to parse Java code");
+            }
+            return FileResult.analyzed(path, smellDetectorEngine.detect(cuOpt.get()));
+        } catch (IOException e) {
+            return FileResult.failed(path, "Failed to read file: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return FileResult.failed(path, "Error analyzing file: " + e.getMessage());
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+
+        private final Path root;
+        private final Path directory;
+        private final Queue<FileResult> results;
+
+        private DirectoryTask(Path root, Path directory, Queue<FileResult> results) {
+            this.root = root;
+            this.directory = directory;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!name.startsWith(".")) {
+                            tasks.add(new DirectoryTask(root, entry, results));
+                        }
+                    } else if (name.endsWith(".java") && Files.isRegularFile(entry)) {
+                        tasks.add(new FileTask(root, entry, results));
+                    }
+                }
+            } catch (IOException e) {
+                results.add(FileResult.failed(root.relativize(directory).toString(),
+                        "Failed to list directory: " + e.getMessage()));
+            }
+
+            invokeAll(tasks);
+        }
+    }
+
+    private final class FileTask extends RecursiveAction {
+
+        private final Path root;
+        private final Path file;
+        private final Queue<FileResult> results;
+
+        private FileTask(Path root, Path file, Queue<FileResult> results) {
+            this.root = root;
+            this.file = file;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            results.add(analyze(root, file));
+        }
+    }
+
+    /**
+     * The smells found in one file, or why it could not be analyzed.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class FileResult {
+
+        private final String path;
+        private final List<CodeSmell> smells;
+        private final String error;
+
+        private FileResult(String path, List<CodeSmell> smells, String error) {
+            this.path = path;
+            this.smells = smells;
+            this.error = error;
+        }
+
+        static FileResult analyzed(String path, List<CodeSmell> smells) {
+            return new FileResult(path, smells, null);
+        }
+
+        static FileResult failed(String path, String error) {
+            return new FileResult(path, null, error);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public List<CodeSmell> getSmells() {
+            return smells;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.refactorai.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads source files through a {@link FileChannel}. Files of at least {@code mapThresholdBytes}
+ * are memory-mapped and decoded straight from the page cache; smaller ones are read into a heap
+ * buffer, where mapping would cost more than it saves.
+ */
+public class SourceReader {
+
+    private final long mapThresholdBytes;
+
+    public SourceReader(long mapThresholdBytes) {
+        this.mapThresholdBytes = mapThresholdBytes;
+    }
+
+    public String read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+
+            if (size >= mapThresholdBytes) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return StandardCharsets.UTF_8.decode(mapped).toString();
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading until the file is in the buffer
+            }
+            buffer.flip();
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        }
+    }
+}
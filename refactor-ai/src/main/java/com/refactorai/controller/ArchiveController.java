@@ -0,0 +1,40 @@
+package com.refactorai.controller;
+
+import com.refactorai.service.ArchiveAnalysisService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api")
+@CrossOrigin(origins = "*")
+public class ArchiveController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Autowired
+    private ArchiveAnalysisService archiveAnalysisService;
+
+    /**
+     * Analyze a whole project uploaded as a zip or tar.gz request body. Results are streamed back
+     * as NDJSON, one line per .java file as soon as it is analyzed, then a summary line; an
+     * archive that breaks off partway gets an error line before the summary.
+     */
+    @PostMapping("/analyze/archive")
+    public void analyzeArchive(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+
+        try {
+            archiveAnalysisService.analyze(request.getInputStream(), response.getOutputStream());
+        } catch (IllegalArgumentException e) {
+            if (!response.isCommitted()) {
+                response.sendError(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value(), e.getMessage());
+            }
+        }
+    }
+}
@@ -6,14 +6,29 @@ import com.refactorai.dto.SignupRequest;
 import com.refactorai.entity.User;
 import com.refactorai.repository.UserRepository;
 import com.refactorai.security.JwtUtil;
+import com.refactorai.security.PasswordHasher;
+import com.refactorai.service.WorkerThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.Optional;
-
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Signup and login. Passwords are hashed and checked by {@link PasswordHasher} on threads of its
+ * own; the request thread is released while that happens. Saving the user and issuing the token
+ * happen on a separate pool, so a slow database never holds up the hashing threads.
+ */
 @RestController
 @RequestMapping("/api/auth")
 @CrossOrigin(origins = "*")
@@ -25,66 +40,149 @@ public class AuthController {
     @Autowired
     private JwtUtil jwtUtil;
 
-    private BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private WorkerThreads workerThreads;
+
+    @Value("${refactorai.auth.timeout-ms:10000}")
+    private long authTimeoutMs;
+
+    @Value("${refactorai.auth.db-threads:4}")
+    private int dbThreads;
+
+    private ExecutorService accountWorkers;
+
+    @PostConstruct
+    public void init() {
+        accountWorkers = workerThreads.newPool("auth-account-", dbThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        accountWorkers.shutdownNow();
+    }
 
     @PostMapping("/signup")
-    public ResponseEntity<?> signup(@RequestBody SignupRequest request) {
+    public DeferredResult<ResponseEntity<AuthResponse>> signup(@RequestBody SignupRequest request,
+                                                               HttpServletRequest httpRequest) {
+        DeferredResult<ResponseEntity<AuthResponse>> result = deferred();
+        if (!passwordHasher.admit(httpRequest.getRemoteAddr(), request.getUsername())) {
+            result.setResult(throttled());
+            return result;
+        }
+
         try {
             // Check if username exists
             if (userRepository.existsByUsername(request.getUsername())) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body(new AuthResponse(null, null, "Username already exists"));
+                result.setResult(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(new AuthResponse(null, null, "Username already exists")));
+                return result;
             }
 
             // Check if email exists
             if (userRepository.existsByEmail(request.getEmail())) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body(new AuthResponse(null, null, "Email already exists"));
+                result.setResult(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(new AuthResponse(null, null, "Email already exists")));
+                return result;
             }
 
-            // Create new user
-            String hashedPassword = passwordEncoder.encode(request.getPassword());
-            User user = new User(request.getUsername(), request.getEmail(), hashedPassword);
-            userRepository.save(user);
-
-            // Generate token
-            String token = jwtUtil.generateToken(user.getUsername());
-
-            return ResponseEntity.ok(new AuthResponse(token, user.getUsername(), "User registered successfully"));
-
+            // Create new user once the password is hashed
+            passwordHasher.encode(request.getPassword())
+                    .thenApplyAsync(hashedPassword -> {
+                        User user = new User(request.getUsername(), request.getEmail(), hashedPassword);
+                        userRepository.save(user);
+
+                        // Generate token
+                        String token = jwtUtil.generateToken(user);
+                        return ResponseEntity.ok(new AuthResponse(token, user.getUsername(), "User registered successfully"));
+                    }, accountWorkers)
+                    .exceptionally(this::failure)
+                    .thenAccept(result::setResult);
+
+        } catch (RejectedExecutionException e) {
+            result.setResult(busy());
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(new AuthResponse(null, null, "Error: " + e.getMessage()));
+            result.setResult(failure(e));
         }
+        return result;
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest request) {
+    public DeferredResult<ResponseEntity<AuthResponse>> login(@RequestBody LoginRequest request,
+                                                              HttpServletRequest httpRequest) {
+        DeferredResult<ResponseEntity<AuthResponse>> result = deferred();
+        if (!passwordHasher.admit(httpRequest.getRemoteAddr(), request.getUsername())) {
+            result.setResult(throttled());
+            return result;
+        }
+
         try {
             // Find user
             Optional<User> userOpt = userRepository.findByUsername(request.getUsername());
 
             if (userOpt.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(new AuthResponse(null, null, "Invalid username or password"));
+                result.setResult(invalidCredentials());
+                return result;
             }
 
             User user = userOpt.get();
 
             // Check password
-            if (!passwordEncoder.matches(request.getPassword(), user.getPassword())) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(new AuthResponse(null, null, "Invalid username or password"));
-            }
+            passwordHasher.verify(request.getPassword(), user.getPassword())
+                    .thenApplyAsync(verification -> {
+                        if (!verification.matches()) {
+                            return invalidCredentials();
+                        }
+
+                        // Stored at another cost than the configured one
+                        if (verification.getRehashed() != null) {
+                            user.setPassword(verification.getRehashed());
+                            userRepository.save(user);
+                        }
+
+                        // Generate token
+                        String token = jwtUtil.generateToken(user);
+                        return ResponseEntity.ok(new AuthResponse(token, user.getUsername(), "Login successful"));
+                    }, accountWorkers)
+                    .exceptionally(this::failure)
+                    .thenAccept(result::setResult);
+
+        } catch (RejectedExecutionException e) {
+            result.setResult(busy());
+        } catch (Exception e) {
+            result.setResult(failure(e));
+        }
+        return result;
+    }
 
-            // Generate token
-            String token = jwtUtil.generateToken(user.getUsername());
+    private DeferredResult<ResponseEntity<AuthResponse>> deferred() {
+        DeferredResult<ResponseEntity<AuthResponse>> result = new DeferredResult<>(authTimeoutMs);
+        result.onTimeout(() -> result.setErrorResult(busy()));
+        return result;
+    }
 
-            return ResponseEntity.ok(new AuthResponse(token, user.getUsername(), "Login successful"));
+    private static ResponseEntity<AuthResponse> invalidCredentials() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(new AuthResponse(null, null, "Invalid username or password"));
+    }
 
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(new AuthResponse(null, null, "Error: " + e.getMessage()));
-        }
+    private ResponseEntity<AuthResponse> throttled() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, passwordHasher.getWindow().toSeconds())))
+                .body(new AuthResponse(null, null, "Too many attempts, try again later"));
+    }
+
+    private static ResponseEntity<AuthResponse> busy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new AuthResponse(null, null, "Too many sign-ins in progress, try again shortly"));
+    }
+
+    private ResponseEntity<AuthResponse> failure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new AuthResponse(null, null, "Error: " + cause.getMessage()));
     }
-}
\ No newline at end of file
+}
@@ -1,267 +1,286 @@
 package com.refactorai.controller;
 
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.MethodDeclaration;
-import com.refactorai.analyzer.*;
 import com.refactorai.entity.AnalysisHistory;
 import com.refactorai.entity.User;
+import com.refactorai.llm.LlmException;
 import com.refactorai.model.CodeSmell;
-import com.refactorai.repository.AnalysisHistoryRepository;
-import com.refactorai.repository.UserRepository;
-import com.refactorai.security.JwtUtil;
-import com.refactorai.service.DiffService;
-import com.refactorai.service.OpenAIService;
-import com.refactorai.service.ParserService;
+import com.refactorai.model.CompactSmellReport;
+import com.refactorai.model.SmellType;
+import com.refactorai.security.AuthenticatedUser;
+import com.refactorai.service.AnalysisHandleStore;
+import com.refactorai.service.AnalysisHistoryService;
+import com.refactorai.service.AnalysisService;
+import com.refactorai.service.RefactorService;
+import com.refactorai.service.RefactorStreamService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {HelloController.ANALYSIS_ID_HEADER, HttpHeaders.WWW_AUTHENTICATE})
 public class HelloController {
 
-    @Autowired
-    private ParserService parserService;
+    /**
+     * Response header of /analyze naming the stored analysis, for /refactor?analysisId=.
+     */
+    public static final String ANALYSIS_ID_HEADER = "X-Analysis-Id";
 
     @Autowired
-    private LongMethodDetector longMethodDetector;
+    private AnalysisService analysisService;
 
     @Autowired
-    private DeepNestingDetector deepNestingDetector;
+    private AnalysisHandleStore analysisHandleStore;
 
     @Autowired
-    private UnusedImportDetector unusedImportDetector;
+    private AnalysisHistoryService analysisHistoryService;
 
     @Autowired
-    private MagicNumberDetector magicNumberDetector;
+    private RefactorStreamService refactorStreamService;
 
     @Autowired
-    private GodClassDetector godClassDetector;
+    private RefactorService refactorService;
 
-    @Autowired
-    private StringConcatenationInLoopDetector stringConcatenationInLoopDetector;
-
-    @Autowired
-    private EmptyCatchBlockDetector emptyCatchBlockDetector;
-
-    @Autowired
-    private OpenAIService openAIService;
-
-    @Autowired
-    private DiffService diffService;
-
-    @Autowired
-    private UserRepository userRepository;
-
-    @Autowired
-    private AnalysisHistoryRepository analysisHistoryRepository;
-
-    @Autowired
-    private JwtUtil jwtUtil;
+    @Value("${refactorai.refactor.timeout-ms:120000}")
+    private long refactorTimeoutMs;
 
     @GetMapping("/hello")
     public String hello() {
         return "RefactorAI is running! 🚀";
     }
 
+    /**
+     * Smells found in the code. When there are any, the analysis is also kept for a while under the
+     * id in the {@value #ANALYSIS_ID_HEADER} header, so /refactor can fix one of them without the
+     * code being sent and analyzed again.
+     */
     @PostMapping("/analyze")
-    public List<CodeSmell> analyze(@RequestBody String javaCode) {
-        Optional<CompilationUnit> cuOpt = parserService.parseCode(javaCode);
-
-        if (cuOpt.isEmpty()) {
-            return List.of(new CodeSmell(
-                    "Parsing Error",
-                    "N/A",
-                    "Critical",
-                    "Failed to parse Java code. Please ensure the code is valid."
-            ));
-        }
+    public ResponseEntity<List<CodeSmell>> analyze(@RequestBody String javaCode) {
+        Optional<List<CodeSmell>> smellsOpt = analysisService.analyze(javaCode);
 
-        CompilationUnit cu = cuOpt.get();
-        List<MethodDeclaration> methods = parserService.extractMethods(cu);
-
-        List<CodeSmell> allSmells = new ArrayList<>();
+        if (smellsOpt.isEmpty()) {
+            return ResponseEntity.ok(List.of(CodeSmell.of(SmellType.PARSING_ERROR)));
+        }
 
-        allSmells.addAll(longMethodDetector.detect(methods));
-        allSmells.addAll(deepNestingDetector.detect(methods));
-        allSmells.addAll(unusedImportDetector.detect(cu));
-        allSmells.addAll(magicNumberDetector.detect(methods));
-        allSmells.addAll(godClassDetector.detect(cu));
-        allSmells.addAll(stringConcatenationInLoopDetector.detect(methods));
-        allSmells.addAll(emptyCatchBlockDetector.detect(methods));
+        List<CodeSmell> allSmells = smellsOpt.get();
 
         if (allSmells.isEmpty()) {
-            return List.of(new CodeSmell(
-                    "No Issues Found",
-                    "N/A",
-                    "Info",
-                    "Great! No code smells detected."
-            ));
+            return ResponseEntity.ok(List.of(CodeSmell.of(SmellType.NO_ISSUES_FOUND)));
         }
 
-        return allSmells;
+        return ResponseEntity.ok()
+                .header(ANALYSIS_ID_HEADER, analysisHandleStore.put(javaCode, allSmells))
+                .body(allSmells);
     }
 
+    /**
+     * Same findings as {@link #analyze}, with each smell type's texts sent once and every finding
+     * reduced to its type, position, symbol and template arguments.
+     */
+    @PostMapping(value = "/analyze", params = "format=compact")
+    public ResponseEntity<CompactSmellReport> analyzeCompact(@RequestBody String javaCode) {
+        ResponseEntity<List<CodeSmell>> analysis = analyze(javaCode);
+        return ResponseEntity.ok().headers(analysis.getHeaders()).body(CompactSmellReport.of(analysis.getBody()));
+    }
+
+    /**
+     * Analyze, ask the LLM to fix one smell ({@code smell} is its index in the /analyze list, the
+     * first by default) and diff the result. Only the method (or class) around the smell is sent,
+     * and the answer is spliced back into the original file. The request thread is released while
+     * the LLM call is in flight; the response is written when it completes.
+     */
     @PostMapping("/refactor")
-    public Map<String, Object> refactor(
+    public DeferredResult<Map<String, Object>> refactor(
             @RequestBody String javaCode,
-            @RequestHeader(value = "Authorization", required = false) String authHeader
+            @RequestParam(value = "smell", defaultValue = "0") int smellIndex,
+            @AuthenticationPrincipal AuthenticatedUser principal
     ) {
-        Map<String, Object> response = new HashMap<>();
-
-        // First analyze the code
-        Optional<CompilationUnit> cuOpt = parserService.parseCode(javaCode);
+        Optional<List<CodeSmell>> smellsOpt = analysisService.analyze(javaCode);
 
-        if (cuOpt.isEmpty()) {
-            response.put("error", "Failed to parse Java code");
-            return response;
+        if (smellsOpt.isEmpty()) {
+            return parseFailure();
         }
+        return refactor(javaCode, smellsOpt.get(), smellIndex, principal);
+    }
 
-        CompilationUnit cu = cuOpt.get();
-        List<MethodDeclaration> methods = parserService.extractMethods(cu);
-
-        List<CodeSmell> allSmells = new ArrayList<>();
-        allSmells.addAll(longMethodDetector.detect(methods));
-        allSmells.addAll(deepNestingDetector.detect(methods));
-        allSmells.addAll(unusedImportDetector.detect(cu));
-        allSmells.addAll(magicNumberDetector.detect(methods));
-        allSmells.addAll(godClassDetector.detect(cu));
-        allSmells.addAll(stringConcatenationInLoopDetector.detect(methods));
-        allSmells.addAll(emptyCatchBlockDetector.detect(methods));
+    /**
+     * Same as {@link #refactor(String, int, AuthenticatedUser)} for code already analyzed: {@code analysisId}
+     * is the {@value #ANALYSIS_ID_HEADER} /analyze answered with, and no body is needed.
+     */
+    @PostMapping(value = "/refactor", params = "analysisId")
+    public DeferredResult<Map<String, Object>> refactorAnalysis(
+            @RequestParam("analysisId") String analysisId,
+            @RequestParam(value = "smell", defaultValue = "0") int smellIndex,
+            @AuthenticationPrincipal AuthenticatedUser principal
+    ) {
+        AnalysisHandleStore.Analysis analysis = analysis(analysisId);
+        return refactor(analysis.getJavaCode(), analysis.getSmells(), smellIndex, principal);
+    }
 
-        if (allSmells.isEmpty()) {
-            response.put("message", "No code smells detected! Code looks good.");
-            response.put("originalCode", javaCode);
-            return response;
+    private DeferredResult<Map<String, Object>> refactor(String javaCode, List<CodeSmell> allSmells,
+                                                         int smellIndex, AuthenticatedUser principal) {
+        CompletableFuture<Map<String, Object>> response;
+        try {
+            response = refactorService.refactor(javaCode, allSmells, smellIndex, principal);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
+        return deferred(response);
+    }
 
-        // Get AI refactoring for first smell
-        CodeSmell firstSmell = allSmells.get(0);
-        String aiResponse = openAIService.getRefactoringSuggestion(
-                javaCode,
-                firstSmell.getType(),
-                firstSmell.getDescription()
-        );
-
-        // Extract refactored code from AI response
-        String refactoredCode = diffService.extractJavaCode(aiResponse);
-
-        // Generate diff
-        String diff = diffService.generateDiff(javaCode, refactoredCode);
-
-        // Build response
-        response.put("originalCode", javaCode);
-        response.put("refactoredCode", refactoredCode);
-        response.put("diff", diff);
-        response.put("detectedSmells", allSmells);
-        response.put("explanation", "AI refactored the code to fix: " + firstSmell.getType());
-
-        // Save to database if user is authenticated
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            try {
-                String token = authHeader.substring(7);
-                String username = jwtUtil.extractUsername(token);
-                Optional<User> userOpt = userRepository.findByUsername(username);
-
-                if (userOpt.isPresent()) {
-                    User user = userOpt.get();
-
-                    // Create smell types string
-                    String smellTypes = allSmells.stream()
-                            .map(CodeSmell::getType)
-                            .distinct()
-                            .reduce((a, b) -> a + ", " + b)
-                            .orElse("None");
-
-                    // Save analysis
-                    AnalysisHistory history = new AnalysisHistory(
-                            user,
-                            javaCode,
-                            refactoredCode,
-                            diff,
-                            allSmells.size(),
-                            smellTypes
-                    );
-                    analysisHistoryRepository.save(history);
-
-                    response.put("saved", true);
-                }
-            } catch (Exception e) {
-                // Silently fail - analysis works even if save fails
-                System.out.println("Failed to save analysis: " + e.getMessage());
-                e.printStackTrace();
-                response.put("saved", false);
-                response.put("saveError", e.getMessage());
-            }
-        }
+    /**
+     * Like {@link #refactor(String, int, AuthenticatedUser)}, fixing every smell instead of only one: one LLM
+     * call per method with smells, sent concurrently, and the answers merged into one diff. Each
+     * group's outcome (applied, conflict or failed) is listed under {@code groups}.
+     */
+    @PostMapping(value = "/refactor", params = "mode=all")
+    public DeferredResult<Map<String, Object>> refactorAll(
+            @RequestBody String javaCode,
+            @AuthenticationPrincipal AuthenticatedUser principal
+    ) {
+        Optional<List<CodeSmell>> smellsOpt = analysisService.analyze(javaCode);
 
-        return response;
+        if (smellsOpt.isEmpty()) {
+            return parseFailure();
+        }
+        return refactorAll(javaCode, smellsOpt.get(), principal);
     }
 
-    @GetMapping("/test-auth")
-    public Map<String, Object> testAuth(
-            @RequestHeader(value = "Authorization", required = false) String authHeader
+    /**
+     * Same as {@link #refactorAll(String, AuthenticatedUser)} for code already analyzed, by its
+     * {@value #ANALYSIS_ID_HEADER}.
+     */
+    @PostMapping(value = "/refactor", params = {"mode=all", "analysisId"})
+    public DeferredResult<Map<String, Object>> refactorAllOfAnalysis(
+            @RequestParam("analysisId") String analysisId,
+            @AuthenticationPrincipal AuthenticatedUser principal
     ) {
+        AnalysisHandleStore.Analysis analysis = analysis(analysisId);
+        return refactorAll(analysis.getJavaCode(), analysis.getSmells(), principal);
+    }
+
+    private DeferredResult<Map<String, Object>> refactorAll(String javaCode, List<CodeSmell> allSmells,
+                                                            AuthenticatedUser principal) {
+        return deferred(refactorService.refactorAll(javaCode, allSmells, principal));
+    }
+
+    /**
+     * The request's result once {@code response} completes. The request thread is released
+     * meanwhile, and the LLM calls are cancelled if the client or the timeout ends it first.
+     */
+    private DeferredResult<Map<String, Object>> deferred(CompletableFuture<Map<String, Object>> response) {
+        DeferredResult<Map<String, Object>> result = new DeferredResult<>(refactorTimeoutMs);
+        result.onCompletion(() -> response.cancel(false));
+        response.whenComplete((body, error) -> {
+            if (error != null) {
+                // Handed to handleLlmFailure for typed LLM errors
+                result.setErrorResult(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                result.setResult(body);
+            }
+        });
+        return result;
+    }
+
+    private DeferredResult<Map<String, Object>> parseFailure() {
+        DeferredResult<Map<String, Object>> result = new DeferredResult<>(refactorTimeoutMs);
         Map<String, Object> response = new HashMap<>();
+        response.put("error", "Failed to parse Java code");
+        result.setResult(response);
+        return result;
+    }
 
-        if (authHeader == null) {
-            response.put("error", "No Authorization header");
-            return response;
-        }
+    private AnalysisHandleStore.Analysis analysis(String analysisId) {
+        return analysisHandleStore.get(analysisId).orElseThrow(() -> new ResponseStatusException(
+                HttpStatus.NOT_FOUND, "Unknown or expired analysis; send the code again"));
+    }
 
-        if (!authHeader.startsWith("Bearer ")) {
-            response.put("error", "Authorization header doesn't start with Bearer");
-            return response;
+    /**
+     * The LLM call behind /refactor failed or was refused; the status says whether it is worth
+     * trying again (429, 503) or not.
+     */
+    @ExceptionHandler(LlmException.class)
+    public ResponseEntity<Map<String, Object>> handleLlmFailure(LlmException e) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", e.getMessage());
+        body.put("retryable", e.isRetryable() || e instanceof LlmException.Unavailable);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(e.httpStatus());
+        if (e instanceof LlmException.RateLimited rateLimited && rateLimited.getRetryAfter() != null) {
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, rateLimited.getRetryAfter().toSeconds())));
         }
+        return response.body(body);
+    }
 
-        try {
-            String token = authHeader.substring(7);
-            String username = jwtUtil.extractUsername(token);
-
-            Optional<User> userOpt = userRepository.findByUsername(username);
+    /**
+     * An analysis id that isn't stored (any more), or a smell index the analysis doesn't have.
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<Map<String, Object>> handleBadReference(ResponseStatusException e) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", e.getReason());
+        return ResponseEntity.status(e.getStatusCode()).body(body);
+    }
 
-            if (userOpt.isEmpty()) {
-                response.put("error", "User not found: " + username);
-                return response;
-            }
+    /**
+     * Same pipeline as {@link #refactor(String, int, AuthenticatedUser)}, streamed as server-sent events while each stage
+     * finishes: parsed, smells (once per detector), token, diff, history, then done.
+     */
+    @PostMapping(value = "/refactor/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter refactorStream(
+            @RequestBody String javaCode,
+            @AuthenticationPrincipal AuthenticatedUser principal
+    ) {
+        return refactorStreamService.refactor(javaCode, principal);
+    }
 
-            response.put("success", true);
-            response.put("username", username);
-            response.put("userId", userOpt.get().getId());
+    @GetMapping("/test-auth")
+    public Map<String, Object> testAuth(@AuthenticationPrincipal AuthenticatedUser principal) {
+        Map<String, Object> response = new HashMap<>();
 
-        } catch (Exception e) {
-            response.put("error", "Exception: " + e.getMessage());
-            e.printStackTrace();
+        // The token was verified before the request got here; a bad one never does
+        if (principal == null) {
+            response.put("error", "No bearer token");
+            return response;
         }
 
+        response.put("success", true);
+        response.put("username", principal.getUsername());
+        // Only tokens from before they carried the id need a lookup
+        response.put("userId", principal.getId() != null
+                ? principal.getId()
+                : analysisHistoryService.findUser(principal).map(User::getId).orElse(null));
         return response;
     }
 
     @GetMapping("/history")
-    public Map<String, Object> getHistory(
-            @RequestHeader(value = "Authorization", required = false) String authHeader
-    ) {
+    public Map<String, Object> getHistory(@AuthenticationPrincipal AuthenticatedUser principal) {
         Map<String, Object> response = new HashMap<>();
 
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (principal == null) {
             response.put("error", "Unauthorized");
             return response;
         }
 
         try {
-            String token = authHeader.substring(7);
-            String username = jwtUtil.extractUsername(token);
-            Optional<User> userOpt = userRepository.findByUsername(username);
-
-            if (userOpt.isEmpty()) {
+            Optional<List<AnalysisHistory>> recent = analysisHistoryService.findRecent(principal);
+            if (recent.isEmpty()) {
                 response.put("error", "User not found");
                 return response;
             }
-
-            User user = userOpt.get();
-            List<AnalysisHistory> history = analysisHistoryRepository.findTop10ByUserOrderByCreatedAtDesc(user);
+            List<AnalysisHistory> history = recent.get();
 
             response.put("success", true);
             response.put("count", history.size());
@@ -273,4 +292,4 @@ public class HelloController {
 
         return response;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+package com.refactorai.controller;
+
+import com.refactorai.entity.RefactorJob;
+import com.refactorai.security.AuthenticatedUser;
+import com.refactorai.service.RefactorJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * /refactor as a job: submitting answers at once with the job's id, and the result is fetched by
+ * polling the job or by subscribing to its events. Takes the same {@code mode=all} and
+ * {@code smell} parameters as /refactor.
+ * <p>
+ * A signed-in user's job is only shown to that user; to anyone else it answers 404, as if there
+ * were no such job. Anonymous jobs are shown to whoever has their id, which is random and only
+ * given to the submitter, so the id works as the key to the job.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@CrossOrigin(origins = "*", exposedHeaders = HttpHeaders.WWW_AUTHENTICATE)
+public class JobController {
+
+    @Autowired
+    private RefactorJobService refactorJobService;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submit(
+            @RequestBody String javaCode,
+            @RequestParam(value = "mode", required = false) String mode,
+            @RequestParam(value = "smell", defaultValue = "0") int smellIndex,
+            @AuthenticationPrincipal AuthenticatedUser principal
+    ) {
+        if (smellIndex < 0) {
+            Map<String, Object> body = new HashMap<>();
+            body.put("error", "No smell " + smellIndex);
+            return ResponseEntity.badRequest().body(body);
+        }
+        try {
+            RefactorJob job = refactorJobService.submit(javaCode, principal, "all".equals(mode), smellIndex);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, "/api/jobs/" + job.getId())
+                    .body(refactorJobService.view(job));
+        } catch (RejectedExecutionException e) {
+            Map<String, Object> body = new HashMap<>();
+            body.put("error", e.getMessage());
+            body.put("retryable", true);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "10")
+                    .body(body);
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> get(@PathVariable String id,
+                                                   @AuthenticationPrincipal AuthenticatedUser principal) {
+        return refactorJobService.find(id, principal)
+                .map(job -> ResponseEntity.ok(refactorJobService.view(job)))
+                .orElseGet(() -> notFound());
+    }
+
+    /**
+     * Server-sent events for one job: {@code status}, then {@code done} with the result.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String id,
+                                             @AuthenticationPrincipal AuthenticatedUser principal) {
+        return refactorJobService.subscribe(id, principal)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static ResponseEntity<Map<String, Object>> notFound() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", "No such job");
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+    }
+}
@@ -0,0 +1,54 @@
+package com.refactorai.controller;
+
+import com.refactorai.analyzer.MethodResultCache;
+import com.refactorai.llm.LlmCallGuard;
+import com.refactorai.llm.LlmResponseCache;
+import com.refactorai.security.PasswordHasher;
+import com.refactorai.service.AnalysisCache;
+import com.refactorai.service.AnalysisHandleStore;
+import com.refactorai.service.RefactorJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+@CrossOrigin(origins = "*")
+public class MetricsController {
+
+    @Autowired
+    private AnalysisCache analysisCache;
+
+    @Autowired
+    private AnalysisHandleStore analysisHandleStore;
+
+    @Autowired
+    private MethodResultCache methodResultCache;
+
+    @Autowired
+    private LlmCallGuard llmCallGuard;
+
+    @Autowired
+    private LlmResponseCache llmResponseCache;
+
+    @Autowired
+    private RefactorJobService refactorJobService;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @GetMapping
+    public Map<String, Object> metrics() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("analysisCache", analysisCache.stats());
+        response.put("analysisHandles", analysisHandleStore.stats());
+        response.put("methodCache", methodResultCache.stats());
+        response.put("llm", llmCallGuard.stats());
+        response.put("llmCache", llmResponseCache.stats());
+        response.put("jobs", refactorJobService.stats());
+        response.put("passwordHashing", passwordHasher.stats());
+        return response;
+    }
+}
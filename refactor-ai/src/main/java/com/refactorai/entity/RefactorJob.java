@@ -0,0 +1,184 @@
+package com.refactorai.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A /refactor run submitted to the job queue. The row is the job's only state, so queued and
+ * interrupted jobs are picked up again after a restart.
+ */
+@Entity
+@Table(name = "refactor_jobs", indexes = @Index(name = "idx_refactor_jobs_status", columnList = "status"))
+public class RefactorJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @ManyToOne
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(nullable = false)
+    private int priority;
+
+    @Column(name = "all_smells", nullable = false)
+    private boolean allSmells;
+
+    // Index of the smell to fix when not all of them; null on rows from before it could be chosen
+    @Column(name = "smell_index")
+    private Integer smellIndex;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String originalCode;
+
+    // The response /refactor would have given, as JSON
+    @Column(columnDefinition = "TEXT")
+    private String result;
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+
+    private Boolean retryable;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public RefactorJob() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public RefactorJob(String id, User user, String originalCode, boolean allSmells, int smellIndex, int priority) {
+        this.id = id;
+        this.user = user;
+        this.originalCode = originalCode;
+        this.allSmells = allSmells;
+        this.smellIndex = smellIndex;
+        this.priority = priority;
+        this.status = Status.QUEUED;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public boolean isAllSmells() {
+        return allSmells;
+    }
+
+    public void setAllSmells(boolean allSmells) {
+        this.allSmells = allSmells;
+    }
+
+    public int getSmellIndex() {
+        return smellIndex != null ? smellIndex : 0;
+    }
+
+    public void setSmellIndex(int smellIndex) {
+        this.smellIndex = smellIndex;
+    }
+
+    public String getOriginalCode() {
+        return originalCode;
+    }
+
+    public void setOriginalCode(String originalCode) {
+        this.originalCode = originalCode;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Boolean getRetryable() {
+        return retryable;
+    }
+
+    public void setRetryable(Boolean retryable) {
+        this.retryable = retryable;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
@@ -0,0 +1,173 @@
+package com.refactorai.llm;
+
+import okhttp3.Headers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Token bucket for outgoing LLM requests that follows what the provider tells us.
+ * <p>
+ * The bucket starts at the configured requests per minute. Every response's rate-limit headers
+ * ({@code x-ratelimit-remaining-*}, {@code x-ratelimit-reset-*}) cap the local tokens at what the
+ * provider says is left and hold all requests until its reset once a budget is exhausted. A 429
+ * halves the refill rate and honors {@code Retry-After}; each success then adds back a tenth of the
+ * configured rate, so the limiter settles just under the provider's real limit.
+ */
+public class AdaptiveRateLimiter {
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final LongSupplier clock;
+    private final double configuredRate;
+    private final double minRate;
+    private final double capacity;
+
+    // Tokens per nanosecond; tokens may go negative, which queues reservations behind each other
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+
+    public AdaptiveRateLimiter(int requestsPerMinute) {
+        this(requestsPerMinute, System::nanoTime);
+    }
+
+    AdaptiveRateLimiter(int requestsPerMinute, LongSupplier clock) {
+        this.clock = clock;
+        this.capacity = requestsPerMinute;
+        this.configuredRate = (double) requestsPerMinute / NANOS_PER_MINUTE;
+        this.minRate = configuredRate / 16;
+        this.rate = configuredRate;
+        this.tokens = capacity;
+        this.lastRefill = clock.getAsLong();
+        this.blockedUntil = lastRefill;
+    }
+
+    /**
+     * Take a token if one will be available within {@code maxWaitNanos}.
+     *
+     * @return how long to wait before sending the request, or -1 (and nothing taken) if the wait
+     * would be longer than allowed
+     */
+    public synchronized long tryReserve(long maxWaitNanos) {
+        long now = clock.getAsLong();
+        refill(now);
+
+        long wait = Math.max(0, blockedUntil - now);
+        if (tokens < 1) {
+            wait = Math.max(wait, (long) Math.ceil((1 - tokens) / rate));
+        }
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Apply the provider's rate-limit headers from any response, successful or not.
+     */
+    public synchronized void update(Headers headers) {
+        long now = clock.getAsLong();
+        refill(now);
+
+        Double remainingRequests = parseNumber(headers.get("x-ratelimit-remaining-requests"));
+        if (remainingRequests != null) {
+            tokens = Math.min(tokens, remainingRequests);
+        }
+        holdUntilReset(now, remainingRequests, headers.get("x-ratelimit-reset-requests"));
+        holdUntilReset(now, parseNumber(headers.get("x-ratelimit-remaining-tokens")),
+                headers.get("x-ratelimit-reset-tokens"));
+    }
+
+    /**
+     * A request went through: recover towards the configured rate.
+     */
+    public synchronized void onSuccess() {
+        rate = Math.min(configuredRate, rate + configuredRate / 10);
+    }
+
+    /**
+     * The provider answered 429: slow down and, if it said how long, stop until then.
+     */
+    public synchronized void onRateLimited(Duration retryAfter) {
+        long now = clock.getAsLong();
+        refill(now);
+
+        rate = Math.max(minRate, rate / 2);
+        tokens = Math.min(tokens, 0);
+        if (retryAfter != null) {
+            blockedUntil = Math.max(blockedUntil, now + retryAfter.toNanos());
+        }
+    }
+
+    /**
+     * Requests per minute the limiter currently allows.
+     */
+    public synchronized double getRequestsPerMinute() {
+        return rate * NANOS_PER_MINUTE;
+    }
+
+    /**
+     * Parse a {@code Retry-After} value in seconds. HTTP dates are not supported and give null.
+     */
+    public static Duration parseRetryAfter(String value) {
+        Double seconds = parseNumber(value);
+        return seconds != null ? Duration.ofNanos((long) (seconds * 1e9)) : null;
+    }
+
+    /**
+     * Parse a reset duration like {@code 2m59.56s}, {@code 7.66s} or {@code 450ms}, as sent in the
+     * {@code x-ratelimit-reset-*} headers. Returns null if the value has no such parts.
+     */
+    public static Duration parseResetDuration(String value) {
+        if (value == null) {
+            return null;
+        }
+        Matcher matcher = DURATION_PART.matcher(value);
+        double nanos = 0;
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            nanos += switch (matcher.group(2)) {
+                case "h" -> amount * 3600e9;
+                case "m" -> amount * 60e9;
+                case "s" -> amount * 1e9;
+                default -> amount * 1e6;
+            };
+        }
+        return found ? Duration.ofNanos((long) nanos) : null;
+    }
+
+    private void holdUntilReset(long now, Double remaining, String reset) {
+        if (remaining == null || remaining > 0) {
+            return;
+        }
+        Duration resetAfter = parseResetDuration(reset);
+        if (resetAfter != null) {
+            blockedUntil = Math.max(blockedUntil, now + resetAfter.toNanos());
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * rate);
+        lastRefill = now;
+    }
+
+    private static Double parseNumber(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.refactorai.llm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a provider that keeps failing. After {@code failureThreshold} provider failures in
+ * a row the circuit opens and every call is refused at once; once {@code openMillis} have passed a
+ * single trial call is let through, which closes the circuit on success or reopens it on failure.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final LongSupplier clock;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    // Bumped whenever the circuit opens; results of calls let through before then are ignored
+    private long generation;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * A permit for a call that may go out now, or null if the circuit refuses it. Every permit
+     * must be handed back to exactly one of {@link #onSuccess}, {@link #onFailure} or
+     * {@link #release}.
+     */
+    public synchronized Permit tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return new Permit(generation, false);
+            case OPEN:
+                if (clock.getAsLong() - openedAt < openNanos) {
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return new Permit(generation, true);
+            default:
+                if (trialInFlight) {
+                    return null;
+                }
+                trialInFlight = true;
+                return new Permit(generation, true);
+        }
+    }
+
+    public synchronized void onSuccess(Permit permit) {
+        if (permit.trial) {
+            state = State.CLOSED;
+            trialInFlight = false;
+        } else if (!isCurrent(permit)) {
+            return;
+        }
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure(Permit permit) {
+        if (permit.trial) {
+            trialInFlight = false;
+            open();
+        } else if (isCurrent(permit) && ++consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * The call ended without saying anything about the provider's health (cancelled, or failed
+     * for a reason of our own); a half-open circuit lets the next call be the trial.
+     */
+    public synchronized void release(Permit permit) {
+        if (permit.trial) {
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private boolean isCurrent(Permit permit) {
+        return permit.generation == generation && state == State.CLOSED;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        generation++;
+    }
+
+    /**
+     * Lets one call out. Only the trial call of a half-open circuit decides whether it closes, and
+     * a call let through while the circuit was closed counts only until the circuit next opens.
+     */
+    public static final class Permit {
+
+        private final long generation;
+        private final boolean trial;
+
+        private Permit(long generation, boolean trial) {
+            this.generation = generation;
+            this.trial = trial;
+        }
+
+        public boolean isTrial() {
+            return trial;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.refactorai.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Runs LLM calls behind a bulkhead, a circuit breaker, an adaptive rate limiter and bounded
+ * retries, in that order.
+ * <p>
+ * A call is refused with {@link LlmException.Unavailable} when {@code groq.bulkhead.max-concurrent}
+ * calls are already in flight, when the circuit is open, or when the rate limiter can't grant a
+ * token within {@code groq.rate-limit.max-wait-ms}. Retryable failures are sent again up to
+ * {@code groq.retry.max-attempts} times in total, after a full-jitter exponential backoff (a random
+ * delay up to {@code base * 2^(attempt-1)}, capped), so clients failing together don't retry together.
+ * Nothing here blocks a thread: waits are scheduled, not slept.
+ */
+@Component
+public class LlmCallGuard {
+
+    private final Semaphore bulkhead;
+    private final CircuitBreaker circuitBreaker;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final long maxRateLimitWaitNanos;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    public LlmCallGuard(
+            @Value("${groq.bulkhead.max-concurrent:16}") int maxConcurrent,
+            @Value("${groq.circuit.failure-threshold:5}") int failureThreshold,
+            @Value("${groq.circuit.open-ms:30000}") long openMs,
+            @Value("${groq.rate-limit.requests-per-minute:30}") int requestsPerMinute,
+            @Value("${groq.rate-limit.max-wait-ms:10000}") long maxRateLimitWaitMs,
+            @Value("${groq.retry.max-attempts:3}") int maxAttempts,
+            @Value("${groq.retry.base-delay-ms:500}") long baseDelayMs,
+            @Value("${groq.retry.max-delay-ms:8000}") long maxDelayMs
+    ) {
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openMs);
+        this.rateLimiter = new AdaptiveRateLimiter(requestsPerMinute);
+        this.maxRateLimitWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxRateLimitWaitMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Run {@code call}, which sends one request and fails with an {@link LlmException}, under
+     * the guard. The returned future fails with the last attempt's exception; cancelling it
+     * cancels the attempt in flight and any retry not yet sent.
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+        if (!bulkhead.tryAcquire()) {
+            return CompletableFuture.failedFuture(new LlmException.Unavailable("Too many LLM calls in flight"));
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> inFlight = new AtomicReference<>();
+        result.whenComplete((value, error) -> {
+            bulkhead.release();
+            CompletableFuture<T> attempt = inFlight.get();
+            if (result.isCancelled() && attempt != null) {
+                attempt.cancel(false);
+            }
+        });
+
+        attempt(call, 1, result, inFlight);
+        return result;
+    }
+
+    public AdaptiveRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("circuit", circuitBreaker.getState().name());
+        stats.put("availableSlots", bulkhead.availablePermits());
+        stats.put("requestsPerMinute", Math.round(rateLimiter.getRequestsPerMinute()));
+        return stats;
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> call, int attempt, CompletableFuture<T> result,
+                             AtomicReference<CompletableFuture<T>> inFlight) {
+        if (result.isDone()) {
+            return;
+        }
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            result.completeExceptionally(new LlmException.Unavailable("LLM provider circuit is open"));
+            return;
+        }
+        long wait = rateLimiter.tryReserve(maxRateLimitWaitNanos);
+        if (wait < 0) {
+            circuitBreaker.release(permit);
+            result.completeExceptionally(new LlmException.Unavailable("LLM rate limit exhausted"));
+            return;
+        }
+
+        Executor sender = wait > 0 ? CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS) : Runnable::run;
+        sender.execute(() -> {
+            if (result.isDone()) {
+                circuitBreaker.release(permit);
+                return;
+            }
+
+            CompletableFuture<T> pending;
+            try {
+                pending = call.get();
+            } catch (RuntimeException e) {
+                pending = CompletableFuture.failedFuture(e);
+            }
+            inFlight.set(pending);
+            if (result.isDone()) {
+                pending.cancel(false);
+            }
+
+            pending.whenComplete((value, error) -> {
+                if (error == null) {
+                    circuitBreaker.onSuccess(permit);
+                    rateLimiter.onSuccess();
+                    result.complete(value);
+                    return;
+                }
+                onFailure(call, attempt, result, inFlight, permit, error);
+            });
+        });
+    }
+
+    private <T> void onFailure(Supplier<CompletableFuture<T>> call, int attempt, CompletableFuture<T> result,
+                               AtomicReference<CompletableFuture<T>> inFlight, CircuitBreaker.Permit permit,
+                               Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+            circuitBreaker.release(permit);
+            return;
+        }
+
+        LlmException failure = cause instanceof LlmException llmException
+                ? llmException
+                : new LlmException.Upstream("LLM call failed: " + cause.getMessage(), 0, cause);
+
+        if (failure.isProviderFailure()) {
+            circuitBreaker.onFailure(permit);
+        } else {
+            circuitBreaker.release(permit);
+        }
+
+        long retryAfterMs = 0;
+        if (failure instanceof LlmException.RateLimited rateLimited) {
+            rateLimiter.onRateLimited(rateLimited.getRetryAfter());
+            if (rateLimited.getRetryAfter() != null) {
+                retryAfterMs = rateLimited.getRetryAfter().toMillis();
+            }
+        }
+
+        // A Retry-After beyond our patience is answered now rather than after the wait
+        if (!failure.isRetryable() || attempt >= maxAttempts
+                || TimeUnit.MILLISECONDS.toNanos(retryAfterMs) > maxRateLimitWaitNanos) {
+            result.completeExceptionally(failure);
+            return;
+        }
+
+        long backoffMs = Math.max(retryAfterMs, backoffMillis(attempt));
+        CompletableFuture.delayedExecutor(backoffMs, TimeUnit.MILLISECONDS)
+                .execute(() -> attempt(call, attempt + 1, result, inFlight));
+    }
+
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 30));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+}
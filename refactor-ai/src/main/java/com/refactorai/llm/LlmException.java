@@ -0,0 +1,157 @@
+package com.refactorai.llm;
+
+import java.time.Duration;
+
+/**
+ * A failed LLM call. The subclass says what went wrong, which decides whether the call is worth
+ * retrying and which HTTP status our own API answers with.
+ */
+public abstract class LlmException extends RuntimeException {
+
+    protected LlmException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * Whether the same request may succeed if sent again.
+     */
+    public abstract boolean isRetryable();
+
+    /**
+     * Whether the failure says something about the provider's health, and so counts towards
+     * opening the circuit breaker.
+     */
+    public boolean isProviderFailure() {
+        return isRetryable();
+    }
+
+    /**
+     * Status for our API's response when the call can't be completed.
+     */
+    public abstract int httpStatus();
+
+    /**
+     * The provider answered 429 Too Many Requests.
+     */
+    public static class RateLimited extends LlmException {
+
+        private final Duration retryAfter;
+
+        public RateLimited(String message, Duration retryAfter) {
+            super(message, null);
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * How long the provider asked us to wait, or null if it didn't say.
+         */
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+
+        @Override
+        public boolean isRetryable() {
+            return true;
+        }
+
+        @Override
+        public boolean isProviderFailure() {
+            // Our own request rate is the problem, not the provider's health
+            return false;
+        }
+
+        @Override
+        public int httpStatus() {
+            return 429;
+        }
+    }
+
+    /**
+     * The provider didn't answer within the connect, read or total timeout.
+     */
+    public static class Timeout extends LlmException {
+
+        public Timeout(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public boolean isRetryable() {
+            return true;
+        }
+
+        @Override
+        public int httpStatus() {
+            return 504;
+        }
+    }
+
+    /**
+     * The provider answered with an error status, or the connection failed ({@link #getStatus()} 0).
+     * Server errors and connection failures are retried; client errors are not.
+     */
+    public static class Upstream extends LlmException {
+
+        private final int status;
+
+        public Upstream(String message, int status, Throwable cause) {
+            super(message, cause);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public boolean isRetryable() {
+            return status == 0 || status == 408 || status >= 500;
+        }
+
+        @Override
+        public int httpStatus() {
+            return 502;
+        }
+    }
+
+    /**
+     * A successful response whose body isn't a completion we can use.
+     */
+    public static class BadResponse extends LlmException {
+
+        public BadResponse(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public boolean isRetryable() {
+            return false;
+        }
+
+        @Override
+        public int httpStatus() {
+            return 502;
+        }
+    }
+
+    /**
+     * The call was refused locally without reaching the provider: the circuit breaker is open, too
+     * many calls are in flight, or the rate limit wouldn't allow it soon enough.
+     */
+    public static class Unavailable extends LlmException {
+
+        public Unavailable(String message) {
+            super(message, null);
+        }
+
+        @Override
+        public boolean isRetryable() {
+            return false;
+        }
+
+        @Override
+        public int httpStatus() {
+            return 503;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.refactorai.llm;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Completions already paid for, so resubmitting the same code for the same smell doesn't call the
+ * provider again.
+ * <p>
+ * The key is a hash of the source with comments dropped and whitespace collapsed, plus everything
+ * else that shapes the answer (smell type, model, prompt version, sampling parameters). Entries
+ * live in a bounded in-memory tier in front of a directory of one file per key
+ * ({@code refactorai.llm.cache.dir}), which survives restarts; when the directory holds more than
+ * {@code max-disk-entries} files the least recently written are removed. Concurrent requests for
+ * the same key share one provider call, and failures are never cached. A shared call is cancelled
+ * once every request waiting on it has cancelled.
+ */
+@Component
+public class LlmResponseCache {
+
+    private static final String OPERATOR_CHARS = "+-*/%&|^!~<>=?:";
+
+    private final boolean enabled;
+    private final AsyncCache<String, String> memory;
+    private final Path directory;
+    private final int maxDiskEntries;
+    private final AtomicInteger diskEntries = new AtomicInteger();
+    private final ReentrantLock pruneLock = new ReentrantLock();
+    private final ConcurrentHashMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<String>> providerCallsInFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder providerCalls = new LongAdder();
+    private final LongAdder cancelledCalls = new LongAdder();
+
+    public LlmResponseCache(
+            @Value("${refactorai.llm.cache.enabled:true}") boolean enabled,
+            @Value("${refactorai.llm.cache.max-memory-entries:1000}") long maxMemoryEntries,
+            @Value("${refactorai.llm.cache.dir:${user.home}/.refactor-ai/llm-cache}") String directory,
+            @Value("${refactorai.llm.cache.max-disk-entries:10000}") int maxDiskEntries
+    ) {
+        this.enabled = enabled;
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(maxMemoryEntries)
+                .recordStats()
+                .buildAsync();
+        this.directory = directory.isBlank() ? null : Paths.get(directory);
+        this.maxDiskEntries = maxDiskEntries;
+
+        if (enabled && this.directory != null && Files.isDirectory(this.directory)) {
+            try (Stream<Path> files = entries()) {
+                diskEntries.set((int) files.count());
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Failed to read LLM cache directory: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cache key for a request about {@code code}; {@code parameters} must hold everything besides
+     * the code that changes the provider's answer.
+     */
+    public String key(String code, List<?> parameters) {
+        StringBuilder material = new StringBuilder();
+        for (Object parameter : parameters) {
+            material.append(parameter).append('\u0000');
+        }
+        material.append(normalize(code));
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(material.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * The cached completion for {@code key}, or the one {@code loader} produces (which is then
+     * cached if it succeeds). Cancelling the returned future detaches this caller, and cancels the
+     * provider call too if no other request is waiting on it.
+     */
+    public CompletableFuture<String> get(String key, Supplier<CompletableFuture<String>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        requests.increment();
+        while (true) {
+            CompletableFuture<String> shared = memory.get(key, (k, executor) -> load(k, loader, executor));
+            if (shared.isDone()) {
+                return shared.copy();
+            }
+
+            Waiters joined = waiters.compute(key, (k, current) -> {
+                if (current == null || current.shared != shared) {
+                    current = new Waiters(shared);
+                }
+                if (!current.abandoned) {
+                    current.count++;
+                }
+                return current;
+            });
+            if (joined.abandoned || shared.isCancelled()) {
+                // The last caller left between the lookup and joining; start over
+                waiters.remove(key, joined);
+                continue;
+            }
+            shared.whenComplete((completion, error) -> waiters.remove(key, joined));
+
+            CompletableFuture<String> mine = shared.copy();
+            mine.whenComplete((completion, error) -> {
+                if (mine.isCancelled()) {
+                    leave(key, joined);
+                }
+            });
+            return mine;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long total = requests.sum();
+        long memoryHits = memory.synchronous().stats().hitCount();
+        long hits = memoryHits + diskHits.sum();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", total);
+        result.put("memoryHits", memoryHits);
+        result.put("diskHits", diskHits.sum());
+        result.put("providerCalls", providerCalls.sum());
+        result.put("cancelledCalls", cancelledCalls.sum());
+        result.put("hitRate", total == 0 ? 0.0 : (double) hits / total);
+        result.put("memoryEntries", memory.synchronous().estimatedSize());
+        result.put("diskEntries", diskEntries.get());
+        return result;
+    }
+
+    /**
+     * Java source with comments removed and whitespace collapsed, leaving string, character and
+     * text block literals untouched. A space is kept only where dropping it could join two tokens
+     * (two words, or two operators like {@code - -}), so re-indenting, re-wrapping or re-commenting
+     * code doesn't change the result.
+     */
+    static String normalize(String code) {
+        StringBuilder out = new StringBuilder(code.length());
+        boolean pendingSpace = false;
+        int i = 0;
+        int length = code.length();
+
+        while (i < length) {
+            char c = code.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            if (c == '/' && i + 1 < length && code.charAt(i + 1) == '/') {
+                while (i < length && code.charAt(i) != '\n') {
+                    i++;
+                }
+                pendingSpace = true;
+                continue;
+            }
+            if (c == '/' && i + 1 < length && code.charAt(i + 1) == '*') {
+                int end = code.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                pendingSpace = true;
+                continue;
+            }
+
+            if (pendingSpace && out.length() > 0 && joins(out.charAt(out.length() - 1), c)) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+
+            if (c == '"' || c == '\'') {
+                int end = literalEnd(code, i);
+                out.append(code, i, end);
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    private CompletableFuture<String> load(String key, Supplier<CompletableFuture<String>> loader, Executor executor) {
+        if (directory == null) {
+            return call(key, loader);
+        }
+        // Caffeine runs this under a map lock, which would pin a virtual thread through the disk read
+        return CompletableFuture.supplyAsync(() -> readDisk(key), executor).thenCompose(cached -> {
+            if (cached != null) {
+                diskHits.increment();
+                return CompletableFuture.completedFuture(cached);
+            }
+            return call(key, loader);
+        });
+    }
+
+    private CompletableFuture<String> call(String key, Supplier<CompletableFuture<String>> loader) {
+        providerCalls.increment();
+        CompletableFuture<String> pending = loader.get();
+        providerCallsInFlight.put(key, pending);
+        pending.whenComplete((completion, error) -> providerCallsInFlight.remove(key, pending));
+        return pending.thenApply(completion -> {
+            writeDisk(key, completion);
+            return completion;
+        });
+    }
+
+    /**
+     * One caller of {@code joined} cancelled; the last one out drops the entry and cancels the
+     * provider call behind it.
+     */
+    private void leave(String key, Waiters joined) {
+        AtomicBoolean last = new AtomicBoolean();
+        waiters.computeIfPresent(key, (k, current) -> {
+            if (current == joined && --current.count == 0 && !current.shared.isDone()) {
+                // Late joiners see the flag and load afresh instead of sharing a cancelled call
+                current.abandoned = true;
+                memory.asMap().remove(key, current.shared);
+                last.set(true);
+            }
+            return current;
+        });
+        if (!last.get()) {
+            return;
+        }
+        // Outside the map's lock: completing the shared future runs callbacks that touch it
+        joined.shared.cancel(false);
+        CompletableFuture<String> pending = providerCallsInFlight.get(key);
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        cancelledCalls.increment();
+    }
+
+    private String readDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return Files.readString(file(key), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Failed to read LLM cache entry: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, String completion) {
+        if (directory == null) {
+            return;
+        }
+        Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+            // Readers never see a half-written entry
+            Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.writeString(temp, completion, StandardCharsets.UTF_8);
+            boolean added = !Files.exists(file);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (added && diskEntries.incrementAndGet() > maxDiskEntries) {
+                prune();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write LLM cache entry: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete the oldest entries until a tenth of the capacity is free again. Writers that find a
+     * prune already running leave it to finish the job.
+     */
+    private void prune() {
+        if (!pruneLock.tryLock()) {
+            return;
+        }
+        try {
+            if (diskEntries.get() <= maxDiskEntries) {
+                return;
+            }
+            try (Stream<Path> files = entries()) {
+                List<Path> oldestFirst = files
+                        .sorted(Comparator.comparing(LlmResponseCache::lastModified))
+                        .toList();
+                int excess = oldestFirst.size() - maxDiskEntries * 9 / 10;
+                for (int i = 0; i < excess; i++) {
+                    Files.deleteIfExists(oldestFirst.get(i));
+                }
+                diskEntries.set(oldestFirst.size() - Math.max(0, excess));
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Failed to prune LLM cache: " + e.getMessage());
+            }
+        } finally {
+            pruneLock.unlock();
+        }
+    }
+
+    private Stream<Path> entries() throws IOException {
+        return Files.walk(directory, 2).filter(path -> path.toString().endsWith(".txt"));
+    }
+
+    private Path file(String key) {
+        // Two-character shards keep directories small
+        return directory.resolve(key.substring(0, 2)).resolve(key + ".txt");
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * The callers waiting on one shared load of a key.
+     */
+    private static final class Waiters {
+
+        private final CompletableFuture<String> shared;
+        private int count;
+        private boolean abandoned;
+
+        private Waiters(CompletableFuture<String> shared) {
+            this.shared = shared;
+        }
+    }
+
+    private static boolean joins(char before, char after) {
+        boolean wordBefore = Character.isJavaIdentifierPart(before);
+        boolean wordAfter = Character.isJavaIdentifierPart(after);
+        return (wordBefore && wordAfter)
+                || (OPERATOR_CHARS.indexOf(before) >= 0 && OPERATOR_CHARS.indexOf(after) >= 0);
+    }
+
+    /**
+     * Index just past the string, character or text block literal starting at {@code start}.
+     */
+    private static int literalEnd(String code, int start) {
+        char quote = code.charAt(start);
+        boolean textBlock = quote == '"' && code.startsWith("\"\"\"", start);
+        int i = start + (textBlock ? 3 : 1);
+
+        while (i < code.length()) {
+            char c = code.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (textBlock ? code.startsWith("\"\"\"", i) : c == quote) {
+                return i + (textBlock ? 3 : 1);
+            } else if (!textBlock && c == '\n') {
+                // Unterminated literal; let the rest be normalized as code
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return code.length();
+    }
+}
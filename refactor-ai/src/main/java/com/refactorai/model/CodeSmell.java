@@ -1,51 +1,126 @@
 package com.refactorai.model;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.List;
+
+/**
+ * One finding: its type, where it is, an optional symbol (method, class or import name) and the
+ * arguments of its type's description template.
+ * <p>
+ * Nothing is stored as text that the type already knows, so a finding costs a few words plus its
+ * arguments. The legacy strings (type, location, severity, description) are built on demand and
+ * are the only properties in the default JSON shape; {@link CompactSmellReport} sends the
+ * structured fields instead.
+ */
+@JsonAutoDetect(getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.NONE)
+@JsonPropertyOrder({"type", "location", "severity", "description"})
 public class CodeSmell {
 
-    private String type;
-    private String location;
-    private String severity;
-    private String description;
+    private static final String[] NO_ARGS = new String[0];
+
+    private final SmellType smellType;
+    private final int line;
+    private final int column;
+    private final int endLine;
+    private final int endColumn;
+    private final String symbol;
+    private final String[] args;
 
-    public CodeSmell() {
+    public CodeSmell(SmellType smellType, int line, int column, int endLine, int endColumn,
+                     String symbol, String... args) {
+        this.smellType = smellType;
+        this.line = line;
+        this.column = column;
+        this.endLine = endLine;
+        this.endColumn = endColumn;
+        this.symbol = symbol;
+        this.args = args.length == 0 ? NO_ARGS : args;
     }
 
-    public CodeSmell(String type, String location, String severity, String description) {
-        this.type = type;
-        this.location = location;
-        this.severity = severity;
-        this.description = description;
+    /**
+     * A finding about the code as a whole, with no position.
+     */
+    public static CodeSmell of(SmellType smellType) {
+        return new CodeSmell(smellType, 0, 0, 0, 0, null);
     }
 
-    public String getType() {
-        return type;
+    /**
+     * The same finding at another position.
+     */
+    public CodeSmell withPosition(int line, int column, int endLine, int endColumn) {
+        if (line == this.line && column == this.column && endLine == this.endLine && endColumn == this.endColumn) {
+            return this;
+        }
+        return new CodeSmell(smellType, line, column, endLine, endColumn, symbol, args);
     }
 
-    public void setType(String type) {
-        this.type = type;
+    @JsonProperty("type")
+    public String getType() {
+        return smellType.getLabel();
     }
 
+    @JsonProperty("location")
     public String getLocation() {
-        return location;
+        if (line <= 0) {
+            return "N/A";
+        }
+        if (symbol != null && smellType.getSymbolKind() != null) {
+            return "Line " + line + " (" + smellType.getSymbolKind() + ": " + symbol + ")";
+        }
+        return "Line " + line;
     }
 
-    public void setLocation(String location) {
-        this.location = location;
+    @JsonProperty("severity")
+    public String getSeverity() {
+        return smellType.getSeverity().getLabel();
     }
 
-    public String getSeverity() {
-        return severity;
+    @JsonProperty("description")
+    public String getDescription() {
+        return smellType.format(args);
     }
 
-    public void setSeverity(String severity) {
-        this.severity = severity;
+    public SmellType getSmellType() {
+        return smellType;
     }
 
-    public String getDescription() {
-        return description;
+    public Severity getSeverityLevel() {
+        return smellType.getSeverity();
+    }
+
+    /**
+     * First line of the finding (1-based), or 0 if it has no position.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getEndLine() {
+        return endLine;
+    }
+
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public List<String> getArgs() {
+        return List.of(args);
     }
 
-    public void setDescription(String description) {
-        this.description = description;
+    String[] args() {
+        return args;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,109 @@
+package com.refactorai.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response shape for {@code format=compact}: each smell type's label, severity and description
+ * template are sent once, and every finding only carries its type, position, symbol and template
+ * arguments. A client rebuilds a description by replacing {@code {0}}, {@code {1}}, ... in the
+ * template with the finding's arguments.
+ */
+public class CompactSmellReport {
+
+    private final Map<SmellType, Template> templates;
+    private final List<Finding> smells;
+
+    private CompactSmellReport(Map<SmellType, Template> templates, List<Finding> smells) {
+        this.templates = templates;
+        this.smells = smells;
+    }
+
+    public static CompactSmellReport of(List<CodeSmell> smells) {
+        Map<SmellType, Template> templates = new EnumMap<>(SmellType.class);
+        List<Finding> findings = new ArrayList<>(smells.size());
+
+        for (CodeSmell smell : smells) {
+            templates.computeIfAbsent(smell.getSmellType(), Template::new);
+            findings.add(new Finding(smell));
+        }
+
+        return new CompactSmellReport(templates, findings);
+    }
+
+    public Map<SmellType, Template> getTemplates() {
+        return templates;
+    }
+
+    public List<Finding> getSmells() {
+        return smells;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Template {
+
+        private final SmellType smellType;
+
+        private Template(SmellType smellType) {
+            this.smellType = smellType;
+        }
+
+        public String getType() {
+            return smellType.getLabel();
+        }
+
+        public String getSeverity() {
+            return smellType.getSeverity().getLabel();
+        }
+
+        public String getSymbolKind() {
+            return smellType.getSymbolKind();
+        }
+
+        public String getDescription() {
+            return smellType.getTemplate();
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public static class Finding {
+
+        private final CodeSmell smell;
+
+        private Finding(CodeSmell smell) {
+            this.smell = smell;
+        }
+
+        public SmellType getType() {
+            return smell.getSmellType();
+        }
+
+        public int getLine() {
+            return smell.getLine();
+        }
+
+        public int getColumn() {
+            return smell.getColumn();
+        }
+
+        public int getEndLine() {
+            return smell.getEndLine();
+        }
+
+        public int getEndColumn() {
+            return smell.getEndColumn();
+        }
+
+        public String getSymbol() {
+            return smell.getSymbol();
+        }
+
+        public String[] getArgs() {
+            return smell.args();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.refactorai.model;
+
+/**
+ * Severity of a code smell, from least to most severe.
+ */
+public enum Severity {
+
+    INFO("Info"),
+    LOW("Low"),
+    MEDIUM("Medium"),
+    HIGH("High"),
+    CRITICAL("Critical");
+
+    private final String label;
+
+    Severity(String label) {
+        this.label = label;
+    }
+
+    /**
+     * The name shown to users and used in the legacy JSON shape.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public static Severity fromLabel(String label) {
+        for (Severity severity : values()) {
+            if (severity.label.equals(label)) {
+                return severity;
+            }
+        }
+        throw new IllegalArgumentException("Unknown severity: " + label);
+    }
+}
@@ -0,0 +1,120 @@
+package com.refactorai.model;
+
+/**
+ * Every kind of finding, with the text shared by all findings of that kind.
+ * <p>
+ * Descriptions are templates: {@code {0}}, {@code {1}}, ... are replaced by the finding's
+ * arguments. Unlike {@link java.text.MessageFormat}, quotes are copied as they are. A type whose
+ * {@code symbolKind} is set names its symbol in the location, e.g. "Line 12 (Method: run)".
+ */
+public enum SmellType {
+
+    LONG_METHOD("Long Method", Severity.MEDIUM, "Method",
+            "Method has {0} lines, exceeds maximum of {1} lines. " +
+                    "Long methods are harder to understand and maintain. Consider extracting smaller methods."),
+
+    DEEP_NESTING("Deep Nesting", Severity.MEDIUM, "Method",
+            "Method has nesting depth of {0}, exceeds maximum of {1}. " +
+                    "Deep nesting makes code harder to read and maintain. Consider extracting nested logic into separate methods."),
+
+    UNUSED_IMPORT("Unused Import", Severity.LOW, null,
+            "Import '{0}' is declared but never used. " +
+                    "Unused imports clutter code and should be removed."),
+
+    MAGIC_NUMBER("Magic Number", Severity.LOW, null,
+            "Magic number '{0}' found. Consider extracting to a named constant. " +
+                    "Magic numbers make code harder to understand and maintain. Use descriptive constant names like 'MAX_RETRIES' or 'TAX_RATE'."),
+
+    GOD_CLASS("God Class", Severity.HIGH, "Class",
+            "Class '{0}' is too large: {1}. " +
+                    "God classes violate the Single Responsibility Principle and are hard to maintain. " +
+                    "Consider splitting into smaller, focused classes."),
+
+    STRING_CONCATENATION_ASSIGN_IN_LOOP("String Concatenation in Loop", Severity.MEDIUM, null,
+            "String concatenation using '+=' inside a loop is inefficient. " +
+                    "Each concatenation creates a new String object, leading to O(n²) performance. " +
+                    "Use StringBuilder for better performance: StringBuilder.append() is O(n)."),
+
+    STRING_CONCATENATION_IN_LOOP("String Concatenation in Loop", Severity.MEDIUM, null,
+            "String concatenation using '+' inside a loop may be inefficient. " +
+                    "Consider using StringBuilder.append() for better performance."),
+
+    EMPTY_CATCH_BLOCK("Empty Catch Block", Severity.HIGH, null,
+            "Empty catch block for '{0}'. " +
+                    "Silently swallowing exceptions makes debugging difficult and hides bugs. " +
+                    "At minimum, log the exception. Consider: throw new RuntimeException(e), logger.error(), or handle the exception appropriately."),
+
+    PARSING_ERROR("Parsing Error", Severity.CRITICAL, null,
+            "Failed to parse Java code. Please ensure the code is valid."),
+
+    NO_ISSUES_FOUND("No Issues Found", Severity.INFO, null,
+            "Great! No code smells detected.");
+
+    private final String label;
+    private final Severity severity;
+    private final String symbolKind;
+    private final String template;
+
+    SmellType(String label, Severity severity, String symbolKind, String template) {
+        this.label = label;
+        this.severity = severity;
+        this.symbolKind = symbolKind;
+        this.template = template;
+    }
+
+    /**
+     * The name shown to users and used as "type" in the legacy JSON shape. Several types may share
+     * a label when they only differ in description.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    public String getSymbolKind() {
+        return symbolKind;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public String format(String[] args) {
+        if (args.length == 0) {
+            return template;
+        }
+
+        StringBuilder text = new StringBuilder(template.length() + 32);
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            int close = c == '{' ? template.indexOf('}', i) : -1;
+            if (close > i + 1) {
+                int index = parseIndex(template, i + 1, close);
+                if (index >= 0 && index < args.length) {
+                    text.append(args[index]);
+                    i = close + 1;
+                    continue;
+                }
+            }
+            text.append(c);
+            i++;
+        }
+        return text.toString();
+    }
+
+    private static int parseIndex(String text, int start, int end) {
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+}
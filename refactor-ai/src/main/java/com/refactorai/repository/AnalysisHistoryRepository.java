@@ -11,4 +11,5 @@ import java.util.List;
 public interface AnalysisHistoryRepository extends JpaRepository<AnalysisHistory, Long> {
     List<AnalysisHistory> findByUserOrderByCreatedAtDesc(User user);
     List<AnalysisHistory> findTop10ByUserOrderByCreatedAtDesc(User user);
+    List<AnalysisHistory> findTop10ByUserIdOrderByCreatedAtDesc(Long userId);
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.refactorai.repository;
+
+import com.refactorai.entity.RefactorJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface RefactorJobRepository extends JpaRepository<RefactorJob, String> {
+    List<RefactorJob> findByStatusInOrderByPriorityDescCreatedAtAsc(Collection<RefactorJob.Status> statuses);
+    long countByStatus(RefactorJob.Status status);
+}
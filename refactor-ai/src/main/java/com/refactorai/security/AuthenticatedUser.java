@@ -0,0 +1,26 @@
+package com.refactorai.security;
+
+/**
+ * The user behind a verified bearer token, as the request's principal.
+ */
+public final class AuthenticatedUser {
+
+    private final Long id;
+    private final String username;
+
+    public AuthenticatedUser(Long id, String username) {
+        this.id = id;
+        this.username = username;
+    }
+
+    /**
+     * The user's id, or null for tokens issued before tokens carried it.
+     */
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+}
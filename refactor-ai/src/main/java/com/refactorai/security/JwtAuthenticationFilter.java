@@ -0,0 +1,73 @@
+package com.refactorai.security;
+
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Verifies the bearer token once per request and makes its {@link AuthenticatedUser} the
+ * request's principal. Requests without a token go through anonymously, and so do requests whose
+ * token doesn't verify (malformed, forged or expired), flagged with a
+ * {@code WWW-Authenticate: Bearer error="invalid_token"} header, so a stale token left in a client
+ * doesn't break endpoints that work without one. Only the paths that need a user answer such a
+ * token with 401, before any controller runs.
+ */
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+    private static final String INVALID_TOKEN = "Bearer error=\"invalid_token\"";
+
+    private final JwtUtil jwtUtil;
+    private final Set<String> protectedPaths;
+
+    /**
+     * @param protectedPaths paths, below the context path, that refuse an invalid token
+     */
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, Set<String> protectedPaths) {
+        this.jwtUtil = jwtUtil;
+        this.protectedPaths = Set.copyOf(protectedPaths);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.startsWith(BEARER)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        AuthenticatedUser user;
+        try {
+            user = jwtUtil.verify(header.substring(BEARER.length()));
+        } catch (JwtException | IllegalArgumentException e) {
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, INVALID_TOKEN);
+            if (!protectedPaths.contains(request.getRequestURI().substring(request.getContextPath().length()))) {
+                chain.doFilter(request, response);
+                return;
+            }
+            // Answered before the controller's @CrossOrigin applies, so the browser needs these here
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, HttpHeaders.WWW_AUTHENTICATE);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Invalid token\"}");
+            return;
+        }
+
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(user, null, List.of()));
+        chain.doFilter(request, response);
+    }
+}
@@ -1,9 +1,15 @@
 package com.refactorai.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.refactorai.entity.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -11,23 +17,66 @@ import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Issues and verifies the HS256 bearer tokens.
+ * <p>
+ * A token's subject is the username and its {@value #USER_ID_CLAIM} claim the user's id, so a
+ * verified token identifies the user without a database lookup. The key and parser are built
+ * once, and tokens that verified are remembered until they expire (at most
+ * {@code jwt.cache.max-entries} of them), so a client sending the same token with every request
+ * pays for the signature check once.
+ */
 @Component
 public class JwtUtil {
 
+    public static final String USER_ID_CLAIM = "uid";
+
     @Value("${jwt.secret}")
     private String secret;
 
     @Value("${jwt.expiration}")
     private Long expiration;
 
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    @Value("${jwt.cache.max-entries:10000}")
+    private long maxCachedTokens;
+
+    private Key signingKey;
+    private JwtParser parser;
+    private Cache<String, VerifiedToken> verified;
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        verified = Caffeine.newBuilder()
+                .maximumSize(maxCachedTokens)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String token, VerifiedToken value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.expiresAtMs - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, VerifiedToken value, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, VerifiedToken value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
     }
 
-    public String generateToken(String username) {
+    public String generateToken(User user) {
         Map<String, Object> claims = new HashMap<>();
-        return createToken(claims, username);
+        claims.put(USER_ID_CLAIM, user.getId());
+        return createToken(claims, user.getUsername());
     }
 
     private String createToken(Map<String, Object> claims, String subject) {
@@ -39,12 +88,34 @@ public class JwtUtil {
                 .setSubject(subject)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * The user a token was issued to, checking its signature and expiry unless it already passed
+     * both. Tokens issued before the id claim existed give a user without an id.
+     *
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, forged or expired
+     */
+    public AuthenticatedUser verify(String token) {
+        VerifiedToken cached = verified.getIfPresent(token);
+        if (cached != null && cached.expiresAtMs > System.currentTimeMillis()) {
+            return cached.user;
+        }
+
+        Claims claims = extractAllClaims(token);
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        AuthenticatedUser user = new AuthenticatedUser(userId == null ? null : userId.longValue(), claims.getSubject());
+        // Tokens without an expiry are not remembered
+        if (claims.getExpiration() != null) {
+            verified.put(token, new VerifiedToken(user, claims.getExpiration().getTime()));
+        }
+        return user;
+    }
+
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verify(token).getUsername();
     }
 
     public Date extractExpiration(String token) {
@@ -57,19 +128,22 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public Boolean validateToken(String token, String username) {
+        // The parser already refuses expired tokens
+        return verify(token).getUsername().equals(username);
     }
 
-    public Boolean validateToken(String token, String username) {
-        final String tokenUsername = extractUsername(token);
-        return (tokenUsername.equals(username) && !isTokenExpired(token));
+    private static final class VerifiedToken {
+
+        private final AuthenticatedUser user;
+        private final long expiresAtMs;
+
+        private VerifiedToken(AuthenticatedUser user, long expiresAtMs) {
+            this.user = user;
+            this.expiresAtMs = expiresAtMs;
+        }
     }
-}
\ No newline at end of file
+}
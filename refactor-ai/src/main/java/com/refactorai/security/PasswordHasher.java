@@ -0,0 +1,212 @@
+package com.refactorai.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt hashing for signup and login, kept off the web server's threads.
+ * <p>
+ * Hashes are computed by {@code refactorai.auth.hash.threads} threads of their own, with at most
+ * {@code refactorai.auth.hash.queue-capacity} waiting; beyond that a hash is refused rather than
+ * queued, so a flood of logins costs at most those threads' worth of CPU and never holds up the
+ * analysis endpoints. Before anything is queued, {@link #admit} caps the attempts per client
+ * address and per username in each {@code refactorai.auth.limit.window-ms} window.
+ * <p>
+ * The cost is {@code refactorai.auth.bcrypt.strength}. A stored hash of any other cost still
+ * verifies, and {@link #verify} hands back a new hash at the configured cost when the password
+ * matched, so changing the setting moves users over as they log in.
+ */
+@Component
+public class PasswordHasher {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+
+    private final BCryptPasswordEncoder encoder;
+    private final int strength;
+    private final ThreadPoolExecutor workers;
+    private final int queueCapacity;
+    private final int maxPerAddress;
+    private final int maxPerUsername;
+    private final Duration window;
+    private final Cache<String, AtomicInteger> attempts;
+
+    private final LongAdder hashed = new LongAdder();
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder rejectedBusy = new LongAdder();
+    private final LongAdder throttledAddress = new LongAdder();
+    private final LongAdder throttledUsername = new LongAdder();
+
+    public PasswordHasher(
+            @Value("${refactorai.auth.bcrypt.strength:10}") int strength,
+            @Value("${refactorai.auth.hash.threads:2}") int threads,
+            @Value("${refactorai.auth.hash.queue-capacity:32}") int queueCapacity,
+            @Value("${refactorai.auth.limit.per-address:30}") int maxPerAddress,
+            @Value("${refactorai.auth.limit.per-username:10}") int maxPerUsername,
+            @Value("${refactorai.auth.limit.window-ms:60000}") long windowMs
+    ) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        // Platform threads even in virtual-thread mode: hashing is all CPU, and these bound it
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hash-"));
+        this.queueCapacity = queueCapacity;
+        this.maxPerAddress = maxPerAddress;
+        this.maxPerUsername = maxPerUsername;
+        this.window = Duration.ofMillis(windowMs);
+        // Written once when a key is first seen, so each key's window runs from its first attempt
+        this.attempts = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Count an attempt from {@code address} for {@code username}; false once either has used up
+     * its attempts for the current window.
+     */
+    public boolean admit(String address, String username) {
+        if (count("address:" + address) > maxPerAddress) {
+            throttledAddress.increment();
+            return false;
+        }
+        if (username != null && count("username:" + username) > maxPerUsername) {
+            throttledUsername.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * How long a throttled client should wait before trying again.
+     */
+    public Duration getWindow() {
+        return window;
+    }
+
+    /**
+     * Hash a new password at the configured cost.
+     *
+     * @throws RejectedExecutionException if too many hashes are already waiting
+     */
+    public CompletableFuture<String> encode(String rawPassword) {
+        return submit(() -> {
+            hashed.increment();
+            return encoder.encode(rawPassword);
+        });
+    }
+
+    /**
+     * Check a password against its stored hash, rehashing it if the hash was made at another cost.
+     *
+     * @throws RejectedExecutionException if too many hashes are already waiting
+     */
+    public CompletableFuture<Verification> verify(String rawPassword, String encodedPassword) {
+        return submit(() -> {
+            verified.increment();
+            if (!encoder.matches(rawPassword, encodedPassword)) {
+                return new Verification(false, null);
+            }
+            if (cost(encodedPassword) == strength) {
+                return new Verification(true, null);
+            }
+            rehashed.increment();
+            return new Verification(true, encoder.encode(rawPassword));
+        });
+    }
+
+    public Map<String, Object> stats() {
+        long operations = hashed.sum() + verified.sum() + rehashed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("strength", strength);
+        stats.put("running", workers.getActiveCount());
+        stats.put("queued", workers.getQueue().size());
+        stats.put("capacity", queueCapacity);
+        stats.put("hashed", hashed.sum());
+        stats.put("verified", verified.sum());
+        stats.put("rehashed", rehashed.sum());
+        stats.put("avgHashMs", operations == 0 ? 0 : hashNanos.sum() / operations / 1_000_000);
+        stats.put("rejectedBusy", rejectedBusy.sum());
+        stats.put("throttledAddress", throttledAddress.sum());
+        stats.put("throttledUsername", throttledUsername.sum());
+        return stats;
+    }
+
+    /**
+     * The cost a BCrypt hash was made with, or -1 if it isn't a BCrypt hash.
+     */
+    static int cost(String encodedPassword) {
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword == null ? "" : encodedPassword);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    private int count(String key) {
+        return attempts.get(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> hashing) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return hashing.get();
+                } finally {
+                    hashNanos.add(System.nanoTime() - start);
+                }
+            }, workers);
+        } catch (RejectedExecutionException e) {
+            rejectedBusy.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether a password matched, and its new hash if the stored one should be replaced.
+     */
+    public static final class Verification {
+
+        private final boolean matches;
+        private final String rehashed;
+
+        private Verification(boolean matches, String rehashed) {
+            this.matches = matches;
+            this.rehashed = rehashed;
+        }
+
+        public boolean matches() {
+            return matches;
+        }
+
+        /**
+         * The password hashed at the configured cost, or null if the stored hash already has it.
+         */
+        public String getRehashed() {
+            return rehashed;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.refactorai.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.refactorai.model.CodeSmell;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed cache of analysis results.
+ * <p>
+ * Entries are keyed by the SHA-256 of the submitted source plus the detector set version, and
+ * weighed by an estimate of their heap footprint so the cache stays under
+ * {@code refactorai.analysis.cache.max-bytes}. Caffeine's W-TinyLFU policy keeps frequently
+ * resubmitted sources (CI reruns, editor saves) over one-off pastes.
+ */
+@Component
+public class AnalysisCache {
+
+    // Rough per-object overhead used when weighing entries
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+
+    private final Cache<String, Result> cache;
+
+    public AnalysisCache(@Value("${refactorai.analysis.cache.max-bytes:67108864}") long maxBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, Result result) -> weigh(key, result))
+                .recordStats()
+                .build();
+    }
+
+    public String key(String javaCode, String detectorVersion) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(detectorVersion.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(javaCode.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public Result get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Cache the findings of each detector (in engine order) and return the stored entry.
+     */
+    public Result put(String key, List<List<CodeSmell>> byDetector) {
+        Result result = new Result(byDetector);
+        cache.put(key, result);
+        return result;
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("entries", cache.estimatedSize());
+        result.put("weightBytes", cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L));
+        return result;
+    }
+
+    private int weigh(String key, Result result) {
+        long bytes = STRING_OVERHEAD + key.length() + OBJECT_OVERHEAD * (3L + result.byDetector.size());
+        for (CodeSmell smell : result.smells) {
+            // Type texts are shared constants; only the symbol and arguments belong to the entry
+            bytes += OBJECT_OVERHEAD * 2L + 5L * Integer.BYTES + weigh(smell.getSymbol());
+            for (String arg : smell.getArgs()) {
+                bytes += weigh(arg);
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private long weigh(String value) {
+        return value == null ? 0 : STRING_OVERHEAD + value.length();
+    }
+
+    /**
+     * The smells of one analysis, both as a flat list and split per detector. Both views share the
+     * same smell instances and are immutable.
+     */
+    public static final class Result {
+
+        private final List<CodeSmell> smells;
+        private final List<List<CodeSmell>> byDetector;
+
+        private Result(List<List<CodeSmell>> byDetector) {
+            List<List<CodeSmell>> copies = new ArrayList<>(byDetector.size());
+            List<CodeSmell> all = new ArrayList<>();
+            for (List<CodeSmell> found : byDetector) {
+                copies.add(List.copyOf(found));
+                all.addAll(found);
+            }
+            this.byDetector = List.copyOf(copies);
+            this.smells = List.copyOf(all);
+        }
+
+        public List<CodeSmell> getSmells() {
+            return smells;
+        }
+
+        public List<List<CodeSmell>> getByDetector() {
+            return byDetector;
+        }
+    }
+}
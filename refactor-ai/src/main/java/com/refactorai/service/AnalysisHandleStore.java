@@ -0,0 +1,105 @@
+package com.refactorai.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.refactorai.model.CodeSmell;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Analyses a client can come back to: /analyze stores the code and its smells under a random
+ * id, and /refactor takes that id and the index of a smell instead of the code, so the code is
+ * neither sent nor parsed and checked by every detector a second time.
+ * <p>
+ * Entries expire {@code refactorai.analysis.handles.ttl-ms} after they were stored, and the
+ * oldest give way once the stored code passes {@code refactorai.analysis.handles.max-bytes}.
+ * The parsed tree is not kept: it is many times the size of the source, and the slicer wants a
+ * tree of its own with comments attached.
+ */
+@Component
+public class AnalysisHandleStore {
+
+    // Rough per-object overhead used when weighing entries
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+
+    private final Cache<String, Analysis> analyses;
+
+    public AnalysisHandleStore(
+            @Value("${refactorai.analysis.handles.ttl-ms:900000}") long ttlMs,
+            @Value("${refactorai.analysis.handles.max-bytes:33554432}") long maxBytes
+    ) {
+        this.analyses = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .maximumWeight(maxBytes)
+                .weigher((String id, Analysis analysis) -> weigh(id, analysis))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Store an analysis and return its id.
+     */
+    public String put(String javaCode, List<CodeSmell> smells) {
+        String id = UUID.randomUUID().toString();
+        analyses.put(id, new Analysis(javaCode, smells));
+        return id;
+    }
+
+    /**
+     * The analysis stored under {@code id}, unless it expired or was evicted.
+     */
+    public Optional<Analysis> get(String id) {
+        return Optional.ofNullable(analyses.getIfPresent(id));
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = analyses.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("entries", analyses.estimatedSize());
+        result.put("weightBytes", analyses.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L));
+        return result;
+    }
+
+    private static int weigh(String id, Analysis analysis) {
+        // The smells are shared with the analysis cache; only the list holding them is ours
+        long bytes = 2L * STRING_OVERHEAD + id.length() + analysis.javaCode.length()
+                + OBJECT_OVERHEAD * (2L + analysis.smells.size());
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    /**
+     * The code of one /analyze call and the smells found in it, in the order they were returned.
+     */
+    public static final class Analysis {
+
+        private final String javaCode;
+        private final List<CodeSmell> smells;
+
+        private Analysis(String javaCode, List<CodeSmell> smells) {
+            this.javaCode = javaCode;
+            this.smells = List.copyOf(smells);
+        }
+
+        public String getJavaCode() {
+            return javaCode;
+        }
+
+        public List<CodeSmell> getSmells() {
+            return smells;
+        }
+    }
+}
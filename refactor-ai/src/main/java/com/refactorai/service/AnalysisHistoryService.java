@@ -0,0 +1,83 @@
+package com.refactorai.service;
+
+import com.refactorai.entity.AnalysisHistory;
+import com.refactorai.entity.User;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.repository.AnalysisHistoryRepository;
+import com.refactorai.repository.UserRepository;
+import com.refactorai.security.AuthenticatedUser;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public class AnalysisHistoryService {
+
+    private final UserRepository userRepository;
+    private final AnalysisHistoryRepository analysisHistoryRepository;
+
+    public AnalysisHistoryService(UserRepository userRepository,
+                                  AnalysisHistoryRepository analysisHistoryRepository) {
+        this.userRepository = userRepository;
+        this.analysisHistoryRepository = analysisHistoryRepository;
+    }
+
+    /**
+     * Save a refactoring for the signed-in user. Empty if the request was anonymous or its user
+     * does not exist.
+     */
+    public Optional<AnalysisHistory> save(AuthenticatedUser principal, String javaCode, String refactoredCode,
+                                          String diff, List<CodeSmell> smells) {
+        return findUser(principal).map(user -> save(user, javaCode, refactoredCode, diff, smells));
+    }
+
+    /**
+     * The signed-in user, looked up by the id in the token (or by username for tokens issued
+     * before they carried the id). Empty if the request was anonymous, or the user no longer
+     * exists though the token is still valid.
+     */
+    public Optional<User> findUser(AuthenticatedUser principal) {
+        if (principal == null) {
+            return Optional.empty();
+        }
+        if (principal.getId() != null) {
+            return userRepository.findById(principal.getId());
+        }
+        return userRepository.findByUsername(principal.getUsername());
+    }
+
+    /**
+     * The signed-in user's ten latest refactorings, newest first. Empty if the request was
+     * anonymous, or its token predates the id claim and names no user.
+     */
+    public Optional<List<AnalysisHistory>> findRecent(AuthenticatedUser principal) {
+        if (principal == null) {
+            return Optional.empty();
+        }
+        if (principal.getId() != null) {
+            return Optional.of(analysisHistoryRepository.findTop10ByUserIdOrderByCreatedAtDesc(principal.getId()));
+        }
+        return userRepository.findByUsername(principal.getUsername())
+                .map(analysisHistoryRepository::findTop10ByUserOrderByCreatedAtDesc);
+    }
+
+    public AnalysisHistory save(User user, String javaCode, String refactoredCode, String diff, List<CodeSmell> smells) {
+        // Create smell types string
+        String smellTypes = smells.stream()
+                .map(CodeSmell::getType)
+                .distinct()
+                .reduce((a, b) -> a + ", " + b)
+                .orElse("None");
+
+        AnalysisHistory history = new AnalysisHistory(
+                user,
+                javaCode,
+                refactoredCode,
+                diff,
+                smells.size(),
+                smellTypes
+        );
+        return analysisHistoryRepository.save(history);
+    }
+}
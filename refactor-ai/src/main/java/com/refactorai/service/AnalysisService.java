@@ -0,0 +1,56 @@
+package com.refactorai.service;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.model.CodeSmell;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public class AnalysisService {
+
+    private final ParserService parserService;
+    private final SmellDetectorEngine smellDetectorEngine;
+    private final AnalysisCache analysisCache;
+
+    public AnalysisService(ParserService parserService, SmellDetectorEngine smellDetectorEngine,
+                           AnalysisCache analysisCache) {
+        this.parserService = parserService;
+        this.smellDetectorEngine = smellDetectorEngine;
+        this.analysisCache = analysisCache;
+    }
+
+    /**
+     * Parse the code and run all detectors, or return the cached smells for identical source.
+     * Empty if the code does not parse.
+     */
+    public Optional<List<CodeSmell>> analyze(String javaCode) {
+        return analyzeByDetector(javaCode, () -> {
+        }).map(AnalysisCache.Result::getSmells);
+    }
+
+    /**
+     * Same as {@link #analyze(String)}, with the smells also split per detector (in the order of
+     * {@link SmellDetectorEngine#getDetectors()}). {@code onParsed} runs once the code is known to
+     * parse, before the detectors run; on a cache hit that is immediately.
+     */
+    public Optional<AnalysisCache.Result> analyzeByDetector(String javaCode, Runnable onParsed) {
+        String key = analysisCache.key(javaCode, smellDetectorEngine.getVersion());
+
+        AnalysisCache.Result cached = analysisCache.get(key);
+        if (cached != null) {
+            onParsed.run();
+            return Optional.of(cached);
+        }
+
+        Optional<CompilationUnit> cuOpt = parserService.parseCode(javaCode);
+        if (cuOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        onParsed.run();
+
+        return Optional.of(analysisCache.put(key, smellDetectorEngine.detectByDetector(cuOpt.get())));
+    }
+}
@@ -0,0 +1,256 @@
+package com.refactorai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.model.CodeSmell;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Analyzes every {@code .java} entry of a zip or tar.gz archive as it is read from the upload.
+ * <p>
+ * The archive is never unpacked to disk or buffered whole: entries are read one at a time and
+ * handed to a worker pool, and the reader blocks once {@code refactorai.archive.max-in-flight}
+ * files are waiting or being analyzed. Each finished file is written immediately as one NDJSON
+ * line, so memory stays flat however many files the archive holds. An archive that turns out to
+ * be corrupt or truncated partway through still ends with an error line and the summary, so a
+ * cut-short scan can't be mistaken for a finished one.
+ */
+@Service
+public class ArchiveAnalysisService {
+
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+
+    private final AnalysisService analysisService;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+    private final long maxFileBytes;
+
+    public ArchiveAnalysisService(
+            AnalysisService analysisService,
+            ObjectMapper objectMapper,
+            @Value("${refactorai.archive.threads:0}") int threads,
+            @Value("${refactorai.archive.max-in-flight:0}") int maxInFlight,
+            @Value("${refactorai.archive.max-file-bytes:2097152}") long maxFileBytes
+    ) {
+        int workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.analysisService = analysisService;
+        this.objectMapper = objectMapper;
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : workerCount * 2;
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Let queued files finish: each holds a permit that a scan in progress waits for
+        workers.shutdown();
+    }
+
+    /**
+     * Read the archive from {@code in} and write one JSON object per {@code .java} entry to
+     * {@code out} as soon as it is analyzed, followed by a summary line. If the archive can't be
+     * read to the end, or the server starts shutting down, the files read so far are reported,
+     * then an {@code error} line, and the summary says {@code "complete": false}.
+     */
+    public void analyze(InputStream in, OutputStream out) throws IOException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ReentrantLock writeLock = new ReentrantLock();
+        AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        AtomicInteger files = new AtomicInteger();
+        AtomicInteger smells = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int skipped = 0;
+        String stopped = null;
+
+        try (ArchiveInputStream<?> archive = open(in)) {
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null && writeFailure.get() == null) {
+                if (entry.isDirectory() || !entry.getName().endsWith(".java")) {
+                    continue;
+                }
+
+                String path = entry.getName();
+                Optional<String> source = read(archive);
+                if (source.isEmpty()) {
+                    skipped++;
+                    writeLine(out, writeLock, writeFailure, error(path, "File exceeds " + maxFileBytes + " bytes"));
+                    continue;
+                }
+
+                acquire(inFlight);
+                try {
+                    workers.execute(() -> {
+                        try {
+                            Map<String, Object> line = analyzeFile(path, source.get(), files, smells, failed);
+                            writeLine(out, writeLock, writeFailure, line);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; the task that would have released the permit never runs
+                    inFlight.release();
+                    stopped = "Analysis stopped: the server is shutting down";
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // Corrupt or truncated upload; writes never throw, they record writeFailure instead
+            stopped = "Failed to read archive: " + e.getMessage();
+        } finally {
+            // Wait for the files still being analyzed before closing the stream
+            acquire(inFlight, maxInFlight);
+        }
+
+        if (writeFailure.get() != null) {
+            throw writeFailure.get();
+        }
+        if (stopped != null) {
+            writeLine(out, writeLock, writeFailure, Map.of("error", stopped));
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("files", files.get());
+        summary.put("smells", smells.get());
+        summary.put("failed", failed.get());
+        summary.put("skipped", skipped);
+        summary.put("complete", stopped == null);
+        writeLine(out, writeLock, writeFailure, Map.of("summary", summary));
+    }
+
+    private Map<String, Object> analyzeFile(String path, String source, AtomicInteger files,
+                                            AtomicInteger smells, AtomicInteger failed) {
+        files.incrementAndGet();
+        try {
+            Optional<List<CodeSmell>> found = analysisService.analyze(source);
+            if (found.isEmpty()) {
+                failed.incrementAndGet();
+                return error(path, "Failed to parse Java code");
+            }
+
+            smells.addAndGet(found.get().size());
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("path", path);
+            line.put("smells", found.get());
+            return line;
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            return error(path, "Error analyzing file: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Object> error(String path, String message) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("path", path);
+        line.put("error", message);
+        return line;
+    }
+
+    private void writeLine(OutputStream out, ReentrantLock writeLock,
+                           AtomicReference<IOException> writeFailure, Object line) {
+        writeLock.lock();
+        try {
+            if (writeFailure.get() != null) {
+                return;
+            }
+            out.write(objectMapper.writeValueAsBytes(line));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            // Most likely the client went away; stop reading the rest of the archive
+            writeFailure.compareAndSet(null, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private ArchiveInputStream<?> open(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        if (startsWith(buffered, ZIP_MAGIC)) {
+            return new ZipArchiveInputStream(buffered);
+        }
+        if (startsWith(buffered, GZIP_MAGIC)) {
+            return new TarArchiveInputStream(new GzipCompressorInputStream(buffered));
+        }
+        throw new IllegalArgumentException("Unsupported archive: expected a zip or tar.gz upload");
+    }
+
+    private boolean startsWith(BufferedInputStream in, byte[] magic) throws IOException {
+        in.mark(magic.length);
+        try {
+            byte[] head = in.readNBytes(magic.length);
+            if (head.length < magic.length) {
+                return false;
+            }
+            for (int i = 0; i < magic.length; i++) {
+                if (head[i] != magic[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * The current entry as text, or empty if it is larger than the per-file limit.
+     */
+    private Optional<String> read(InputStream entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        long total = 0;
+        int n;
+
+        while ((n = entry.read(chunk)) != -1) {
+            total += n;
+            if (total > maxFileBytes) {
+                // Drain the rest of the entry without keeping it
+                entry.transferTo(OutputStream.nullOutputStream());
+                return Optional.empty();
+            }
+            buffer.write(chunk, 0, n);
+        }
+
+        return Optional.of(buffer.toString(StandardCharsets.UTF_8));
+    }
+
+    private void acquire(Semaphore semaphore) {
+        acquire(semaphore, 1);
+    }
+
+    private void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while analyzing archive", e);
+        }
+    }
+}
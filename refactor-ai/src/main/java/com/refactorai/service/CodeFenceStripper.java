@@ -0,0 +1,171 @@
+package com.refactorai.service;
+
+/**
+ * Takes the code out of a completion as it streams in: drops the opening markdown fence
+ * ({@code ```java} or any other info string) and the leading whitespace after it, and stops at
+ * the closing fence, so whatever prose the model adds after the code is never emitted. A
+ * completion without an opening fence is all code, less a stray {@code ```} at its very end.
+ * <p>
+ * Each chunk passed to {@link #accept} returns the code it completes; trailing whitespace and
+ * backticks are held back until it is clear they aren't the end of the code. Concatenating the
+ * results of {@code accept} and {@link #finish} gives the same code as stripping the whole
+ * completion at once. Not thread-safe: one instance per completion.
+ */
+public class CodeFenceStripper {
+
+    private static final String FENCE = "```";
+
+    private enum State {
+        /** Nothing but whitespace seen yet. */
+        START,
+        /** Inside the opening fence's line. */
+        FENCE_INFO,
+        /** After the opening fence, before the first non-blank character. */
+        LEADING,
+        /** In the code. */
+        CODE,
+        /** Past the closing fence. */
+        DONE
+    }
+
+    private final StringBuilder pending = new StringBuilder();
+    private final StringBuilder code = new StringBuilder();
+    private State state = State.START;
+    private boolean fenced;
+
+    /**
+     * Feed the next chunk of the completion; returns the code it makes safe to emit (often empty).
+     */
+    public String accept(String chunk) {
+        if (state == State.DONE) {
+            return "";
+        }
+        pending.append(chunk);
+        int before = code.length();
+        advance(false);
+        return code.substring(before);
+    }
+
+    /**
+     * The completion ended; returns the code still held back.
+     */
+    public String finish() {
+        if (state == State.DONE) {
+            return "";
+        }
+        int before = code.length();
+        advance(true);
+        if (state == State.CODE) {
+            String rest = pending.toString().stripTrailing();
+            if (rest.endsWith(FENCE)) {
+                rest = rest.substring(0, rest.length() - FENCE.length()).stripTrailing();
+            }
+            code.append(rest);
+        }
+        pending.setLength(0);
+        state = State.DONE;
+        return code.substring(before);
+    }
+
+    /**
+     * All the code emitted so far.
+     */
+    public String getCode() {
+        return code.toString();
+    }
+
+    private void advance(boolean ended) {
+        if (state == State.START) {
+            int start = firstNonWhitespace();
+            if (start < 0) {
+                pending.setLength(0);
+                return;
+            }
+            pending.delete(0, start);
+            if (pending.length() < FENCE.length() && FENCE.startsWith(pending.toString()) && !ended) {
+                return;
+            }
+            if (pending.indexOf(FENCE) == 0) {
+                fenced = true;
+                state = State.FENCE_INFO;
+            } else {
+                state = State.CODE;
+            }
+        }
+
+        if (state == State.FENCE_INFO) {
+            int newline = pending.indexOf("\n");
+            if (newline < 0) {
+                // Keep only the fence itself, in case the answer is a bare ``` with nothing after it
+                pending.setLength(Math.min(pending.length(), FENCE.length()));
+                return;
+            }
+            pending.delete(0, newline + 1);
+            state = State.LEADING;
+        }
+
+        if (state == State.LEADING) {
+            int start = firstNonWhitespace();
+            if (start < 0) {
+                pending.setLength(0);
+                return;
+            }
+            pending.delete(0, start);
+            state = State.CODE;
+        }
+
+        if (fenced) {
+            int closing = closingFence();
+            if (closing >= 0) {
+                code.append(pending, 0, closing).setLength(stripTrailing(code));
+                pending.setLength(0);
+                state = State.DONE;
+                return;
+            }
+        }
+
+        // Emit up to the last character that can't be part of the ending
+        int keep = pending.length();
+        while (keep > 0 && (Character.isWhitespace(pending.charAt(keep - 1)) || pending.charAt(keep - 1) == '`')) {
+            keep--;
+        }
+        code.append(pending, 0, keep);
+        pending.delete(0, keep);
+    }
+
+    /**
+     * Start of the first complete line in {@code pending} holding only a fence, or -1.
+     */
+    private int closingFence() {
+        // Unless nothing was emitted yet, pending starts in the middle of the last emitted line
+        int lineStart = code.length() == 0 ? 0 : pending.indexOf("\n") + 1;
+        if (lineStart == 0 && code.length() > 0) {
+            return -1;
+        }
+        int newline;
+        while ((newline = pending.indexOf("\n", lineStart)) >= 0) {
+            if (pending.substring(lineStart, newline).strip().equals(FENCE)) {
+                return lineStart;
+            }
+            lineStart = newline + 1;
+        }
+        return -1;
+    }
+
+    private int firstNonWhitespace() {
+        for (int i = 0; i < pending.length(); i++) {
+            if (!Character.isWhitespace(pending.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int stripTrailing(StringBuilder text) {
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
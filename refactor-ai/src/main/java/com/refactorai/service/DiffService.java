@@ -3,22 +3,60 @@ package com.refactorai.service;
 import com.github.difflib.DiffUtils;
 import com.github.difflib.UnifiedDiffUtils;
 import com.github.difflib.patch.Patch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 @Service
 public class DiffService {
 
+    /**
+     * How the line-level patch is computed; both produce the same unified-diff format.
+     */
+    public enum Engine {
+        /**
+         * {@link HistogramDiff} over interned lines. Much faster on large rewrites.
+         */
+        HISTOGRAM,
+        /**
+         * java-diff-utils' Myers diff over the line strings, the original implementation.
+         */
+        MYERS
+    }
+
+    private final Engine engine;
+
+    public DiffService() {
+        this(Engine.HISTOGRAM);
+    }
+
+    public DiffService(Engine engine) {
+        this.engine = engine;
+    }
+
+    @Autowired
+    public DiffService(@Value("${refactorai.diff.engine:histogram}") String engine) {
+        this(Engine.valueOf(engine.trim().toUpperCase(Locale.ROOT)));
+    }
+
     public String generateDiff(String originalCode, String refactoredCode) {
+        return generateDiff(originalCode, refactoredCode, engine);
+    }
+
+    public String generateDiff(String originalCode, String refactoredCode, Engine engine) {
         try {
             // Split code into lines
             List<String> originalLines = Arrays.asList(originalCode.split("\n"));
             List<String> refactoredLines = Arrays.asList(refactoredCode.split("\n"));
 
             // Generate patch (differences)
-            Patch<String> patch = DiffUtils.diff(originalLines, refactoredLines);
+            Patch<String> patch = engine == Engine.MYERS
+                    ? DiffUtils.diff(originalLines, refactoredLines)
+                    : HistogramDiff.diff(originalLines, refactoredLines);
 
             // Generate unified diff format
             List<String> unifiedDiff = UnifiedDiffUtils.generateUnifiedDiff(
@@ -37,21 +75,13 @@ public class DiffService {
         }
     }
 
+    /**
+     * The code in an LLM answer, without its markdown fences (see {@link CodeFenceStripper}).
+     */
     public String extractJavaCode(String aiResponse) {
-        // Remove markdown code blocks if present
-        String cleaned = aiResponse.trim();
-
-        // Remove ```java and ``` markers
-        if (cleaned.startsWith("```java")) {
-            cleaned = cleaned.substring(7);
-        } else if (cleaned.startsWith("```")) {
-            cleaned = cleaned.substring(3);
-        }
-
-        if (cleaned.endsWith("```")) {
-            cleaned = cleaned.substring(0, cleaned.length() - 3);
-        }
-
-        return cleaned.trim();
+        CodeFenceStripper stripper = new CodeFenceStripper();
+        stripper.accept(aiResponse);
+        stripper.finish();
+        return stripper.getCode();
     }
 }
\ No newline at end of file
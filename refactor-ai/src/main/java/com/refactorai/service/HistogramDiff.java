@@ -0,0 +1,300 @@
+package com.refactorai.service;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.ChangeDelta;
+import com.github.difflib.patch.Chunk;
+import com.github.difflib.patch.DeleteDelta;
+import com.github.difflib.patch.InsertDelta;
+import com.github.difflib.patch.Patch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Histogram diff (the algorithm git uses for {@code --histogram}) over lines interned to ints.
+ * <p>
+ * Every distinct line gets an id once, so the diff itself only compares ints and never touches a
+ * string again. Each region of the diff has its common prefix and suffix cut off, then is split on
+ * the lines that are unique on both sides (patience diff). A region without such lines is split
+ * around its rarest common run of lines instead, and one whose common lines are all too frequent
+ * to anchor on falls back to Myers for that region only.
+ * <p>
+ * The result is an ordinary java-diff-utils {@link Patch}, so it goes through the same unified-diff
+ * formatting as a Myers patch.
+ */
+final class HistogramDiff {
+
+    /**
+     * Lines occurring more often than this in a region are never used as anchors (same limit as git).
+     */
+    private static final int MAX_CHAIN_LENGTH = 64;
+
+    private final int[] a;
+    private final int[] b;
+    private final List<int[]> edits = new ArrayList<>();
+
+    // Occurrences of each id in the current region, and its positions in A chained from the first
+    // one: head[id] -> next[pos]
+    private final int[] head;
+    private final int[] next;
+    private final int[] count;
+    private final int[] countB;
+
+    private HistogramDiff(int[] a, int[] b, int ids) {
+        this.a = a;
+        this.b = b;
+        this.head = new int[ids];
+        this.next = new int[a.length];
+        this.count = new int[ids];
+        this.countB = new int[ids];
+    }
+
+    static Patch<String> diff(List<String> original, List<String> revised) {
+        Map<String, Integer> ids = new HashMap<>(original.size() * 2);
+        int[] a = intern(original, ids);
+        int[] b = intern(revised, ids);
+
+        HistogramDiff diff = new HistogramDiff(a, b, ids.size());
+        diff.run();
+
+        Patch<String> patch = new Patch<>(diff.edits.size());
+        for (int[] edit : diff.edits) {
+            patch.addDelta(delta(original, revised, edit[0], edit[1], edit[2], edit[3]));
+        }
+        return patch;
+    }
+
+    private static int[] intern(List<String> lines, Map<String, Integer> ids) {
+        int[] interned = new int[lines.size()];
+        for (int i = 0; i < interned.length; i++) {
+            Integer id = ids.putIfAbsent(lines.get(i), ids.size());
+            interned[i] = id != null ? id : ids.size() - 1;
+        }
+        return interned;
+    }
+
+    private void run() {
+        // Regions are split on an explicit stack, left side on top, so edits come out in order
+        Deque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[]{0, a.length, 0, b.length});
+
+        while (!regions.isEmpty()) {
+            int[] region = regions.pop();
+            int aStart = region[0];
+            int aEnd = region[1];
+            int bStart = region[2];
+            int bEnd = region[3];
+
+            while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+                aStart++;
+                bStart++;
+            }
+            while (aEnd > aStart && bEnd > bStart && a[aEnd - 1] == b[bEnd - 1]) {
+                aEnd--;
+                bEnd--;
+            }
+
+            if (aStart == aEnd || bStart == bEnd) {
+                addEdit(aStart, aEnd, bStart, bEnd);
+                continue;
+            }
+
+            if (splitOnUniqueLines(aStart, aEnd, bStart, bEnd, regions)) {
+                continue;
+            }
+
+            int[] anchor = findAnchor(aStart, aEnd, bStart, bEnd);
+            if (anchor == null) {
+                myers(aStart, aEnd, bStart, bEnd);
+                continue;
+            }
+
+            regions.push(new int[]{anchor[1], aEnd, anchor[3], bEnd});
+            regions.push(new int[]{aStart, anchor[0], bStart, anchor[2]});
+        }
+    }
+
+    /**
+     * Patience step: match the lines that occur exactly once on each side, keep the longest run of
+     * matches that is in order on both sides, and push the gaps between them as new regions. This
+     * splits a file with edits scattered all over it in one linear pass, where picking one anchor
+     * at a time would rescan the remaining region for each of them.
+     *
+     * @return false if the region has no line that is unique on both sides
+     */
+    private boolean splitOnUniqueLines(int aStart, int aEnd, int bStart, int bEnd, Deque<int[]> regions) {
+        for (int i = aStart; i < aEnd; i++) {
+            count[a[i]]++;
+            head[a[i]] = i;
+        }
+        for (int i = bStart; i < bEnd; i++) {
+            countB[b[i]]++;
+        }
+
+        int[] aMatches = new int[Math.min(aEnd - aStart, bEnd - bStart)];
+        int[] bMatches = new int[aMatches.length];
+        int matches = 0;
+        for (int i = bStart; i < bEnd; i++) {
+            int id = b[i];
+            if (count[id] == 1 && countB[id] == 1) {
+                aMatches[matches] = head[id];
+                bMatches[matches] = i;
+                matches++;
+            }
+        }
+
+        for (int i = aStart; i < aEnd; i++) {
+            count[a[i]] = 0;
+        }
+        for (int i = bStart; i < bEnd; i++) {
+            countB[b[i]] = 0;
+        }
+        if (matches == 0) {
+            return false;
+        }
+
+        // Longest increasing run of A positions (matches are already in B order), by patience sorting
+        int[] tails = new int[matches];
+        int[] previous = new int[matches];
+        int length = 0;
+        for (int i = 0; i < matches; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (aMatches[tails[mid]] < aMatches[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        int aNext = aEnd;
+        int bNext = bEnd;
+        for (int i = tails[length - 1]; i != -1; i = previous[i]) {
+            regions.push(new int[]{aMatches[i] + 1, aNext, bMatches[i] + 1, bNext});
+            aNext = aMatches[i];
+            bNext = bMatches[i];
+        }
+        regions.push(new int[]{aStart, aNext, bStart, bNext});
+        return true;
+    }
+
+    /**
+     * The common run of lines whose rarest line occurs least often in the A region (longest run on
+     * a tie), as {aStart, aEnd, bStart, bEnd}, or null if every common line is too frequent.
+     */
+    private int[] findAnchor(int aStart, int aEnd, int bStart, int bEnd) {
+        for (int i = aEnd - 1; i >= aStart; i--) {
+            int id = a[i];
+            if (count[id] == 0) {
+                head[id] = -1;
+            }
+            next[i] = head[id];
+            head[id] = i;
+            count[id]++;
+        }
+
+        int[] best = null;
+        int bestCount = MAX_CHAIN_LENGTH;
+        int bestLength = 0;
+
+        int bi = bStart;
+        while (bi < bEnd) {
+            int id = b[bi];
+            int nextB = bi + 1;
+
+            if (count[id] > 0 && count[id] <= bestCount) {
+                for (int ai = head[id]; ai != -1; ai = next[ai]) {
+                    int as = ai;
+                    int bs = bi;
+                    int ae = ai + 1;
+                    int be = bi + 1;
+                    int rarest = count[id];
+
+                    while (as > aStart && bs > bStart && a[as - 1] == b[bs - 1]) {
+                        as--;
+                        bs--;
+                        rarest = Math.min(rarest, count[a[as]]);
+                    }
+                    while (ae < aEnd && be < bEnd && a[ae] == b[be]) {
+                        rarest = Math.min(rarest, count[a[ae]]);
+                        ae++;
+                        be++;
+                    }
+
+                    if (rarest < bestCount || (rarest == bestCount && ae - as > bestLength)) {
+                        best = new int[]{as, ae, bs, be};
+                        bestCount = rarest;
+                        bestLength = ae - as;
+                    }
+                    nextB = Math.max(nextB, be);
+                }
+            }
+            bi = nextB;
+        }
+
+        for (int i = aStart; i < aEnd; i++) {
+            count[a[i]] = 0;
+        }
+        return best;
+    }
+
+    private void myers(int aStart, int aEnd, int bStart, int bEnd) {
+        List<Integer> source = new ArrayList<>(aEnd - aStart);
+        for (int i = aStart; i < aEnd; i++) {
+            source.add(a[i]);
+        }
+        List<Integer> target = new ArrayList<>(bEnd - bStart);
+        for (int i = bStart; i < bEnd; i++) {
+            target.add(b[i]);
+        }
+
+        for (AbstractDelta<Integer> delta : DiffUtils.diff(source, target).getDeltas()) {
+            int as = aStart + delta.getSource().getPosition();
+            int bs = bStart + delta.getTarget().getPosition();
+            addEdit(as, as + delta.getSource().size(), bs, bs + delta.getTarget().size());
+        }
+    }
+
+    private void addEdit(int aStart, int aEnd, int bStart, int bEnd) {
+        if (aStart == aEnd && bStart == bEnd) {
+            return;
+        }
+        // An edit that starts where the previous one ended is one change, as Myers would report it
+        if (!edits.isEmpty()) {
+            int[] last = edits.get(edits.size() - 1);
+            if (last[1] == aStart && last[3] == bStart) {
+                last[1] = aEnd;
+                last[3] = bEnd;
+                return;
+            }
+        }
+        edits.add(new int[]{aStart, aEnd, bStart, bEnd});
+    }
+
+    private static AbstractDelta<String> delta(List<String> original, List<String> revised,
+                                               int aStart, int aEnd, int bStart, int bEnd) {
+        Chunk<String> source = new Chunk<>(aStart, original.subList(aStart, aEnd));
+        Chunk<String> target = new Chunk<>(bStart, revised.subList(bStart, bEnd));
+
+        if (aStart == aEnd) {
+            return new InsertDelta<>(source, target);
+        }
+        if (bStart == bEnd) {
+            return new DeleteDelta<>(source, target);
+        }
+        return new ChangeDelta<>(source, target);
+    }
+}
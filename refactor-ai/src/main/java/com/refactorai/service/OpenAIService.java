@@ -1,73 +1,488 @@
 package com.refactorai.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.llm.AdaptiveRateLimiter;
+import com.refactorai.llm.LlmCallGuard;
+import com.refactorai.llm.LlmException;
+import com.refactorai.llm.LlmResponseCache;
+import jakarta.annotation.PreDestroy;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+/**
+ * Chat completion calls to the Groq (OpenAI-compatible) API.
+ * <p>
+ * All calls share one OkHttp client, so connections are pooled and kept alive between requests
+ * (and multiplexed over HTTP/2 where the provider offers it). Calls are asynchronous: the
+ * caller's thread doesn't wait while the model is generating (one of OkHttp's dispatcher threads
+ * does), and each call is bounded by a connect, a read (time between bytes) and a total timeout.
+ * Every request goes through the {@link LlmCallGuard} (bulkhead, circuit breaker, rate limiter,
+ * retries), and failures surface as typed {@link LlmException}s.
+ * <p>
+ * Streaming calls ask for {@code stream: true} and read the provider's server-sent events as they
+ * arrive, handing each delta to the caller, so the first tokens show up after the provider's
+ * time-to-first-token rather than after the whole completion.
+ * <p>
+ * In virtual-thread mode (see {@link WorkerThreads}) the dispatcher runs each call on a virtual
+ * thread and speaks HTTP/1.1 only, so {@code groq.http.max-requests} can be raised well past what
+ * platform threads allow.
+ */
 @Service
 public class OpenAIService {
 
-    @Value("${groq.api.key}")
-    private String apiKey;
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final String MODEL = "llama-3.3-70b-versatile";
 
-    private static final String GROQ_API_URL = "https://api.groq.com/openai/v1/chat/completions";
+    /**
+     * Bump whenever {@link #buildPrompt} changes, so cached answers to the old prompt are not reused.
+     */
+    private static final int PROMPT_VERSION = 2;
 
+    private final ObjectMapper objectMapper;
+    private final LlmCallGuard callGuard;
+    private final LlmResponseCache responseCache;
+    private final OkHttpClient httpClient;
+    private final String apiKey;
+    private final String apiUrl;
+    private final boolean deterministic;
+
+    public OpenAIService(
+            ObjectMapper objectMapper,
+            LlmCallGuard callGuard,
+            LlmResponseCache responseCache,
+            WorkerThreads workerThreads,
+            @Value("${groq.api.key}") String apiKey,
+            @Value("${groq.api.url:https://api.groq.com/openai/v1/chat/completions}") String apiUrl,
+            @Value("${groq.deterministic:false}") boolean deterministic,
+            @Value("${groq.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${groq.http.read-timeout-ms:60000}") long readTimeoutMs,
+            @Value("${groq.http.call-timeout-ms:90000}") long callTimeoutMs,
+            @Value("${groq.http.max-requests:64}") int maxRequests,
+            @Value("${groq.http.max-idle-connections:16}") int maxIdleConnections
+    ) {
+        this.objectMapper = objectMapper;
+        this.callGuard = callGuard;
+        this.responseCache = responseCache;
+        this.apiKey = apiKey;
+        this.apiUrl = apiUrl;
+        this.deterministic = deterministic;
+
+        // OkHttp's async calls still block a dispatcher thread on the socket while the model generates
+        Dispatcher dispatcher = workerThreads.isVirtual()
+                ? new Dispatcher(workerThreads.newPool("okhttp-", maxRequests))
+                : new Dispatcher();
+        // Everything goes to one host, so the per-host limit is the only one that matters
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequests);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        if (workerThreads.isVirtual()) {
+            // OkHttp 4 waits for HTTP/2 frames in Object.wait(), which pins a virtual thread's carrier
+            builder.protocols(List.of(Protocol.HTTP_1_1));
+        }
+        this.httpClient = builder
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, 5, TimeUnit.MINUTES))
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * Blocking form of {@link #streamRefactoringSuggestion}.
+     *
+     * @throws LlmException if the call fails
+     */
+    public String getRefactoringSuggestion(PromptSlicer.Slice slice, String codeSmellType, String description,
+                                           Consumer<String> onToken) {
+        return join(streamRefactoringSuggestion(slice, codeSmellType, description, onToken));
+    }
+
+    /**
+     * Blocking form of {@link #getRefactoringSuggestionAsync(String, String, String)}.
+     *
+     * @throws LlmException if the call fails
+     */
     public String getRefactoringSuggestion(String originalCode, String codeSmellType, String description) {
+        return getRefactoringSuggestion(PromptSlicer.Slice.wholeFile(originalCode), codeSmellType, description);
+    }
+
+    /**
+     * Blocking form of {@link #getRefactoringSuggestionAsync(PromptSlicer.Slice, String, String)}.
+     *
+     * @throws LlmException if the call fails
+     */
+    public String getRefactoringSuggestion(PromptSlicer.Slice slice, String codeSmellType, String description) {
+        return join(getRefactoringSuggestionAsync(slice, codeSmellType, description));
+    }
+
+    /**
+     * Ask the model to refactor the whole of {@code originalCode} for one smell.
+     */
+    public CompletableFuture<String> getRefactoringSuggestionAsync(String originalCode, String codeSmellType,
+                                                                   String description) {
+        return getRefactoringSuggestionAsync(PromptSlicer.Slice.wholeFile(originalCode), codeSmellType, description);
+    }
+
+    /**
+     * Ask the model to refactor {@code slice} for one smell; the answer is code for the slice, to
+     * be put back with {@link PromptSlicer#splice}. Answers come from the {@link LlmResponseCache}
+     * when the same code (up to whitespace and comments) was already sent for the same finding
+     * (smell type and description) with the same context, model, prompt and sampling; otherwise the provider is called through the
+     * {@link LlmCallGuard}. The future fails with an {@link LlmException} saying why no suggestion
+     * could be had.
+     */
+    public CompletableFuture<String> getRefactoringSuggestionAsync(PromptSlicer.Slice slice, String codeSmellType,
+                                                                   String description) {
+        Map<String, Object> requestBody = buildRequestBody(buildPrompt(slice, codeSmellType, description),
+                slice.getMaxTokens());
+        return responseCache.get(cacheKey(slice, codeSmellType, description, requestBody),
+                () -> callGuard.execute(() -> send(request(requestBody))));
+    }
+
+    /**
+     * Like {@link #getRefactoringSuggestionAsync(PromptSlicer.Slice, String, String)}, handing the
+     * completion to {@code onToken} piece by piece as the provider streams it. A cached answer, or
+     * one another request is already waiting for, arrives as a single piece. Once tokens have
+     * been handed out a failed stream is not retried, so {@code onToken} never sees a completion
+     * twice. Cancelling the returned future cancels the call, unless another request still waits
+     * for it.
+     */
+    public CompletableFuture<String> streamRefactoringSuggestion(PromptSlicer.Slice slice, String codeSmellType,
+                                                                 String description, Consumer<String> onToken) {
+        Map<String, Object> requestBody = buildRequestBody(buildPrompt(slice, codeSmellType, description),
+                slice.getMaxTokens());
+        String key = cacheKey(slice, codeSmellType, description, requestBody);
+
+        Map<String, Object> streamingBody = new HashMap<>(requestBody);
+        streamingBody.put("stream", true);
+        AtomicBoolean streamed = new AtomicBoolean();
+
+        CompletableFuture<String> call = responseCache.get(key, () -> callGuard.execute(() -> sendStreaming(
+                request(streamingBody), token -> {
+                    streamed.set(true);
+                    onToken.accept(token);
+                })));
+        CompletableFuture<String> suggestion = call.thenApply(completion -> {
+            if (!streamed.get()) {
+                onToken.accept(completion);
+            }
+            return completion;
+        });
+        // A dependent stage doesn't pass cancellation back to the one it came from
+        suggestion.whenComplete((completion, error) -> {
+            if (suggestion.isCancelled()) {
+                call.cancel(false);
+            }
+        });
+        return suggestion;
+    }
+
+    private String cacheKey(PromptSlicer.Slice slice, String codeSmellType, String description,
+                            Map<String, Object> requestBody) {
+        // The description is in the prompt and tells apart findings of one type in the same slice
+        return responseCache.key(slice.getCode(), List.of(codeSmellType,
+                Objects.requireNonNullElse(description, ""),
+                Objects.requireNonNullElse(slice.getTargetName(), ""), slice.getKind(),
+                slice.getContext(), MODEL, PROMPT_VERSION,
+                requestBody.get("temperature"), slice.getMaxTokens(), requestBody.getOrDefault("seed", "")));
+    }
+
+    private Request request(Map<String, Object> requestBody) {
+        return new Request.Builder()
+                .url(apiUrl)
+                .header("Authorization", "Bearer " + apiKey)
+                .post(RequestBody.create(toJson(requestBody), JSON))
+                .build();
+    }
+
+    private static String join(CompletableFuture<String> suggestion) {
+        try {
+            return suggestion.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof LlmException llmException) {
+                throw llmException;
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<String> send(Request request) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Call call = httpClient.newCall(request);
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(failure(e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (ResponseBody body = response.body()) {
+                    LlmException rejection = rejection(response, body);
+                    if (rejection != null) {
+                        future.completeExceptionally(rejection);
+                    } else {
+                        future.complete(parseResponse(body.string()));
+                    }
+                } catch (IOException e) {
+                    future.completeExceptionally(failure(e));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+
+        future.whenComplete((suggestion, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Like {@link #send}, for a request with {@code stream: true}: the body is read as server-sent
+     * events on OkHttp's thread while it arrives, and each content delta goes to {@code onToken}.
+     */
+    private CompletableFuture<String> sendStreaming(Request request, Consumer<String> onToken) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Call call = httpClient.newCall(request);
+        AtomicBoolean started = new AtomicBoolean();
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(failure(e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (ResponseBody body = response.body()) {
+                    LlmException rejection = rejection(response, body);
+                    if (rejection != null) {
+                        future.completeExceptionally(rejection);
+                    } else {
+                        future.complete(readStream(body.source(), token -> {
+                            started.set(true);
+                            onToken.accept(token);
+                        }));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (started.get() && !(e instanceof LlmException)) {
+                        // Tokens are out already; a retry would send them again
+                        future.completeExceptionally(new LlmException.BadResponse(
+                                "LLM stream broke off: " + e.getMessage(), e));
+                    } else {
+                        future.completeExceptionally(e instanceof IOException io ? failure(io) : e);
+                    }
+                }
+            }
+        });
+
+        future.whenComplete((suggestion, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * The completion in a stream of {@code data:} events, each a chunk whose
+     * {@code choices[0].delta.content} continues the text, ended by {@code data: [DONE]}.
+     */
+    private String readStream(BufferedSource source, Consumer<String> onToken) throws IOException {
+        StringBuilder completion = new StringBuilder();
+        StringBuilder data = new StringBuilder();
+        String line;
+        boolean done = false;
+
+        while (!done && (line = source.readUtf8Line()) != null) {
+            if (line.startsWith("data:")) {
+                // Several data lines make one event, joined by newlines
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring(5).stripLeading());
+            } else if (line.isEmpty() && data.length() > 0) {
+                done = dispatch(data.toString(), completion, onToken);
+                data.setLength(0);
+            }
+            // Comments (":") and other fields are ignored
+        }
+        if (!done && data.length() > 0) {
+            dispatch(data.toString(), completion, onToken);
+        }
+
+        if (completion.length() == 0) {
+            throw new LlmException.BadResponse("No response from AI", null);
+        }
+        return completion.toString();
+    }
+
+    /**
+     * Handle one event; true if it ends the stream.
+     */
+    private boolean dispatch(String data, StringBuilder completion, Consumer<String> onToken) {
+        if (data.equals("[DONE]")) {
+            return true;
+        }
+        JsonNode chunk;
         try {
-            RestTemplate restTemplate = new RestTemplate();
+            chunk = objectMapper.readTree(data);
+        } catch (JsonProcessingException e) {
+            throw new LlmException.BadResponse("Unreadable LLM stream chunk: " + e.getOriginalMessage(), e);
+        }
+        if (chunk.has("error")) {
+            throw new LlmException.BadResponse("LLM stream failed: " + chunk.path("error").path("message").asText(), null);
+        }
 
-            // Build request headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
+        JsonNode content = chunk.path("choices").path(0).path("delta").path("content");
+        if (content.isTextual() && !content.asText().isEmpty()) {
+            completion.append(content.asText());
+            onToken.accept(content.asText());
+        }
+        return false;
+    }
 
-            // Build request body
-            String prompt = buildPrompt(originalCode, codeSmellType, description);
-            Map<String, Object> requestBody = buildRequestBody(prompt);
+    /**
+     * The typed failure for a response that isn't a completion, or null if it is one.
+     */
+    private LlmException rejection(Response response, ResponseBody body) throws IOException {
+        callGuard.getRateLimiter().update(response.headers());
 
-            // Make API call
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<Map> response = restTemplate.postForEntity(GROQ_API_URL, request, Map.class);
+        if (response.code() == 429) {
+            return new LlmException.RateLimited(
+                    "LLM provider rate limit reached",
+                    AdaptiveRateLimiter.parseRetryAfter(response.header("Retry-After"))
+            );
+        }
+        if (!response.isSuccessful()) {
+            return new LlmException.Upstream(
+                    "LLM provider answered " + response.code() + ": " + body.string(), response.code(), null);
+        }
+        return null;
+    }
 
-            // Parse response
-            return parseResponse(response.getBody());
+    private static LlmException failure(IOException e) {
+        // OkHttp reports connect, read and call timeouts as interrupted IO
+        if (e instanceof InterruptedIOException) {
+            return new LlmException.Timeout("LLM call timed out: " + e.getMessage(), e);
+        }
+        return new LlmException.Upstream("LLM call failed: " + e.getMessage(), 0, e);
+    }
 
-        } catch (Exception e) {
-            return "Error getting AI suggestion: " + e.getMessage();
+    private byte[] toJson(Map<String, Object> body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize LLM request", e);
         }
     }
 
-    private String buildPrompt(String code, String smellType, String description) {
-        return String.format(
-                "You are a Java code refactoring expert.\n\n" +
-                        "TASK: Refactor the following Java code to fix this issue:\n" +
-                        "Issue Type: %s\n" +
-                        "Issue Description: %s\n\n" +
-                        "Original Code:\n```java\n%s\n```\n\n" +
-                        "INSTRUCTIONS:\n" +
-                        "1. Return ONLY the complete refactored Java code\n" +
-                        "2. Do NOT include explanations, markdown, or comments outside the code\n" +
-                        "3. Ensure the refactored code compiles and runs correctly\n" +
-                        "4. Keep the same class name and method signatures where possible\n" +
-                        "5. Start your response with the Java code directly\n\n" +
-                        "REFACTORED CODE:",
-                smellType, description, code
-        );
+    private String buildPrompt(PromptSlicer.Slice slice, String smellType, String description) {
+        switch (slice.getKind()) {
+            case MEMBER:
+                return String.format(
+                        "You are a Java code refactoring expert.\n\n" +
+                                "TASK: Refactor the following Java method to fix this issue:\n" +
+                                "Issue Type: %s\n" +
+                                "Issue Description: %s\n\n" +
+                                "The class it belongs to (signatures only, for reference):\n```java\n%s```\n\n" +
+                                "Method to refactor:\n```java\n%s```\n\n" +
+                                "INSTRUCTIONS:\n" +
+                                "1. Return ONLY the refactored %s method, followed by any new helper methods or " +
+                                "constants it needs\n" +
+                                "2. Do NOT return the rest of the class, explanations, or markdown\n" +
+                                "3. Ensure the code compiles inside the class above\n" +
+                                "4. Keep the method's signature where possible\n" +
+                                "5. Start your response with the Java code directly\n\n" +
+                                "REFACTORED METHOD:",
+                        smellType, description, slice.getContext(), slice.getCode(), slice.getTargetName()
+                );
+            case TYPE:
+                return String.format(
+                        "You are a Java code refactoring expert.\n\n" +
+                                "TASK: Refactor the following Java class to fix this issue:\n" +
+                                "Issue Type: %s\n" +
+                                "Issue Description: %s\n\n" +
+                                "The file's package and imports (for reference):\n```java\n%s```\n\n" +
+                                "Class to refactor:\n```java\n%s```\n\n" +
+                                "INSTRUCTIONS:\n" +
+                                "1. Return ONLY the complete refactored %s class, with any imports it adds\n" +
+                                "2. Do NOT include explanations, markdown, or comments outside the code\n" +
+                                "3. Ensure the refactored code compiles and runs correctly\n" +
+                                "4. Keep the same class name and method signatures where possible\n" +
+                                "5. Start your response with the Java code directly\n\n" +
+                                "REFACTORED CODE:",
+                        smellType, description, slice.getContext(), slice.getCode(), slice.getTargetName()
+                );
+            default:
+                return String.format(
+                        "You are a Java code refactoring expert.\n\n" +
+                                "TASK: Refactor the following Java code to fix this issue:\n" +
+                                "Issue Type: %s\n" +
+                                "Issue Description: %s\n\n" +
+                                "Original Code:\n```java\n%s\n```\n\n" +
+                                "INSTRUCTIONS:\n" +
+                                "1. Return ONLY the complete refactored Java code\n" +
+                                "2. Do NOT include explanations, markdown, or comments outside the code\n" +
+                                "3. Ensure the refactored code compiles and runs correctly\n" +
+                                "4. Keep the same class name and method signatures where possible\n" +
+                                "5. Start your response with the Java code directly\n\n" +
+                                "REFACTORED CODE:",
+                        smellType, description, slice.getCode()
+                );
+        }
     }
 
-    private Map<String, Object> buildRequestBody(String prompt) {
+    private Map<String, Object> buildRequestBody(String prompt, int maxTokens) {
         Map<String, Object> body = new HashMap<>();
-        body.put("model", "llama-3.3-70b-versatile");
-        body.put("temperature", 0.7);
-        body.put("max_tokens", 1000);
+        body.put("model", MODEL);
+        body.put("max_tokens", maxTokens);
+        if (deterministic) {
+            // Greedy decoding with a fixed seed, so a cached answer is the answer the model would give
+            body.put("temperature", 0.0);
+            body.put("seed", 0);
+        } else {
+            body.put("temperature", 0.7);
+        }
 
         Map<String, String> systemMessage = new HashMap<>();
         systemMessage.put("role", "system");
@@ -82,16 +497,16 @@ public class OpenAIService {
         return body;
     }
 
-    private String parseResponse(Map<String, Object> responseBody) {
+    private String parseResponse(String responseBody) {
+        JsonNode content;
         try {
-            List<Map<String, Object>> choices = (List<Map<String, Object>>) responseBody.get("choices");
-            if (choices != null && !choices.isEmpty()) {
-                Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-                return (String) message.get("content");
-            }
-        } catch (Exception e) {
-            return "Error parsing AI response: " + e.getMessage();
+            content = objectMapper.readTree(responseBody).path("choices").path(0).path("message").path("content");
+        } catch (JsonProcessingException e) {
+            throw new LlmException.BadResponse("Unreadable LLM response: " + e.getOriginalMessage(), e);
+        }
+        if (!content.isTextual()) {
+            throw new LlmException.BadResponse("No response from AI", null);
         }
-        return "No response from AI";
+        return content.asText();
     }
-}
\ No newline at end of file
+}
@@ -2,31 +2,72 @@ package com.refactorai.service;
 
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Processor;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.DataKey;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.validator.postprocessors.Java10PostProcessor;
+import com.github.javaparser.ast.validator.postprocessors.PostProcessors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class ParserService {
 
-    private final JavaParser javaParser;
+    /**
+     * All comments of a parsed unit, in source order. Comments are not attributed to nodes (see
+     * {@link #createParser()}), so this is where detectors find them.
+     */
+    public static final DataKey<List<Comment>> COMMENTS = new DataKey<>() {
+    };
+
+    private static final Processor VAR_TYPES = new Processor() {
+        private final PostProcessors java10 = new Java10PostProcessor();
+
+        @Override
+        public void postProcess(ParseResult<? extends Node> result, ParserConfiguration configuration) {
+            java10.postProcess(result, configuration);
+        }
+    };
+
+    // JavaParser instances are not thread-safe, so each parse borrows one from this pool
+    private final Deque<JavaParser> idleParsers = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int maxIdleParsers;
 
     public ParserService() {
-        this.javaParser = new JavaParser();
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    @Autowired
+    public ParserService(@Value("${refactorai.parser.pool.max-idle:0}") int maxIdleParsers) {
+        this.maxIdleParsers = maxIdleParsers > 0 ? maxIdleParsers : Runtime.getRuntime().availableProcessors() * 2;
     }
 
     /**
      * Parse Java code string into AST (Abstract Syntax Tree)
      */
     public Optional<CompilationUnit> parseCode(String javaCode) {
+        JavaParser javaParser = borrowParser();
         try {
             ParseResult<CompilationUnit> result = javaParser.parse(javaCode);
 
             if (result.isSuccessful() && result.getResult().isPresent()) {
-                return result.getResult();
+                CompilationUnit cu = result.getResult().get();
+                cu.setData(COMMENTS, result.getCommentsCollection()
+                        .map(comments -> List.copyOf(comments.getComments()))
+                        .orElse(List.of()));
+                return Optional.of(cu);
             } else {
                 System.err.println("Parsing failed: " + result.getProblems());
                 return Optional.empty();
@@ -34,6 +75,27 @@ public class ParserService {
         } catch (Exception e) {
             System.err.println("Error parsing code: " + e.getMessage());
             return Optional.empty();
+        } finally {
+            releaseParser(javaParser);
+        }
+    }
+
+    /**
+     * Parse code whose source ranges are going to be edited. Unlike {@link #parseCode}, comments
+     * are attached to the nodes they document, and a failed parse is not logged: this is also
+     * used to check code that may well be broken, such as LLM answers.
+     */
+    public Optional<CompilationUnit> parseForEditing(String javaCode) {
+        ParserConfiguration configuration = new ParserConfiguration()
+                .setLanguageLevel(ParserConfiguration.LanguageLevel.RAW);
+        configuration.getProcessors().add(() -> VAR_TYPES);
+
+        try {
+            ParseResult<CompilationUnit> result = new JavaParser(configuration).parse(javaCode);
+            return result.isSuccessful() ? result.getResult() : Optional.empty();
+        } catch (Exception e) {
+            System.err.println("Error parsing code: " + e.getMessage());
+            return Optional.empty();
         }
     }
 
@@ -55,4 +117,43 @@ public class ParserService {
         }
         return 0;
     }
-}
\ No newline at end of file
+
+    private JavaParser borrowParser() {
+        JavaParser parser = idleParsers.pollFirst();
+        if (parser == null) {
+            return createParser();
+        }
+        idleCount.decrementAndGet();
+        return parser;
+    }
+
+    private void releaseParser(JavaParser parser) {
+        // Under a burst more parsers are created than kept; the extra ones are left to the GC
+        if (idleCount.incrementAndGet() <= maxIdleParsers) {
+            idleParsers.offerFirst(parser);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * A parser configured for analysis only. Tokens stay on because node ranges (and so every line
+     * number we report) are derived from them, but comments are not attributed to nodes and the
+     * original line separator is not detected: no detector uses either.
+     * <p>
+     * The language level is RAW: the grammar already accepts every Java version, and the
+     * level-specific validators walk the tree recursively, so a generated 1,000-term string
+     * concatenation would overflow the stack before any detector runs. Only the post-processor
+     * that turns {@code var} into a {@link com.github.javaparser.ast.type.VarType} is kept; it
+     * traverses iteratively.
+     */
+    private JavaParser createParser() {
+        ParserConfiguration configuration = new ParserConfiguration()
+                .setLanguageLevel(ParserConfiguration.LanguageLevel.RAW)
+                .setAttributeComments(false)
+                .setDetectOriginalLineSeparator(false)
+                .setLexicalPreservationEnabled(false);
+        configuration.getProcessors().add(() -> VAR_TYPES);
+        return new JavaParser(configuration);
+    }
+}
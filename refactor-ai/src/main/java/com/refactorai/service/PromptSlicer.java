@@ -0,0 +1,479 @@
+package com.refactorai.service;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.comments.Comment;
+import com.refactorai.llm.LlmException;
+import com.refactorai.model.CodeSmell;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Cuts the part of a file the LLM has to see for one smell, and puts its answer back.
+ * <p>
+ * A smell inside a method or constructor is sent as just that member, with a summary of the
+ * enclosing type (package, imports, header, fields and member signatures) as context. A smell
+ * elsewhere in a type (a field initializer, a God Class) sends the type; anything outside a type
+ * (an import) or without a position sends the whole file, as before. The completion budget is
+ * sized from the slice instead of being fixed.
+ * <p>
+ * The answer is put back over exactly the source range the sliced node was parsed from, so every
+ * other character of the file is kept as written and the diff only shows the change. The result
+ * must parse, or the answer is rejected.
+ */
+@Service
+public class PromptSlicer {
+
+    /**
+     * What is sent to the model.
+     */
+    public enum Kind {
+        /**
+         * One method or constructor; the answer is that member, optionally followed by helpers.
+         */
+        MEMBER,
+        /**
+         * One type declaration; the answer is the whole type.
+         */
+        TYPE,
+        /**
+         * The whole file; the answer replaces it.
+         */
+        FILE
+    }
+
+    // Java averages roughly 3-4 characters per token; the answer may grow by extracted helpers
+    private static final double CHARS_PER_TOKEN = 3.5;
+    private static final double ANSWER_GROWTH = 1.5;
+    private static final int MIN_COMPLETION_TOKENS = 256;
+    private static final int MAX_COMPLETION_TOKENS = 8192;
+
+    private static final String SLICE_CLASS = "RefactorAiSlice";
+
+    private final ParserService parserService;
+
+    public PromptSlicer(ParserService parserService) {
+        this.parserService = parserService;
+    }
+
+    /**
+     * The part of {@code javaCode} to send for {@code smell}.
+     */
+    public Slice slice(String javaCode, CodeSmell smell) {
+        if (smell.getLine() <= 0) {
+            return Slice.wholeFile(javaCode);
+        }
+        return parse(javaCode)
+                .map(cu -> slice(javaCode, cu, smell))
+                .orElseGet(() -> Slice.wholeFile(javaCode));
+    }
+
+    /**
+     * {@code smells} grouped by the slice each one falls in, in order of each slice's first smell.
+     * Smells in the same method share one slice; the file is parsed once.
+     */
+    public Map<Slice, List<CodeSmell>> group(String javaCode, List<CodeSmell> smells) {
+        Optional<CompilationUnit> parsed = parse(javaCode);
+        Map<Node, Slice> byTarget = new IdentityHashMap<>();
+        Map<Slice, List<CodeSmell>> groups = new LinkedHashMap<>();
+        Slice wholeFile = Slice.wholeFile(javaCode);
+
+        for (CodeSmell smell : smells) {
+            Slice slice = parsed.isEmpty() || smell.getLine() <= 0
+                    ? wholeFile
+                    : slice(javaCode, parsed.get(), smell);
+            Slice shared = slice.target == null ? wholeFile : byTarget.computeIfAbsent(slice.target, target -> slice);
+            groups.computeIfAbsent(shared, key -> new ArrayList<>()).add(smell);
+        }
+        return groups;
+    }
+
+    private Slice slice(String javaCode, CompilationUnit cu, CodeSmell smell) {
+        Position position = new Position(smell.getLine(), smell.getColumn());
+
+        Optional<CallableDeclaration> member = innermost(cu, CallableDeclaration.class, position)
+                .filter(callable -> callable.getParentNode().orElse(null) instanceof TypeDeclaration);
+        if (member.isPresent()) {
+            TypeDeclaration<?> type = (TypeDeclaration<?>) member.get().getParentNode().orElseThrow();
+            return new Slice(Kind.MEMBER, javaCode, cu, member.get(), member.get().getNameAsString(),
+                    sourceOf(javaCode, member.get()), summarize(cu, type, member.get()));
+        }
+
+        Optional<TypeDeclaration> type = innermost(cu, TypeDeclaration.class, position);
+        if (type.isPresent()) {
+            return new Slice(Kind.TYPE, javaCode, cu, type.get(), type.get().getNameAsString(),
+                    sourceOf(javaCode, type.get()), summarize(cu, null, null));
+        }
+
+        return Slice.wholeFile(javaCode);
+    }
+
+    /**
+     * The original file with the sliced node replaced by {@code answer} (already stripped of
+     * markdown). Only the node's own source range is rewritten, so every other character of the
+     * file, comments and formatting included, is exactly as it was.
+     *
+     * @throws LlmException.BadResponse if the answer isn't code that fits where the slice came from
+     */
+    public String splice(Slice slice, String answer) {
+        return apply(slice.source, List.of(edit(slice, answer)));
+    }
+
+    /**
+     * The change {@code answer} makes to the slice's file, checked to parse when applied alone.
+     *
+     * @throws LlmException.BadResponse if the answer isn't code that fits where the slice came from
+     */
+    public Edit edit(Slice slice, String answer) {
+        if (slice.kind == Kind.FILE) {
+            return new Edit(0, slice.source.length(), answer, List.of(), 0);
+        }
+
+        Optional<CompilationUnit> answeredUnit = parse(answer);
+        // Some answers ignore the instructions and return the whole file
+        if (slice.kind == Kind.MEMBER && answeredUnit.map(PromptSlicer::primaryTypeName)
+                .filter(name -> name.equals(primaryTypeName(slice.unit))).isPresent()) {
+            return new Edit(0, slice.source.length(), answer, List.of(), 0);
+        }
+
+        Edit edit;
+        if (slice.kind == Kind.TYPE) {
+            CompilationUnit answered = answeredUnit
+                    .orElseThrow(() -> new LlmException.BadResponse("The refactored class does not parse", null));
+            TypeDeclaration<?> replacement = answered.getTypes().stream()
+                    .filter(type -> type.getNameAsString().equals(slice.targetName))
+                    .findFirst()
+                    .or(() -> answered.getTypes().getFirst())
+                    .orElseThrow(() -> new LlmException.BadResponse("The answer contains no class", null));
+
+            edit = replacement(slice, sourceRange(slice.target, replacement), answer.substring(
+                    offset(answer, startOf(replacement)), offset(answer, replacement.getRange().orElseThrow().end) + 1),
+                    missingImports(slice.unit, answered.getImports()));
+        } else {
+            List<BodyDeclaration<?>> members = parse("class " + SLICE_CLASS + " {\n" + answer + "\n}")
+                    .flatMap(cu -> cu.getClassByName(SLICE_CLASS))
+                    .map(sliceClass -> List.copyOf(sliceClass.getMembers()))
+                    .orElseThrow(() -> new LlmException.BadResponse("The refactored method does not parse", null));
+
+            CallableDeclaration<?> target = (CallableDeclaration<?>) slice.target;
+            BodyDeclaration<?> replacement = members.stream()
+                    .filter(member -> member.getClass() == target.getClass())
+                    .filter(member -> ((CallableDeclaration<?>) member).getNameAsString().equals(slice.targetName))
+                    .findFirst()
+                    .or(() -> members.stream().filter(member -> member.getClass() == target.getClass()).findFirst())
+                    .orElseThrow(() -> new LlmException.BadResponse("The answer contains no " + slice.targetName, null));
+
+            edit = replacement(slice, sourceRange(slice.target, replacement), answer.strip(), List.of());
+        }
+
+        if (parse(apply(slice.source, List.of(edit))).isEmpty()) {
+            throw new LlmException.BadResponse("The refactored " + slice.targetName + " does not fit back into the file", null);
+        }
+        return edit;
+    }
+
+    /**
+     * {@code source} with all of {@code edits} (made against it) applied, and each import they
+     * add inserted once.
+     *
+     * @throws IllegalArgumentException if two edits overlap
+     */
+    public String apply(String source, List<Edit> edits) {
+        List<Edit> ordered = new ArrayList<>(edits);
+        ordered.sort(Comparator.comparingInt(edit -> edit.begin));
+        for (int i = 1; i < ordered.size(); i++) {
+            if (ordered.get(i).overlaps(ordered.get(i - 1))) {
+                throw new IllegalArgumentException("Overlapping edits");
+            }
+        }
+
+        Set<String> imports = new LinkedHashSet<>();
+        int importsAt = -1;
+        for (Edit edit : ordered) {
+            if (!edit.imports.isEmpty()) {
+                imports.addAll(edit.imports);
+                importsAt = edit.importsAt;
+            }
+        }
+
+        StringBuilder result = new StringBuilder(source.length());
+        int copied = 0;
+        for (Edit edit : ordered) {
+            if (importsAt >= copied && importsAt <= edit.begin) {
+                result.append(source, copied, importsAt).append(importBlock(source, importsAt, imports));
+                copied = importsAt;
+                importsAt = -1;
+            }
+            result.append(source, copied, edit.begin).append(edit.text);
+            copied = edit.end;
+        }
+        if (importsAt >= copied) {
+            result.append(source, copied, importsAt).append(importBlock(source, importsAt, imports));
+            copied = importsAt;
+        }
+        return result.append(source, copied, source.length()).toString();
+    }
+
+    private static <N extends Node> Optional<N> innermost(CompilationUnit cu, Class<N> type, Position position) {
+        return cu.findAll(type).stream()
+                .filter(node -> node.getRange().map(range -> range.contains(position)).orElse(false))
+                .min(Comparator.comparingInt(node -> length(node.getRange().orElseThrow())));
+    }
+
+    private static int length(Range range) {
+        return range.end.line - range.begin.line;
+    }
+
+    /**
+     * Whole lines of {@code node}, so the first line keeps its indentation.
+     */
+    private static String sourceOf(String javaCode, Node node) {
+        Range range = node.getRange().orElseThrow();
+        String[] lines = javaCode.split("\r?\n", -1);
+        StringBuilder source = new StringBuilder();
+        for (int line = range.begin.line; line <= range.end.line && line <= lines.length; line++) {
+            source.append(lines[line - 1]).append('\n');
+        }
+        return source.toString();
+    }
+
+    /**
+     * The package, imports and (for a member slice) the enclosing type with every member reduced
+     * to its signature: enough for the model to know what it may call, at a fraction of the size.
+     */
+    private static String summarize(CompilationUnit cu, TypeDeclaration<?> type, Node target) {
+        StringBuilder summary = new StringBuilder();
+        cu.getPackageDeclaration().ifPresent(declaration -> summary.append("package ")
+                .append(declaration.getNameAsString()).append(";\n"));
+        for (ImportDeclaration importDeclaration : cu.getImports()) {
+            summary.append(importDeclaration.toString().trim()).append('\n');
+        }
+        if (type == null) {
+            return summary.toString();
+        }
+
+        TypeDeclaration<?> header = type.clone();
+        header.getMembers().clear();
+        header.getAllContainedComments().forEach(Comment::remove);
+        header.removeComment();
+        String printed = header.toString();
+        summary.append('\n').append(printed, 0, printed.lastIndexOf('}')).append('\n');
+
+        for (BodyDeclaration<?> member : type.getMembers()) {
+            if (member == target) {
+                summary.append("    // ... the method to refactor ...\n");
+            } else if (member instanceof CallableDeclaration<?> callable) {
+                summary.append("    ").append(callable.getDeclarationAsString(true, true, true)).append(";\n");
+            } else if (member instanceof FieldDeclaration field) {
+                FieldDeclaration signature = field.clone();
+                signature.removeComment();
+                signature.getVariables().forEach(VariableDeclarator::removeInitializer);
+                summary.append("    ").append(signature.toString().trim()).append('\n');
+            } else if (member instanceof TypeDeclaration<?> nested) {
+                summary.append("    class ").append(nested.getNameAsString()).append(" { ... }\n");
+            }
+        }
+        return summary.append("}\n").toString();
+    }
+
+    /**
+     * Range to overwrite: the node, and its comment too when the answer brings its own.
+     */
+    private static Range sourceRange(Node target, Node replacement) {
+        Range range = target.getRange().orElseThrow();
+        if (replacement.getComment().isPresent() && target.getComment().isPresent()) {
+            return range.withBegin(target.getComment().get().getRange().orElseThrow().begin);
+        }
+        return range;
+    }
+
+    private static Position startOf(Node node) {
+        Position begin = node.getRange().orElseThrow().begin;
+        return node.getComment().flatMap(Node::getRange).map(range -> range.begin).orElse(begin);
+    }
+
+    /**
+     * Replacing {@code range} of the slice's source with {@code code}, re-indented so its lines
+     * line up with the line the range starts on.
+     */
+    private static Edit replacement(Slice slice, Range range, String code, List<String> imports) {
+        String source = slice.source;
+        int begin = offset(source, range.begin);
+        int end = offset(source, range.end) + 1;
+
+        int lineStart = source.lastIndexOf('\n', begin - 1) + 1;
+        String prefix = source.substring(lineStart, begin);
+        String indent = prefix.isBlank() ? prefix : prefix.substring(0, prefix.length() - prefix.stripLeading().length());
+
+        String[] lines = code.stripIndent().strip().split("\r?\n", -1);
+        StringBuilder text = new StringBuilder(lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            text.append('\n');
+            if (!lines[i].isBlank()) {
+                text.append(indent).append(lines[i]);
+            }
+        }
+        return new Edit(begin, end, text.toString(), imports, importsAt(slice));
+    }
+
+    private static List<String> missingImports(CompilationUnit unit, List<ImportDeclaration> imports) {
+        List<String> missing = new ArrayList<>();
+        for (ImportDeclaration importDeclaration : imports) {
+            if (!unit.getImports().contains(importDeclaration)) {
+                missing.add(importDeclaration.toString().trim());
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Where new imports go: after the file's last import, or its package declaration, or at the top.
+     */
+    private static int importsAt(Slice slice) {
+        CompilationUnit unit = slice.unit;
+        Optional<Position> after = unit.getImports().isEmpty()
+                ? unit.getPackageDeclaration().flatMap(Node::getRange).map(range -> range.end)
+                : unit.getImports().getLast().flatMap(Node::getRange).map(range -> range.end);
+        if (after.isEmpty()) {
+            return 0;
+        }
+        int lineEnd = slice.source.indexOf('\n', offset(slice.source, after.get()));
+        return lineEnd < 0 ? slice.source.length() : lineEnd + 1;
+    }
+
+    private static String importBlock(String source, int at, Set<String> imports) {
+        StringBuilder block = new StringBuilder();
+        // Below a package declaration with no imports yet, keep a blank line between them
+        if (at > 0 && source.startsWith("package", source.lastIndexOf('\n', at - 2) + 1)) {
+            block.append('\n');
+        }
+        for (String importLine : imports) {
+            block.append(importLine).append('\n');
+        }
+        return block.toString();
+    }
+
+    /**
+     * Index in {@code source} of a 1-based line and column, as JavaParser counts them.
+     */
+    private static int offset(String source, Position position) {
+        int index = 0;
+        for (int line = 1; line < position.line; line++) {
+            index = source.indexOf('\n', index) + 1;
+        }
+        return index + position.column - 1;
+    }
+
+    private static String primaryTypeName(CompilationUnit cu) {
+        return cu.getTypes().isEmpty() ? "" : cu.getType(0).getNameAsString();
+    }
+
+    private Optional<CompilationUnit> parse(String code) {
+        return parserService.parseForEditing(code);
+    }
+
+    /**
+     * A change to a file: a range of it to overwrite and the imports to add. Edits of the same
+     * file that don't overlap can be applied together.
+     */
+    public static final class Edit {
+
+        private final int begin;
+        private final int end;
+        private final String text;
+        private final List<String> imports;
+        private final int importsAt;
+
+        private Edit(int begin, int end, String text, List<String> imports, int importsAt) {
+            this.begin = begin;
+            this.end = end;
+            this.text = text;
+            this.imports = imports;
+            this.importsAt = importsAt;
+        }
+
+        public boolean overlaps(Edit other) {
+            return begin < other.end && other.begin < end;
+        }
+    }
+
+    /**
+     * A slice of one file for one smell, with the parsed file it was cut from.
+     */
+    public static final class Slice {
+
+        private final Kind kind;
+        private final String source;
+        private final CompilationUnit unit;
+        private final Node target;
+        private final String targetName;
+        private final String code;
+        private final String context;
+
+        private Slice(Kind kind, String source, CompilationUnit unit, Node target, String targetName,
+                      String code, String context) {
+            this.kind = kind;
+            this.source = source;
+            this.unit = unit;
+            this.target = target;
+            this.targetName = targetName;
+            this.code = code;
+            this.context = context;
+        }
+
+        public static Slice wholeFile(String javaCode) {
+            return new Slice(Kind.FILE, javaCode, null, null, null, javaCode, "");
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Name of the sliced method, constructor or type; null for the whole file.
+         */
+        public String getTargetName() {
+            return targetName;
+        }
+
+        /**
+         * The code the model should rewrite.
+         */
+        public String getCode() {
+            return code;
+        }
+
+        /**
+         * Read-only context for the model: a signature summary of the surroundings (empty for the
+         * whole file).
+         */
+        public String getContext() {
+            return context;
+        }
+
+        /**
+         * Completion budget for the rewrite: the slice's estimated size with room to grow.
+         */
+        public int getMaxTokens() {
+            int estimate = (int) (code.length() / CHARS_PER_TOKEN * ANSWER_GROWTH);
+            return Math.max(MIN_COMPLETION_TOKENS, Math.min(MAX_COMPLETION_TOKENS, estimate));
+        }
+    }
+}
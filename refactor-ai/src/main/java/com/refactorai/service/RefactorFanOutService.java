@@ -0,0 +1,287 @@
+package com.refactorai.service;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.refactorai.llm.LlmException;
+import com.refactorai.model.CodeSmell;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Refactors every smell in a file at once instead of only the first.
+ * <p>
+ * Smells are grouped by the slice they fall in (usually their enclosing method, see
+ * {@link PromptSlicer}), and each group is sent to the LLM as one request. Up to
+ * {@code refactorai.refactor.fan-out.max-concurrent} requests are in flight together, so a file
+ * with a handful of smelly methods takes about as long as its slowest call. The answers are then
+ * merged into one file: narrow edits first, and an edit that overlaps one already taken, or that
+ * makes the file fail to parse or declare a member twice (two methods adding the same constant),
+ * is reported as a conflict and left out.
+ */
+@Service
+public class RefactorFanOutService {
+
+    private final PromptSlicer promptSlicer;
+    private final OpenAIService openAIService;
+    private final DiffService diffService;
+    private final ParserService parserService;
+    private final int maxConcurrent;
+
+    public RefactorFanOutService(
+            PromptSlicer promptSlicer,
+            OpenAIService openAIService,
+            DiffService diffService,
+            ParserService parserService,
+            @Value("${refactorai.refactor.fan-out.max-concurrent:4}") int maxConcurrent
+    ) {
+        this.promptSlicer = promptSlicer;
+        this.openAIService = openAIService;
+        this.diffService = diffService;
+        this.parserService = parserService;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    /**
+     * Ask for a fix of every group of {@code smells} in {@code javaCode} and merge them. Fails
+     * only if no group could be applied, with the first group's failure; otherwise each group's
+     * outcome is in {@link Result#getGroups}. Cancelling the returned future cancels the calls
+     * not yet sent and detaches from those in flight, which are cancelled unless another request
+     * is waiting on the same cached call.
+     */
+    public CompletableFuture<Result> refactorAll(String javaCode, List<CodeSmell> smells) {
+        Map<PromptSlicer.Slice, List<CodeSmell>> groups = promptSlicer.group(javaCode, smells);
+        List<PromptSlicer.Slice> slices = new ArrayList<>(groups.keySet());
+        List<CompletableFuture<PromptSlicer.Edit>> edits = new ArrayList<>();
+        for (int i = 0; i < slices.size(); i++) {
+            edits.add(new CompletableFuture<>());
+        }
+
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        ConcurrentLinkedQueue<CompletableFuture<String>> calls = new ConcurrentLinkedQueue<>();
+        result.whenComplete((merged, error) -> {
+            if (result.isCancelled()) {
+                calls.forEach(call -> call.cancel(false));
+            }
+        });
+
+        AtomicInteger next = new AtomicInteger();
+        for (int i = 0; i < Math.min(maxConcurrent, slices.size()); i++) {
+            sendNext(slices, groups, edits, next, calls, result);
+        }
+
+        CompletableFuture.allOf(edits.toArray(new CompletableFuture[0])).whenComplete((done, error) -> {
+            try {
+                result.complete(merge(javaCode, slices, groups, edits));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send the next group not yet sent, and the one after that once it is answered; each running
+     * chain holds one of the {@code maxConcurrent} slots.
+     */
+    private void sendNext(List<PromptSlicer.Slice> slices, Map<PromptSlicer.Slice, List<CodeSmell>> groups,
+                          List<CompletableFuture<PromptSlicer.Edit>> edits, AtomicInteger next,
+                          ConcurrentLinkedQueue<CompletableFuture<String>> calls, CompletableFuture<Result> result) {
+        int index = next.getAndIncrement();
+        if (index >= slices.size()) {
+            return;
+        }
+        PromptSlicer.Slice slice = slices.get(index);
+        CompletableFuture<PromptSlicer.Edit> edit = edits.get(index);
+        if (result.isDone()) {
+            edit.cancel(false);
+            sendNext(slices, groups, edits, next, calls, result);
+            return;
+        }
+
+        List<CodeSmell> group = groups.get(slice);
+        CompletableFuture<String> call = openAIService.getRefactoringSuggestionAsync(slice, types(group),
+                group.stream().map(CodeSmell::getDescription).distinct().collect(Collectors.joining("; ")));
+        calls.add(call);
+
+        call.whenComplete((answer, error) -> {
+            if (error != null) {
+                edit.completeExceptionally(unwrap(error));
+            } else {
+                try {
+                    edit.complete(promptSlicer.edit(slice, diffService.extractJavaCode(answer)));
+                } catch (RuntimeException e) {
+                    edit.completeExceptionally(e);
+                }
+            }
+            sendNext(slices, groups, edits, next, calls, result);
+        });
+    }
+
+    private Result merge(String javaCode, List<PromptSlicer.Slice> slices,
+                         Map<PromptSlicer.Slice, List<CodeSmell>> groups,
+                         List<CompletableFuture<PromptSlicer.Edit>> edits) {
+        List<Map<String, Object>> outcomes = new ArrayList<>();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < slices.size(); i++) {
+            Map<String, Object> outcome = new LinkedHashMap<>();
+            outcome.put("target", slices.get(i).getTargetName());
+            outcome.put("kind", slices.get(i).getKind().name());
+            outcome.put("smells", groups.get(slices.get(i)).stream().map(CodeSmell::getType).toList());
+            outcomes.add(outcome);
+            order.add(i);
+        }
+        // Methods before classes before the whole file, so one broad edit can't crowd out several narrow ones
+        order.sort(Comparator.comparing(i -> slices.get(i).getKind()));
+
+        List<PromptSlicer.Edit> accepted = new ArrayList<>();
+        List<String> acceptedTargets = new ArrayList<>();
+        String merged = javaCode;
+        RuntimeException firstFailure = null;
+
+        for (int i : order) {
+            Map<String, Object> outcome = outcomes.get(i);
+            PromptSlicer.Edit edit;
+            try {
+                edit = edits.get(i).join();
+            } catch (CompletionException | CancellationException e) {
+                RuntimeException failure = unwrap(e);
+                outcome.put("status", "failed");
+                outcome.put("error", failure.getMessage());
+                if (firstFailure == null) {
+                    firstFailure = failure;
+                }
+                continue;
+            }
+
+            Optional<String> conflict = Optional.empty();
+            for (int j = 0; j < accepted.size() && conflict.isEmpty(); j++) {
+                if (accepted.get(j).overlaps(edit)) {
+                    conflict = Optional.of("Overlaps the change to " + describe(acceptedTargets.get(j)));
+                }
+            }
+            String candidate = null;
+            if (conflict.isEmpty()) {
+                List<PromptSlicer.Edit> withEdit = new ArrayList<>(accepted);
+                withEdit.add(edit);
+                candidate = promptSlicer.apply(javaCode, withEdit);
+                conflict = check(candidate);
+            }
+
+            if (conflict.isPresent()) {
+                outcome.put("status", "conflict");
+                outcome.put("error", conflict.get());
+            } else {
+                outcome.put("status", "applied");
+                accepted.add(edit);
+                acceptedTargets.add(slices.get(i).getTargetName());
+                merged = candidate;
+            }
+        }
+
+        if (accepted.isEmpty() && firstFailure != null) {
+            throw firstFailure;
+        }
+        return new Result(merged, diffService.generateDiff(javaCode, merged), outcomes, accepted.size());
+    }
+
+    /**
+     * Why the merged file is broken, if it is: it doesn't parse, or a type declares the same
+     * field or method twice.
+     */
+    private Optional<String> check(String code) {
+        Optional<CompilationUnit> parsed = parserService.parseForEditing(code);
+        if (parsed.isEmpty()) {
+            return Optional.of("The merged code does not parse");
+        }
+        for (TypeDeclaration<?> type : parsed.get().findAll(TypeDeclaration.class)) {
+            Set<String> declared = new HashSet<>();
+            for (BodyDeclaration<?> member : type.getMembers()) {
+                List<String> names = new ArrayList<>();
+                if (member instanceof FieldDeclaration field) {
+                    field.getVariables().stream().map(VariableDeclarator::getNameAsString).forEach(names::add);
+                } else if (member instanceof CallableDeclaration<?> callable) {
+                    names.add(callable.getSignature().asString());
+                }
+                for (String name : names) {
+                    if (!declared.add(name)) {
+                        return Optional.of(type.getNameAsString() + " would declare " + name + " twice");
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static String types(List<CodeSmell> group) {
+        return group.stream().map(CodeSmell::getType).distinct().collect(Collectors.joining(", "));
+    }
+
+    private static String describe(String target) {
+        return target == null ? "the whole file" : target;
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new LlmException.Upstream("LLM call failed: " + cause.getMessage(), 0, cause);
+    }
+
+    /**
+     * The merged file and how each group of smells fared.
+     */
+    public static final class Result {
+
+        private final String refactoredCode;
+        private final String diff;
+        private final List<Map<String, Object>> groups;
+        private final int applied;
+
+        private Result(String refactoredCode, String diff, List<Map<String, Object>> groups, int applied) {
+            this.refactoredCode = refactoredCode;
+            this.diff = diff;
+            this.groups = groups;
+            this.applied = applied;
+        }
+
+        public String getRefactoredCode() {
+            return refactoredCode;
+        }
+
+        public String getDiff() {
+            return diff;
+        }
+
+        /**
+         * One entry per group, in order of its first smell: target, kind, smells, and a status of
+         * {@code applied}, {@code conflict} or {@code failed} (the last two with an error).
+         */
+        public List<Map<String, Object>> getGroups() {
+            return groups;
+        }
+
+        public int getApplied() {
+            return applied;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.refactorai.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.entity.RefactorJob;
+import com.refactorai.entity.User;
+import com.refactorai.llm.LlmException;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.repository.RefactorJobRepository;
+import com.refactorai.security.AuthenticatedUser;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs /refactor as a background job, so no request thread waits on the LLM.
+ * <p>
+ * A submitted job is saved as a {@link RefactorJob} row and queued for a pool of
+ * {@code refactorai.jobs.threads} workers of its own, leaving the web server's threads to the
+ * interactive endpoints. Signed-in users' jobs are taken before anonymous ones, and single-smell
+ * jobs before {@code mode=all} ones; jobs of the same priority run in submission order. At most
+ * {@code refactorai.jobs.queue-capacity} jobs wait at once, beyond which submissions are refused.
+ * Every state change is written to the database before it is announced, and jobs still queued or
+ * running when the application stopped are queued again when it starts.
+ */
+@Service
+public class RefactorJobService {
+
+    private final RefactorJobRepository jobRepository;
+    private final AnalysisService analysisService;
+    private final AnalysisHistoryService analysisHistoryService;
+    private final RefactorService refactorService;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor workers;
+    private final int queueCapacity;
+    private final long streamTimeoutMs;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    public RefactorJobService(
+            RefactorJobRepository jobRepository,
+            AnalysisService analysisService,
+            AnalysisHistoryService analysisHistoryService,
+            RefactorService refactorService,
+            ObjectMapper objectMapper,
+            WorkerThreads workerThreads,
+            @Value("${refactorai.jobs.threads:4}") int threads,
+            @Value("${refactorai.jobs.queue-capacity:500}") int queueCapacity,
+            @Value("${refactorai.jobs.stream-timeout-ms:300000}") long streamTimeoutMs
+    ) {
+        this.jobRepository = jobRepository;
+        this.analysisService = analysisService;
+        this.analysisHistoryService = analysisHistoryService;
+        this.refactorService = refactorService;
+        this.objectMapper = objectMapper;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                workerThreads.factory("refactor-job-"));
+        this.queueCapacity = queueCapacity;
+        this.streamTimeoutMs = streamTimeoutMs;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupted jobs stay RUNNING in the database and are picked up on the next start
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queue the jobs a previous run left unfinished.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeJobs() {
+        List<RefactorJob> unfinished = jobRepository.findByStatusInOrderByPriorityDescCreatedAtAsc(
+                List.of(RefactorJob.Status.QUEUED, RefactorJob.Status.RUNNING));
+        for (RefactorJob job : unfinished) {
+            if (job.getStatus() == RefactorJob.Status.RUNNING) {
+                job.setStatus(RefactorJob.Status.QUEUED);
+                job.setStartedAt(null);
+                jobRepository.save(job);
+            }
+            queued.incrementAndGet();
+            enqueue(job);
+        }
+    }
+
+    /**
+     * Save and queue a job refactoring {@code javaCode} (every smell if {@code allSmells}, else the
+     * one at {@code smellIndex}) for the signed-in user, if any.
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public RefactorJob submit(String javaCode, AuthenticatedUser principal, boolean allSmells, int smellIndex) {
+        User user = analysisHistoryService.findUser(principal).orElse(null);
+
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            throw new RejectedExecutionException("Too many refactoring jobs waiting");
+        }
+        RefactorJob job;
+        try {
+            job = jobRepository.save(new RefactorJob(UUID.randomUUID().toString(), user, javaCode, allSmells, smellIndex,
+                    (user != null ? 2 : 0) + (allSmells ? 0 : 1)));
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+        enqueue(job);
+        return job;
+    }
+
+    /**
+     * The job, if there is one with this id that {@code principal} may see: a signed-in user's
+     * jobs only to that user, anonymous jobs to anyone holding the id.
+     */
+    public Optional<RefactorJob> find(String id, AuthenticatedUser principal) {
+        return jobRepository.findById(id).filter(job -> isVisibleTo(job, principal));
+    }
+
+    /**
+     * Events for one job: {@code status} now and when it starts, then {@code done} once it has
+     * finished, after which the stream ends. Each event carries {@link #view} of the job. Empty if
+     * there is no such job, or {@code principal} may not see it.
+     */
+    public Optional<SseEmitter> subscribe(String id, AuthenticatedUser principal) {
+        if (find(id, principal).isEmpty()) {
+            return Optional.empty();
+        }
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        List<SseEmitter> listeners = subscribers.computeIfAbsent(id, key -> new CopyOnWriteArrayList<>());
+        listeners.add(emitter);
+        emitter.onCompletion(() -> listeners.remove(emitter));
+        emitter.onTimeout(() -> listeners.remove(emitter));
+        emitter.onError(error -> listeners.remove(emitter));
+
+        // Read after registering, so a job finishing meanwhile is announced by one side or the other
+        RefactorJob job = jobRepository.findById(id).orElseThrow();
+        if (job.isFinished()) {
+            if (listeners.remove(emitter)) {
+                send(emitter, "done", view(job));
+                emitter.complete();
+            }
+        } else {
+            send(emitter, "status", view(job));
+        }
+        return Optional.of(emitter);
+    }
+
+    /**
+     * A job as the API shows it: its state, and once finished the /refactor response or the error.
+     */
+    public Map<String, Object> view(RefactorJob job) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("id", job.getId());
+        view.put("status", job.getStatus().name());
+        view.put("priority", job.getPriority());
+        view.put("mode", job.isAllSmells() ? "all" : "one");
+        if (!job.isAllSmells()) {
+            view.put("smell", job.getSmellIndex());
+        }
+        view.put("createdAt", job.getCreatedAt());
+        view.put("startedAt", job.getStartedAt());
+        view.put("finishedAt", job.getFinishedAt());
+        if (job.getResult() != null) {
+            try {
+                view.put("result", objectMapper.readTree(job.getResult()));
+            } catch (JsonProcessingException e) {
+                view.put("error", "Unreadable job result: " + e.getOriginalMessage());
+            }
+        }
+        if (job.getError() != null) {
+            view.put("error", job.getError());
+            view.put("retryable", job.getRetryable());
+        }
+        return view;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queued.get());
+        stats.put("running", workers.getActiveCount());
+        stats.put("capacity", queueCapacity);
+        // From the database, so they survive restarts and tell successes from failures
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        for (RefactorJob.Status status : RefactorJob.Status.values()) {
+            byStatus.put(status.name().toLowerCase(), jobRepository.countByStatus(status));
+        }
+        stats.put("byStatus", byStatus);
+        return stats;
+    }
+
+    private void enqueue(RefactorJob job) {
+        try {
+            workers.execute(new Task(job.getId(), job.getPriority(), sequence.getAndIncrement()));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the job is still QUEUED in the database
+            queued.decrementAndGet();
+        }
+    }
+
+    private void run(String id) {
+        queued.decrementAndGet();
+        RefactorJob job = jobRepository.findById(id).orElse(null);
+        if (job == null || job.isFinished()) {
+            return;
+        }
+
+        job.setStatus(RefactorJob.Status.RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        job = jobRepository.save(job);
+        announce(job, "status");
+
+        try {
+            job.setResult(objectMapper.writeValueAsString(process(job)));
+            job.setStatus(RefactorJob.Status.SUCCEEDED);
+        } catch (LlmException e) {
+            job.setStatus(RefactorJob.Status.FAILED);
+            job.setError(e.getMessage());
+            job.setRetryable(e.isRetryable() || e instanceof LlmException.Unavailable);
+        } catch (JsonProcessingException | RuntimeException e) {
+            job.setStatus(RefactorJob.Status.FAILED);
+            job.setError(e.getMessage());
+            job.setRetryable(false);
+        }
+        job.setFinishedAt(LocalDateTime.now());
+        job = jobRepository.save(job);
+        announce(job, "done");
+    }
+
+    /**
+     * The response /refactor (or /refactor?mode=all) gives for the job's code and smell.
+     */
+    private Map<String, Object> process(RefactorJob job) {
+        String javaCode = job.getOriginalCode();
+        Optional<List<CodeSmell>> smellsOpt = analysisService.analyze(javaCode);
+        if (smellsOpt.isEmpty()) {
+            throw new IllegalArgumentException("Failed to parse Java code");
+        }
+
+        User user = job.getUser();
+        AuthenticatedUser principal = user != null ? new AuthenticatedUser(user.getId(), user.getUsername()) : null;
+        return join(job.isAllSmells()
+                ? refactorService.refactorAll(javaCode, smellsOpt.get(), principal)
+                : refactorService.refactor(javaCode, smellsOpt.get(), job.getSmellIndex(), principal));
+    }
+
+    private static boolean isVisibleTo(RefactorJob job, AuthenticatedUser principal) {
+        User owner = job.getUser();
+        if (owner == null) {
+            return true;
+        }
+        if (principal == null) {
+            return false;
+        }
+        // Tokens issued before they carried the id only name the user
+        return principal.getId() != null
+                ? principal.getId().equals(owner.getId())
+                : principal.getUsername().equals(owner.getUsername());
+    }
+
+    private void announce(RefactorJob job, String event) {
+        boolean finished = job.isFinished();
+        List<SseEmitter> listeners = finished ? subscribers.remove(job.getId()) : subscribers.get(job.getId());
+        if (listeners == null) {
+            return;
+        }
+        Map<String, Object> view = view(job);
+        for (SseEmitter emitter : listeners) {
+            if (!finished) {
+                send(emitter, event, view);
+            } else if (listeners.remove(emitter)) {
+                // Whoever removes a listener sends it the last event, here or in subscribe
+                send(emitter, event, view);
+                emitter.complete();
+            }
+        }
+    }
+
+    private void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away or the stream timed out
+            emitter.completeWithError(e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A queued job; higher priority first, then first come first served.
+     */
+    private final class Task implements Runnable, Comparable<Task> {
+
+        private final String jobId;
+        private final int priority;
+        private final long sequence;
+
+        private Task(String jobId, int priority, long sequence) {
+            this.jobId = jobId;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                RefactorJobService.this.run(jobId);
+            } catch (RuntimeException e) {
+                System.err.println("Refactoring job " + jobId + " failed: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.refactorai.service;
+
+import com.refactorai.model.CodeSmell;
+import com.refactorai.security.AuthenticatedUser;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * The /refactor pipeline after analysis: ask the LLM for a fix of one smell (or of all of them),
+ * diff it against the original, save it to the user's history and build the response. Shared by
+ * the endpoint and the job queue, so a job's result is exactly what /refactor would have answered.
+ * <p>
+ * Cancelling a returned future cancels the LLM calls behind it.
+ */
+@Service
+public class RefactorService {
+
+    private final OpenAIService openAIService;
+    private final PromptSlicer promptSlicer;
+    private final DiffService diffService;
+    private final RefactorFanOutService refactorFanOutService;
+    private final AnalysisHistoryService analysisHistoryService;
+
+    public RefactorService(
+            OpenAIService openAIService,
+            PromptSlicer promptSlicer,
+            DiffService diffService,
+            RefactorFanOutService refactorFanOutService,
+            AnalysisHistoryService analysisHistoryService
+    ) {
+        this.openAIService = openAIService;
+        this.promptSlicer = promptSlicer;
+        this.diffService = diffService;
+        this.refactorFanOutService = refactorFanOutService;
+        this.analysisHistoryService = analysisHistoryService;
+    }
+
+    /**
+     * Fix the smell at {@code smellIndex} of {@code allSmells}, found in {@code javaCode}. Only the
+     * method (or class) around the smell is sent, and the answer is spliced back into the file.
+     *
+     * @throws IllegalArgumentException if there is no smell at {@code smellIndex}
+     */
+    public CompletableFuture<Map<String, Object>> refactor(String javaCode, List<CodeSmell> allSmells,
+                                                           int smellIndex, AuthenticatedUser principal) {
+        if (allSmells.isEmpty()) {
+            return CompletableFuture.completedFuture(noSmells(javaCode));
+        }
+        if (smellIndex < 0 || smellIndex >= allSmells.size()) {
+            throw new IllegalArgumentException("No smell " + smellIndex + "; the analysis found " + allSmells.size());
+        }
+
+        // Get AI refactoring for the chosen smell
+        CodeSmell chosenSmell = allSmells.get(smellIndex);
+        PromptSlicer.Slice slice = promptSlicer.slice(javaCode, chosenSmell);
+        CompletableFuture<String> suggestion = openAIService.getRefactoringSuggestionAsync(
+                slice,
+                chosenSmell.getType(),
+                chosenSmell.getDescription()
+        );
+
+        return cancelling(suggestion, suggestion.thenApply(aiResponse -> {
+            // Extract refactored code from AI response and put it back into the file
+            String refactoredCode = promptSlicer.splice(slice, diffService.extractJavaCode(aiResponse));
+
+            // Generate diff
+            String diff = diffService.generateDiff(javaCode, refactoredCode);
+
+            // Build response
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("originalCode", javaCode);
+            response.put("refactoredCode", refactoredCode);
+            response.put("diff", diff);
+            response.put("detectedSmells", allSmells);
+            response.put("fixedSmell", chosenSmell);
+            response.put("explanation", "AI refactored the code to fix: " + chosenSmell.getType());
+
+            // Save to database if user is authenticated
+            saveHistory(response, principal, javaCode, refactoredCode, diff, allSmells);
+            return response;
+        }));
+    }
+
+    /**
+     * Fix every smell: one LLM call per method with smells, sent concurrently, and the answers
+     * merged into one diff. Each group's outcome (applied, conflict or failed) is listed under
+     * {@code groups}.
+     */
+    public CompletableFuture<Map<String, Object>> refactorAll(String javaCode, List<CodeSmell> allSmells,
+                                                              AuthenticatedUser principal) {
+        if (allSmells.isEmpty()) {
+            return CompletableFuture.completedFuture(noSmells(javaCode));
+        }
+
+        CompletableFuture<RefactorFanOutService.Result> refactoring = refactorFanOutService.refactorAll(javaCode, allSmells);
+        return cancelling(refactoring, refactoring.thenApply(merged -> {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("originalCode", javaCode);
+            response.put("refactoredCode", merged.getRefactoredCode());
+            response.put("diff", merged.getDiff());
+            response.put("detectedSmells", allSmells);
+            response.put("groups", merged.getGroups());
+            response.put("explanation", "AI refactored " + merged.getApplied() + " of " + merged.getGroups().size()
+                    + " parts of the code to fix: " + allSmells.stream().map(CodeSmell::getType).distinct()
+                    .collect(Collectors.joining(", ")));
+
+            saveHistory(response, principal, javaCode, merged.getRefactoredCode(), merged.getDiff(), allSmells);
+            return response;
+        }));
+    }
+
+    private static Map<String, Object> noSmells(String javaCode) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("message", "No code smells detected! Code looks good.");
+        response.put("originalCode", javaCode);
+        return response;
+    }
+
+    /**
+     * {@code response}, which also cancels {@code source} when it is cancelled.
+     */
+    private static <T> CompletableFuture<T> cancelling(CompletableFuture<?> source, CompletableFuture<T> response) {
+        response.whenComplete((body, error) -> {
+            if (response.isCancelled()) {
+                source.cancel(false);
+            }
+        });
+        return response;
+    }
+
+    private void saveHistory(Map<String, Object> response, AuthenticatedUser principal, String javaCode,
+                             String refactoredCode, String diff, List<CodeSmell> allSmells) {
+        if (principal != null) {
+            try {
+                if (analysisHistoryService.save(principal, javaCode, refactoredCode, diff, allSmells).isPresent()) {
+                    response.put("saved", true);
+                }
+            } catch (Exception e) {
+                // Silently fail - analysis works even if save fails
+                System.out.println("Failed to save analysis: " + e.getMessage());
+                e.printStackTrace();
+                response.put("saved", false);
+                response.put("saveError", e.getMessage());
+            }
+        }
+    }
+}
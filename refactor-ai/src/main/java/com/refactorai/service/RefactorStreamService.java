@@ -0,0 +1,217 @@
+package com.refactorai.service;
+
+import com.refactorai.analyzer.SmellDetector;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.entity.AnalysisHistory;
+import com.refactorai.llm.LlmException;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.security.AuthenticatedUser;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the /refactor pipeline on a worker thread and reports each stage over server-sent events
+ * as soon as it finishes, so clients see the smells long before the LLM answers.
+ * <p>
+ * Events, in order: {@code parsed}, one {@code smells} per detector, {@code token} for each piece
+ * of refactored code as the LLM streams it (markdown fences already stripped), {@code diff},
+ * {@code history} (only with a bearer token) and {@code done}.
+ * A parse failure, or an LLM call that fails for good, sends {@code error} instead, and a clean
+ * file ends with {@code done} after the smells. Every event carries a JSON object.
+ * <p>
+ * When the client goes away or the stream times out, the LLM call is cancelled, which frees the
+ * worker and the call's place under the provider's limits.
+ */
+@Service
+public class RefactorStreamService {
+
+    private final AnalysisService analysisService;
+    private final SmellDetectorEngine smellDetectorEngine;
+    private final OpenAIService openAIService;
+    private final DiffService diffService;
+    private final PromptSlicer promptSlicer;
+    private final AnalysisHistoryService analysisHistoryService;
+    private final ExecutorService workers;
+    private final long timeoutMs;
+
+    public RefactorStreamService(
+            AnalysisService analysisService,
+            SmellDetectorEngine smellDetectorEngine,
+            OpenAIService openAIService,
+            DiffService diffService,
+            PromptSlicer promptSlicer,
+            AnalysisHistoryService analysisHistoryService,
+            WorkerThreads workerThreads,
+            @Value("${refactorai.stream.threads:16}") int threads,
+            @Value("${refactorai.stream.timeout-ms:120000}") long timeoutMs
+    ) {
+        this.analysisService = analysisService;
+        this.smellDetectorEngine = smellDetectorEngine;
+        this.openAIService = openAIService;
+        this.diffService = diffService;
+        this.promptSlicer = promptSlicer;
+        this.analysisHistoryService = analysisHistoryService;
+        this.workers = workerThreads.newPool("refactor-stream-", threads);
+        this.timeoutMs = timeoutMs;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public SseEmitter refactor(String javaCode, AuthenticatedUser principal) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        emitter.onCompletion(() -> closed.complete(null));
+        emitter.onTimeout(() -> closed.complete(null));
+        emitter.onError(error -> closed.complete(null));
+        try {
+            workers.execute(() -> run(javaCode, principal, emitter, closed));
+        } catch (RejectedExecutionException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    private void run(String javaCode, AuthenticatedUser principal, SseEmitter emitter, CompletableFuture<Void> closed) {
+        long start = System.nanoTime();
+        try {
+            Optional<AnalysisCache.Result> resultOpt = analysisService.analyzeByDetector(
+                    javaCode,
+                    () -> send(emitter, "parsed", Map.of("elapsedMs", elapsedMs(start)))
+            );
+
+            if (resultOpt.isEmpty()) {
+                send(emitter, "error", Map.of("error", "Failed to parse Java code"));
+                emitter.complete();
+                return;
+            }
+
+            List<SmellDetector> detectors = smellDetectorEngine.getDetectors();
+            List<List<CodeSmell>> byDetector = resultOpt.get().getByDetector();
+            for (int i = 0; i < detectors.size(); i++) {
+                Map<String, Object> event = new LinkedHashMap<>();
+                event.put("detector", detectors.get(i).getClass().getSimpleName());
+                event.put("smells", byDetector.get(i));
+                event.put("elapsedMs", elapsedMs(start));
+                send(emitter, "smells", event);
+            }
+
+            List<CodeSmell> allSmells = resultOpt.get().getSmells();
+            if (allSmells.isEmpty()) {
+                send(emitter, "done", Map.of("message", "No code smells detected! Code looks good."));
+                emitter.complete();
+                return;
+            }
+
+            // Get AI refactoring for first smell
+            CodeSmell firstSmell = allSmells.get(0);
+            PromptSlicer.Slice slice = promptSlicer.slice(javaCode, firstSmell);
+            // Clients get the code as it is generated, without the markdown around it
+            CodeFenceStripper stripper = new CodeFenceStripper();
+            CompletableFuture<String> suggestion = openAIService.streamRefactoringSuggestion(
+                    slice,
+                    firstSmell.getType(),
+                    firstSmell.getDescription(),
+                    token -> sendToken(emitter, stripper.accept(token))
+            );
+            closed.thenRun(() -> suggestion.cancel(false));
+            join(suggestion);
+            sendToken(emitter, stripper.finish());
+
+            String refactoredCode = promptSlicer.splice(slice, stripper.getCode());
+            String diff = diffService.generateDiff(javaCode, refactoredCode);
+
+            Map<String, Object> diffEvent = new LinkedHashMap<>();
+            diffEvent.put("refactoredCode", refactoredCode);
+            diffEvent.put("diff", diff);
+            diffEvent.put("explanation", "AI refactored the code to fix: " + firstSmell.getType());
+            send(emitter, "diff", diffEvent);
+
+            if (principal != null) {
+                send(emitter, "history", saveHistory(principal, javaCode, refactoredCode, diff, allSmells));
+            }
+
+            send(emitter, "done", Map.of("elapsedMs", elapsedMs(start)));
+            emitter.complete();
+        } catch (LlmException e) {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("error", e.getMessage());
+            event.put("retryable", e.isRetryable() || e instanceof LlmException.Unavailable);
+            sendError(emitter, event);
+        } catch (UncheckedIOException | CancellationException e) {
+            // The client went away; nothing left to send
+        } catch (RuntimeException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private static void join(CompletableFuture<String> suggestion) {
+        try {
+            suggestion.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void sendError(SseEmitter emitter, Map<String, Object> event) {
+        try {
+            send(emitter, "error", event);
+            emitter.complete();
+        } catch (UncheckedIOException e) {
+            // The client went away; nothing left to send
+        }
+    }
+
+    private Map<String, Object> saveHistory(AuthenticatedUser principal, String javaCode, String refactoredCode,
+                                            String diff, List<CodeSmell> smells) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        try {
+            Optional<AnalysisHistory> saved = analysisHistoryService.save(principal, javaCode, refactoredCode, diff, smells);
+            event.put("saved", saved.isPresent());
+            saved.ifPresent(history -> event.put("id", history.getId()));
+        } catch (Exception e) {
+            // Analysis works even if save fails
+            event.put("saved", false);
+            event.put("saveError", e.getMessage());
+        }
+        return event;
+    }
+
+    private void sendToken(SseEmitter emitter, String text) {
+        if (!text.isEmpty()) {
+            send(emitter, "token", Map.of("text", text));
+        }
+    }
+
+    private void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long elapsedMs(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,70 @@
+package com.refactorai.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads for the work that blocks on the LLM or the database: stream workers, job workers and
+ * the HTTP client's dispatcher.
+ * <p>
+ * With {@code spring.threads.virtual.enabled=true} on Java 21 or later (the same switch that puts
+ * Tomcat's request handling on virtual threads), these are virtual threads too, and pools that
+ * only existed to bound the number of blocked platform threads start a thread per task instead.
+ * Otherwise, including when the switch is set on an older JRE, they are ordinary platform threads.
+ */
+@Component
+public class WorkerThreads {
+
+    private static final int VIRTUAL_THREADS_SINCE = 21;
+
+    private final boolean virtual;
+
+    public WorkerThreads(@Value("${spring.threads.virtual.enabled:false}") boolean virtualRequested) {
+        this.virtual = virtualRequested && Runtime.version().feature() >= VIRTUAL_THREADS_SINCE;
+        if (virtualRequested && !virtual) {
+            System.err.println("Virtual threads need Java " + VIRTUAL_THREADS_SINCE + "; running on platform threads");
+        }
+    }
+
+    /**
+     * Platform threads only, for code built outside Spring.
+     */
+    public static WorkerThreads platform() {
+        return new WorkerThreads(false);
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Threads named {@code prefix} followed by a number.
+     */
+    public ThreadFactory factory(String prefix) {
+        return virtual
+                ? new VirtualThreadTaskExecutor(prefix).getVirtualThreadFactory()
+                : new CustomizableThreadFactory(prefix);
+    }
+
+    /**
+     * An executor for blocking tasks: {@code platformThreads} platform threads taking tasks in
+     * order, or a new virtual thread for each task.
+     */
+    public ExecutorService newPool(String prefix, int platformThreads) {
+        if (!virtual) {
+            return Executors.newFixedThreadPool(platformThreads, factory(prefix));
+        }
+        // Nothing is pooled: the thread is dropped as soon as its task ends
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), factory(prefix));
+    }
+}
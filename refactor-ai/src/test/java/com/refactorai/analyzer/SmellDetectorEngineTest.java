@@ -0,0 +1,168 @@
+package com.refactorai.analyzer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.service.ParserService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SmellDetectorEngineTest {
+
+    private static final String CODE = String.join("\n",
+            "import java.util.List;",
+            "public class Sample {",
+            "    public void run(String s) {",
+            "        if (s != null) { if (s.isEmpty()) { if (s.length() > 5) { while (true) { s += \"x\"; } } } }",
+            "        try { int x = 42; } catch (Exception e) { }",
+            "    }",
+            "}");
+
+    private final ParserService parserService = new ParserService();
+
+    @Test
+    void reportsSmellsGroupedByDetectorOrder() {
+        SmellDetectorEngine engine = new SmellDetectorEngine(allDetectors());
+
+        List<String> types = engine.detect(parse(CODE)).stream()
+                .map(CodeSmell::getType)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of(
+                "Deep Nesting",
+                "Unused Import",
+                "Magic Number",
+                "Magic Number",
+                "String Concatenation in Loop",
+                "Empty Catch Block"
+        ), types);
+    }
+
+    @Test
+    void deliversOnlyRegisteredNodeTypes() {
+        List<Node> seen = new ArrayList<>();
+        SmellDetector literals = new SmellDetector() {
+            @Override
+            public Set<Class<? extends Node>> nodeTypes() {
+                return Set.of(IntegerLiteralExpr.class);
+            }
+
+            @Override
+            public Scan newScan() {
+                return new Scan() {
+                    @Override
+                    public void enter(Node node) {
+                        seen.add(node);
+                    }
+
+                    @Override
+                    public List<CodeSmell> finish() {
+                        return List.of();
+                    }
+                };
+            }
+        };
+
+        new SmellDetectorEngine(List.of(literals)).detect(parse(CODE));
+
+        assertEquals(List.of("5", "42"), seen.stream().map(Node::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    void parallelModeMatchesSequentialOrder() {
+        StringBuilder code = new StringBuilder("import java.util.Map;\npublic class Big {\n");
+        for (int i = 0; i < 40; i++) {
+            code.append("    void m").append(i).append("(String s) {\n")
+                    .append("        for (int j = 0; j < ").append(i + 10).append("; j++) { s += \"a\" + j; }\n")
+                    .append("        Runnable r = new Runnable() { public void run() { int k = 77; } };\n")
+                    .append("        try { s.wait(500); } catch (Exception e) { }\n")
+                    .append("    }\n");
+        }
+        code.append("    static class Inner { void x() { if (true) { if (true) { if (true) { if (true) { } } } } } }\n}\n");
+
+        SmellDetectorEngine sequential = new SmellDetectorEngine(allDetectors());
+        SmellDetectorEngine parallel = new SmellDetectorEngine(allDetectors(), null, true, 1, 7, 4);
+        try {
+            List<String> expected = describe(sequential.detect(parse(code.toString())));
+            List<String> actual = describe(parallel.detect(parse(code.toString())));
+
+            assertEquals(expected, actual);
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    void reusesFindingsOfUnchangedMethodsAtTheirNewLines() {
+        String original = String.join("\n",
+                "class Sample {",
+                "    int a() { return 42; }",
+                "    int b() {",
+                "        try { return 7; } catch (Exception e) { }",
+                "    }",
+                "}");
+        String edited = String.join("\n",
+                "class Sample {",
+                "    int a() {",
+                "        return 43;",
+                "    }",
+                "",
+                "        int b() {",
+                "        try {   return 7; } catch (Exception e) { }",
+                "    }",
+                "}");
+
+        MethodResultCache cache = new MethodResultCache(100);
+        SmellDetectorEngine cached = new SmellDetectorEngine(allDetectors(), cache, false, 0, 0, 0);
+        SmellDetectorEngine uncached = new SmellDetectorEngine(allDetectors());
+
+        cached.detect(parse(original));
+        List<CodeSmell> incrementalSmells = cached.detect(parse(edited));
+        List<CodeSmell> freshSmells = uncached.detect(parse(edited));
+        List<String> incremental = describe(incrementalSmells);
+
+        assertEquals(describe(freshSmells), incremental);
+        assertEquals(positions(freshSmells), positions(incrementalSmells));
+        assertEquals(List.of(
+                "Magic Number|Line 3|Magic number '43' found. Consider extracting to a named constant. Magic numbers make code harder to understand and maintain. Use descriptive constant names like 'MAX_RETRIES' or 'TAX_RATE'.",
+                "Magic Number|Line 7|Magic number '7' found. Consider extracting to a named constant. Magic numbers make code harder to understand and maintain. Use descriptive constant names like 'MAX_RETRIES' or 'TAX_RATE'.",
+                "Empty Catch Block|Line 7|Empty catch block for 'Exception'. Silently swallowing exceptions makes debugging difficult and hides bugs. At minimum, log the exception. Consider: throw new RuntimeException(e), logger.error(), or handle the exception appropriately."
+        ), incremental);
+        assertEquals(1L, cache.stats().get("hits"));
+    }
+
+    private List<SmellDetector> allDetectors() {
+        return List.of(
+                new LongMethodDetector(parserService),
+                new DeepNestingDetector(),
+                new UnusedImportDetector(),
+                new MagicNumberDetector(),
+                new GodClassDetector(),
+                new StringConcatenationInLoopDetector(),
+                new EmptyCatchBlockDetector()
+        );
+    }
+
+    private List<String> describe(List<CodeSmell> smells) {
+        return smells.stream()
+                .map(smell -> smell.getType() + "|" + smell.getLocation() + "|" + smell.getDescription())
+                .collect(Collectors.toList());
+    }
+
+    private CompilationUnit parse(String code) {
+        return parserService.parseCode(code).orElseThrow();
+    }
+
+    private List<String> positions(List<CodeSmell> smells) {
+        return smells.stream()
+                .map(smell -> smell.getLine() + ":" + smell.getColumn() + "-" + smell.getEndLine() + ":" + smell.getEndColumn())
+                .collect(Collectors.toList());
+    }
+}
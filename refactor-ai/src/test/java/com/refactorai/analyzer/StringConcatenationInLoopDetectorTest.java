@@ -0,0 +1,41 @@
+package com.refactorai.analyzer;
+
+import com.refactorai.model.CodeSmell;
+import com.refactorai.service.ParserService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StringConcatenationInLoopDetectorTest {
+
+    private final ParserService parserService = new ParserService();
+    private final SmellDetectorEngine engine = new SmellDetectorEngine(List.of(new StringConcatenationInLoopDetector()));
+
+    @Test
+    void reportsEachExpressionOnceInNestedLoops() {
+        String code = String.join("\n",
+                "class Sample {",
+                "    String run(String s, int n) {",
+                "        for (int i = 0; i < n; i++) {",
+                "            while (n > 0) {",
+                "                do {",
+                "                    s += \"a\" + i;",
+                "                    System.out.println(\"x\" + i + n);",
+                "                    int total = i + n;",
+                "                } while (n-- > 0);",
+                "            }",
+                "        }",
+                "        return s + \"done\";",
+                "    }",
+                "}");
+
+        List<String> lines = engine.detect(parserService.parseCode(code).orElseThrow()).stream()
+                .map(CodeSmell::getLocation)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("Line 6", "Line 7"), lines);
+    }
+}
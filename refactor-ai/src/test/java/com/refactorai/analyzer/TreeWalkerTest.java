@@ -0,0 +1,98 @@
+package com.refactorai.analyzer;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import com.refactorai.service.ParserService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TreeWalkerTest {
+
+    private final ParserService parserService = new ParserService();
+
+    @Test
+    void visitsNodesInTheSameOrderAsARecursiveWalk() {
+        CompilationUnit cu = parserService.parseCode(
+                "class A { int f(int x) { if (x > 1) { return g(x + 2, new Object() { int h() { return 3; } }); } return 0; } }"
+        ).orElseThrow();
+
+        List<String> expected = new ArrayList<>();
+        recurse(cu, expected);
+
+        List<String> actual = new ArrayList<>();
+        TreeWalker walker = new TreeWalker();
+        for (int run = 0; run < 2; run++) {
+            actual.clear();
+            walker.walk(cu, new TreeWalker.Visitor() {
+                @Override
+                public void enter(Node node) {
+                    actual.add("+" + node.getClass().getSimpleName());
+                }
+
+                @Override
+                public void exit(Node node) {
+                    actual.add("-" + node.getClass().getSimpleName());
+                }
+            });
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void analyzesPathologicallyDeepExpressionsOnASmallStack() throws Exception {
+        StringBuilder code = new StringBuilder("class A {\n  String f(String s) {\n    String r = \"\";\n")
+                .append("    for (int i = 0; i < s.length(); i++) {\n      r = s");
+        for (int i = 0; i < 5000; i++) {
+            code.append(" + \"x").append(i).append('"');
+        }
+        code.append(";\n    }\n    return new StringBuilder()");
+        for (int i = 0; i < 5000; i++) {
+            code.append(".append(s)");
+        }
+        code.append(".toString();\n  }\n}\n");
+
+        SmellDetectorEngine engine = new SmellDetectorEngine(List.of(
+                new LongMethodDetector(parserService),
+                new DeepNestingDetector(),
+                new UnusedImportDetector(),
+                new MagicNumberDetector(),
+                new GodClassDetector(),
+                new StringConcatenationInLoopDetector(),
+                new EmptyCatchBlockDetector()
+        ));
+
+        AtomicReference<List<CodeSmell>> smells = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // Far smaller than a request thread's stack; a recursive walk overflows long before this depth
+        Thread thread = new Thread(null, () -> {
+            try {
+                smells.set(engine.detect(parserService.parseCode(code.toString()).orElseThrow()));
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        assertNull(failure.get());
+        assertEquals(1, smells.get().size());
+        assertEquals(SmellType.STRING_CONCATENATION_IN_LOOP, smells.get().get(0).getSmellType());
+        assertEquals(5, smells.get().get(0).getLine());
+    }
+
+    private void recurse(Node node, List<String> events) {
+        events.add("+" + node.getClass().getSimpleName());
+        for (Node child : node.getChildNodes()) {
+            recurse(child, events);
+        }
+        events.add("-" + node.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,49 @@
+package com.refactorai.analyzer;
+
+import com.refactorai.model.CodeSmell;
+import com.refactorai.service.ParserService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UnusedImportDetectorTest {
+
+    private final ParserService parserService = new ParserService();
+    private final SmellDetectorEngine engine = new SmellDetectorEngine(List.of(new UnusedImportDetector()));
+
+    @Test
+    void reportsOnlyImportsWithoutReferences() {
+        String code = String.join("\n",
+                "import java.util.List;",
+                "import java.util.Map;",
+                "import java.util.Set;",
+                "import java.util.function.Function;",
+                "import java.io.IOException;",
+                "import javax.annotation.Nullable;",
+                "import java.util.concurrent.TimeUnit;",
+                "import java.util.Objects;",
+                "import java.util.*;",
+                "import static java.lang.Math.max;",
+                "import static java.lang.Math.min;",
+                "import static java.util.concurrent.TimeUnit.SECONDS;",
+                "import static java.util.Collections.*;",
+                "/** Uses {@link Function} and {@link Map.Entry#getKey()}. */",
+                "public class Sample {",
+                "    @Nullable",
+                "    private List<String> names;",
+                "    /** @throws IOException never */",
+                "    int pick(int a, int b) { return max(a, b) + (int) SECONDS.toMillis(1); }",
+                "    String set = \"Set\"; // Objects",
+                "}");
+
+        List<String> unused = engine.detect(parserService.parseCode(code).orElseThrow()).stream()
+                .map(CodeSmell::getDescription)
+                .map(description -> description.substring(description.indexOf('\'') + 1, description.indexOf("' ")))
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("java.util.Set", "java.util.concurrent.TimeUnit", "java.util.Objects", "java.lang.Math.min"), unused);
+    }
+}
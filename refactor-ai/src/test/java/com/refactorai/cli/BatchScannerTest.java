@@ -0,0 +1,56 @@
+package com.refactorai.cli;
+
+import com.refactorai.analyzer.MagicNumberDetector;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.service.ParserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BatchScannerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void scansNestedDirectoriesInPathOrder() throws IOException {
+        write("b/B.java", "class B { int f() { return 1; } }");
+        write("a/deep/A.java", "class A { int f() { return 42; } }");
+        write("a/Broken.java", "class {");
+        write("a/notes.txt", "class C { int f() { return 42; } }");
+        write(".git/Hidden.java", "class H { int f() { return 42; } }");
+
+        // Threshold 0 maps every file, which must read the same as a heap read
+        for (long mapThreshold : new long[]{0, Long.MAX_VALUE}) {
+            BatchScanner scanner = new BatchScanner(
+                    new ParserService(),
+                    new SmellDetectorEngine(List.of(new MagicNumberDetector())),
+                    new SourceReader(mapThreshold),
+                    4
+            );
+
+            List<BatchScanner.FileResult> results = scanner.scan(root);
+
+            assertEquals(List.of("a/Broken.java", "a/deep/A.java", "b/B.java"),
+                    results.stream().map(BatchScanner.FileResult::getPath).collect(Collectors.toList()));
+            assertEquals("Failed to parse Java code", results.get(0).getError());
+            assertEquals(1, results.get(1).getSmells().size());
+            assertNull(results.get(1).getError());
+            assertEquals(0, results.get(2).getSmells().size());
+        }
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,102 @@
+package com.refactorai.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.service.ParserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Hammers /analyze from many threads with distinct sources (so the analysis cache can't hide the
+ * parser) and checks every response against a single-threaded run.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class AnalyzeConcurrencyTest {
+
+    private static final int REQUESTS = 2000;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SmellDetectorEngine smellDetectorEngine;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void parallelAnalyzeCallsMatchSequentialResults() throws Exception {
+        ParserService referenceParser = new ParserService();
+        List<String> sources = new ArrayList<>();
+        List<List<String>> expected = new ArrayList<>();
+
+        for (int i = 0; i < REQUESTS; i++) {
+            String source = source(i);
+            sources.add(source);
+            expected.add(describe(smellDetectorEngine.detect(referenceParser.parseCode(source).orElseThrow())));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<String>>> responses = new ArrayList<>();
+            for (String source : sources) {
+                responses.add(executor.submit(() -> analyze(source)));
+            }
+
+            for (int i = 0; i < REQUESTS; i++) {
+                assertEquals(expected.get(i), responses.get(i).get(), "response " + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<String> analyze(String source) throws Exception {
+        String body = mockMvc.perform(post("/api/analyze").contentType(MediaType.TEXT_PLAIN).content(source))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<Map<String, String>> smells = objectMapper.readValue(body, new TypeReference<>() {
+        });
+        return smells.stream()
+                .map(smell -> smell.get("type") + "|" + smell.get("location") + "|" + smell.get("description"))
+                .collect(Collectors.toList());
+    }
+
+    private String source(int i) {
+        StringBuilder code = new StringBuilder("import java.util.List;\n/** Sample {@link List} */\npublic class Sample" + i + " {\n");
+        for (int m = 0; m < (i % 7) + 1; m++) {
+            code.append("    int m").append(m).append("(String s) {\n")
+                    .append("        for (int j = 0; j < ").append(i + m + 3).append("; j++) { s += \"x\" + j; }\n")
+                    .append("        if (s != null) { if (s.isEmpty()) { if (j() > ").append(m).append(") { while (true) { } } } }\n")
+                    .append("        try { return ").append(i * 31 + m).append("; } catch (Exception e) { }\n")
+                    .append("        return 0;\n")
+                    .append("    }\n");
+        }
+        return code.append("    int j() { return 1; }\n}\n").toString();
+    }
+
+    private List<String> describe(List<CodeSmell> smells) {
+        return smells.stream()
+                .map(smell -> smell.getType() + "|" + smell.getLocation() + "|" + smell.getDescription())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,170 @@
+package com.refactorai.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.entity.User;
+import com.refactorai.repository.UserRepository;
+import com.refactorai.service.OpenAIService;
+import com.refactorai.service.PromptSlicer;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "refactorai.auth.bcrypt.strength=5",
+        "refactorai.auth.limit.per-username=3"
+})
+@AutoConfigureMockMvc
+class AuthenticationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockitoBean
+    private OpenAIService openAIService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void resolvesTheUserFromTheTokenWithoutADatabaseLookup() throws Exception {
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture("int f() { return 0; }"));
+        String token = signUp("grace");
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        mockMvc.perform(get("/api/test-auth").header("Authorization", "Bearer " + token))
+                .andExpect(jsonPath("$.username").value("grace"))
+                .andExpect(jsonPath("$.userId").isNumber());
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        // The user is checked to still exist, and the history row written
+        statistics.clear();
+        MvcResult result = mockMvc.perform(post("/api/refactor").header("Authorization", "Bearer " + token)
+                        .content("class A { int f() { return 42; } }"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(jsonPath("$.saved").value(true));
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        mockMvc.perform(get("/api/history").header("Authorization", "Bearer " + token))
+                .andExpect(jsonPath("$.count").value(1));
+    }
+
+    @Test
+    void treatsAValidTokenOfADeletedUserAsAnonymous() throws Exception {
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture("int f() { return 0; }"));
+        String token = signUp("ghost");
+        userRepository.delete(userRepository.findByUsername("ghost").orElseThrow());
+
+        MvcResult result = mockMvc.perform(post("/api/refactor").header("Authorization", "Bearer " + token)
+                        .content("class A { int f() { return 42; } }"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.saved").doesNotExist());
+        mockMvc.perform(post("/api/jobs").header("Authorization", "Bearer " + token)
+                        .content("class A { int f() { return 42; } }"))
+                .andExpect(status().isAccepted());
+    }
+
+    @Test
+    void treatsAnInvalidTokenAsAnonymousWhereNoUserIsNeeded() throws Exception {
+        mockMvc.perform(post("/api/analyze").header("Authorization", "Bearer not-a-token").content("class A { }"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("WWW-Authenticate", "Bearer error=\"invalid_token\""));
+    }
+
+    @Test
+    void refusesInvalidTokensWhereAUserIsNeeded() throws Exception {
+        mockMvc.perform(get("/api/history").header("Authorization", "Bearer not-a-token"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string("WWW-Authenticate", "Bearer error=\"invalid_token\""))
+                .andExpect(header().string("Access-Control-Allow-Origin", "*"))
+                .andExpect(jsonPath("$.error").value("Invalid token"));
+    }
+
+    @Test
+    void letsAnonymousRequestsThrough() throws Exception {
+        mockMvc.perform(post("/api/analyze").content("class A { }"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/history"))
+                .andExpect(jsonPath("$.error").value("Unauthorized"));
+    }
+
+    @Test
+    void rehashesAStoredPasswordAtTheConfiguredCostOnLogin() throws Exception {
+        User user = userRepository.save(new User("linus", "linus@example.com",
+                new BCryptPasswordEncoder(4).encode("secret")));
+
+        logIn("linus", "secret").andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").isString());
+
+        String stored = userRepository.findById(user.getId()).orElseThrow().getPassword();
+        assertTrue(stored.startsWith("$2a$05$"), stored);
+        logIn("linus", "secret").andExpect(status().isOk());
+    }
+
+    @Test
+    void throttlesRepeatedLoginsForOneUsername() throws Exception {
+        userRepository.save(new User("ken", "ken@example.com", new BCryptPasswordEncoder(5).encode("secret")));
+
+        for (int i = 0; i < 3; i++) {
+            logIn("ken", "guess").andExpect(status().isUnauthorized());
+        }
+        MvcResult throttled = mockMvc.perform(post("/api/auth/login").contentType("application/json")
+                        .content("{\"username\":\"ken\",\"password\":\"secret\"}"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(throttled))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "60"));
+    }
+
+    private String signUp(String username) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/auth/signup").contentType("application/json")
+                        .content("{\"username\":\"" + username + "\",\"email\":\"" + username
+                                + "@example.com\",\"password\":\"secret\"}"))
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+
+    private ResultActions logIn(String username, String password) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/auth/login").contentType("application/json")
+                        .content("{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}"))
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
@@ -0,0 +1,215 @@
+package com.refactorai.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.entity.RefactorJob;
+import com.refactorai.llm.LlmException;
+import com.refactorai.repository.RefactorJobRepository;
+import com.refactorai.service.OpenAIService;
+import com.refactorai.service.PromptSlicer;
+import com.refactorai.service.RefactorJobService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class JobControllerTest {
+
+    private static final String CODE = "class A {\n    int f() { return 42; }\n}\n";
+    private static final String ANSWER = "```java\nint f() { return ANSWER; }\n\nprivate static final int ANSWER = 42;\n```";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RefactorJobRepository jobRepository;
+
+    @Autowired
+    private RefactorJobService refactorJobService;
+
+    @MockitoBean
+    private OpenAIService openAIService;
+
+    @Test
+    void answersAtOnceAndTheResultCanBePolled() throws Exception {
+        CompletableFuture<String> suggestion = suggestion();
+
+        MvcResult submitted = mockMvc.perform(post("/api/jobs").content(CODE))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("QUEUED"))
+                .andReturn();
+        String id = objectMapper.readTree(submitted.getResponse().getContentAsString()).get("id").asText();
+        assertEquals("/api/jobs/" + id, submitted.getResponse().getHeader("Location"));
+
+        suggestion.complete(ANSWER);
+
+        JsonNode job = awaitFinished(id);
+        assertEquals("SUCCEEDED", job.get("status").asText());
+        assertEquals("class A {\n    int f() { return ANSWER; }\n\n    private static final int ANSWER = 42;\n}\n",
+                job.get("result").get("refactoredCode").asText());
+    }
+
+    @Test
+    void streamsTheResultWhenTheJobFinishes() throws Exception {
+        CompletableFuture<String> suggestion = suggestion();
+        String id = submit();
+
+        MvcResult events = mockMvc.perform(get("/api/jobs/" + id + "/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        suggestion.complete(ANSWER);
+        events.getAsyncResult(10_000);
+
+        String body = events.getResponse().getContentAsString();
+        assertTrue(body.startsWith("event:status"));
+        assertTrue(body.contains("event:done"));
+        assertTrue(body.contains("private static final int ANSWER = 42;"));
+    }
+
+    @Test
+    void givesTheSameResponseAsRefactor() throws Exception {
+        String code = "class A {\n    int f() { return 42; }\n\n    int g() { return 99; }\n}\n";
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(
+                        "int " + invocation.getArgument(0, PromptSlicer.Slice.class).getTargetName() + "() { return 0; }"));
+
+        for (String query : new String[]{"smell=1", "mode=all"}) {
+            MvcResult submitted = mockMvc.perform(post("/api/jobs?" + query).content(code))
+                    .andExpect(status().isAccepted())
+                    .andReturn();
+            JsonNode job = awaitFinished(objectMapper.readTree(submitted.getResponse().getContentAsString()).get("id").asText());
+            assertEquals("SUCCEEDED", job.get("status").asText());
+
+            MvcResult direct = mockMvc.perform(post("/api/refactor?" + query).content(code)).andReturn();
+            JsonNode expected = objectMapper.readTree(mockMvc.perform(asyncDispatch(direct))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+
+            assertEquals(expected, job.get("result"), query);
+        }
+    }
+
+    @Test
+    void showsASignedInUsersJobOnlyToThem() throws Exception {
+        suggestion();
+        String owner = signUp("job-owner");
+        String other = signUp("job-other");
+
+        MvcResult submitted = mockMvc.perform(post("/api/jobs").content(CODE).header("Authorization", "Bearer " + owner))
+                .andExpect(status().isAccepted())
+                .andReturn();
+        String id = objectMapper.readTree(submitted.getResponse().getContentAsString()).get("id").asText();
+
+        mockMvc.perform(get("/api/jobs/" + id).header("Authorization", "Bearer " + owner))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/jobs/" + id)).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/jobs/" + id).header("Authorization", "Bearer " + other))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/jobs/" + id + "/events").header("Authorization", "Bearer " + other))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void recordsFailedLlmCalls() throws Exception {
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new LlmException.Timeout("LLM call timed out", null)));
+
+        JsonNode job = awaitFinished(submit());
+
+        assertEquals("FAILED", job.get("status").asText());
+        assertEquals("LLM call timed out", job.get("error").asText());
+        assertTrue(job.get("retryable").asBoolean());
+        mockMvc.perform(get("/api/metrics"))
+                .andExpect(jsonPath("$.jobs.byStatus.failed").value((int) jobRepository.countByStatus(RefactorJob.Status.FAILED)));
+    }
+
+    @Test
+    void resumesJobsLeftUnfinishedByAPreviousRun() throws Exception {
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(ANSWER));
+        RefactorJob interrupted = new RefactorJob(UUID.randomUUID().toString(), null, CODE, false, 0, 1);
+        interrupted.setStatus(RefactorJob.Status.RUNNING);
+        jobRepository.save(interrupted);
+
+        refactorJobService.resumeJobs();
+
+        assertEquals("SUCCEEDED", awaitFinished(interrupted.getId()).get("status").asText());
+    }
+
+    @Test
+    void answersUnknownJobsWithNotFound() throws Exception {
+        mockMvc.perform(get("/api/jobs/nope")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/jobs/nope/events")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void queuesAnonymouslyWithAnInvalidToken() throws Exception {
+        mockMvc.perform(post("/api/jobs").content(CODE).header("Authorization", "Bearer not-a-token"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("WWW-Authenticate", "Bearer error=\"invalid_token\""));
+    }
+
+    private CompletableFuture<String> suggestion() {
+        CompletableFuture<String> suggestion = new CompletableFuture<>();
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenReturn(suggestion);
+        return suggestion;
+    }
+
+    private String signUp(String username) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/auth/signup").contentType("application/json")
+                        .content("{\"username\":\"" + username + "\",\"email\":\"" + username
+                                + "@example.com\",\"password\":\"secret\"}"))
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+
+    private String submit() throws Exception {
+        MvcResult submitted = mockMvc.perform(post("/api/jobs").content(CODE))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andReturn();
+        return objectMapper.readTree(submitted.getResponse().getContentAsString()).get("id").asText();
+    }
+
+    private JsonNode awaitFinished(String id) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            JsonNode job = objectMapper.readTree(mockMvc.perform(get("/api/jobs/" + id))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            String status = job.get("status").asText();
+            if (status.equals("SUCCEEDED") || status.equals("FAILED") || System.currentTimeMillis() > deadline) {
+                return job;
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.refactorai.controller;
+
+import com.refactorai.llm.LlmException;
+import com.refactorai.service.OpenAIService;
+import com.refactorai.service.PromptSlicer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class RefactorAsyncTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private OpenAIService openAIService;
+
+    @Test
+    void releasesTheRequestThreadUntilTheSuggestionArrives() throws Exception {
+        CompletableFuture<String> suggestion = new CompletableFuture<>();
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenReturn(suggestion);
+
+        MvcResult result = mockMvc.perform(post("/api/refactor").content("class A { int f() { return 42; } }"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertFalse(result.getRequest().getAsyncContext().getResponse().isCommitted());
+
+        // Only f() was sent, so only f() and its new constant come back
+        suggestion.complete("```java\nint f() { return ANSWER; }\n\nprivate static final int ANSWER = 42;\n```");
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.refactoredCode").value("class A { int f() { return ANSWER; }\n\nprivate static final int ANSWER = 42; }"))
+                .andExpect(jsonPath("$.explanation").value("AI refactored the code to fix: Magic Number"));
+    }
+
+    @Test
+    void fixesEverySmellInOneMergedDiff() throws Exception {
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenAnswer(invocation -> {
+                    String name = invocation.<PromptSlicer.Slice>getArgument(0).getTargetName();
+                    return CompletableFuture.completedFuture("int " + name + "() { return 0; }");
+                });
+
+        MvcResult result = mockMvc.perform(post("/api/refactor").param("mode", "all")
+                        .content("class A {\n    int f() { return 42; }\n    int g() { return 43; }\n}\n"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.refactoredCode").value("class A {\n    int f() { return 0; }\n    int g() { return 0; }\n}\n"))
+                .andExpect(jsonPath("$.groups[0].target").value("f"))
+                .andExpect(jsonPath("$.groups[1].status").value("applied"));
+    }
+
+    @Test
+    void refactorsTheChosenSmellOfAnEarlierAnalysis() throws Exception {
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenAnswer(invocation -> {
+                    String name = invocation.<PromptSlicer.Slice>getArgument(0).getTargetName();
+                    return CompletableFuture.completedFuture("int " + name + "() { return 0; }");
+                });
+
+        String analysisId = mockMvc.perform(post("/api/analyze")
+                        .content("class B {\n    int f() { return 42; }\n    int g() { return 43; }\n}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].location").value("Line 3"))
+                .andReturn().getResponse().getHeader(HelloController.ANALYSIS_ID_HEADER);
+        assertNotNull(analysisId);
+
+        // No body: the code comes from the stored analysis
+        MvcResult result = mockMvc.perform(post("/api/refactor").param("analysisId", analysisId).param("smell", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.refactoredCode").value("class B {\n    int f() { return 42; }\n    int g() { return 0; }\n}\n"))
+                .andExpect(jsonPath("$.fixedSmell.location").value("Line 3"));
+    }
+
+    @Test
+    void refusesUnknownAnalysesAndSmells() throws Exception {
+        mockMvc.perform(post("/api/refactor").param("analysisId", "expired"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.error").value("Unknown or expired analysis; send the code again"));
+        mockMvc.perform(post("/api/refactor").param("mode", "all").param("analysisId", "expired"))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(post("/api/refactor").param("smell", "5").content("class A { int f() { return 42; } }"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("No smell 5; the analysis found 1"));
+    }
+
+    @Test
+    void answersWithoutTheProviderWhenThereIsNothingToFix() throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/refactor").content("class A { }"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(jsonPath("$.message").value("No code smells detected! Code looks good."));
+    }
+
+    @Test
+    void answersFailedLlmCallsWithATypedStatus() throws Exception {
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(
+                        new LlmException.RateLimited("LLM provider rate limit reached", Duration.ofSeconds(20))));
+
+        MvcResult result = mockMvc.perform(post("/api/refactor").content("class A { int f() { return 42; } }"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "20"))
+                .andExpect(jsonPath("$.error").value("LLM provider rate limit reached"))
+                .andExpect(jsonPath("$.retryable").value(true));
+    }
+}
@@ -0,0 +1,108 @@
+package com.refactorai.controller;
+
+import com.refactorai.service.OpenAIService;
+import com.refactorai.service.PromptSlicer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class RefactorStreamTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private OpenAIService openAIService;
+
+    @Test
+    void streamsEachStageAsAnEvent() throws Exception {
+        when(openAIService.streamRefactoringSuggestion(any(PromptSlicer.Slice.class), anyString(), anyString(), any()))
+                .thenAnswer(invocation -> {
+                    Consumer<String> onToken = invocation.getArgument(3);
+                    onToken.accept("```java\nclass A { static final int ANSWER = 42; ");
+                    onToken.accept("int f() { return ANSWER; } }\n```");
+                    return CompletableFuture.completedFuture(
+                            "```java\nclass A { static final int ANSWER = 42; int f() { return ANSWER; } }\n```");
+                });
+
+        String body = stream("class A { int f() { return 42; } }");
+
+        List<String> events = eventNames(body);
+        assertEquals("parsed", events.get(0));
+        assertEquals(List.of("smells", "smells", "smells", "smells", "smells", "smells", "smells"), events.subList(1, 8));
+        assertEquals(List.of("token", "token", "diff", "done"), events.subList(8, events.size()));
+        assertTrue(body.contains("\"detector\":\"MagicNumberDetector\""));
+        assertTrue(body.contains("static final int ANSWER"));
+    }
+
+    @Test
+    void cancelsTheLlmCallWhenTheStreamTimesOut() throws Exception {
+        CompletableFuture<String> suggestion = new CompletableFuture<>();
+        CountDownLatch requested = new CountDownLatch(1);
+        when(openAIService.streamRefactoringSuggestion(any(PromptSlicer.Slice.class), anyString(), anyString(), any()))
+                .thenAnswer(invocation -> {
+                    requested.countDown();
+                    return suggestion;
+                });
+
+        MvcResult result = mockMvc.perform(post("/api/refactor/stream").content("class A { int f() { return 42; } }"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertTrue(requested.await(10, TimeUnit.SECONDS));
+
+        // What the container does when the client is gone for longer than the timeout
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        assertTrue(suggestion.isCancelled());
+    }
+
+    @Test
+    void reportsParseFailures() throws Exception {
+        assertEquals(List.of("error"), eventNames(stream("class {")));
+    }
+
+    private String stream(String code) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/refactor/stream").content(code))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(10_000);
+        return result.getResponse().getContentAsString();
+    }
+
+    private List<String> eventNames(String body) {
+        List<String> names = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (line.startsWith("event:")) {
+                names.add(line.substring("event:".length()).trim());
+            }
+        }
+        return names;
+    }
+}
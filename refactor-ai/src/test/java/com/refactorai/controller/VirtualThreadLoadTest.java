@@ -0,0 +1,226 @@
+package com.refactorai.controller;
+
+import com.refactorai.RefactorAiApplication;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Sends {@code load.requests} (default 1000) concurrent /refactor requests against an LLM stub that
+ * takes {@code load.llm-delay-ms} (default 2000) to answer, once on platform threads and, on
+ * Java 21 or later, once on virtual threads, and prints throughput, latency, peak heap and the
+ * peak number of platform threads the application held. Run with {@code mvn test -Pload}.
+ */
+@Tag("load")
+class VirtualThreadLoadTest {
+
+    private static final int REQUESTS = Integer.getInteger("load.requests", 1000);
+    private static final long LLM_DELAY_MS = Long.getLong("load.llm-delay-ms", 2000);
+
+    // Threads of the stub and the client, which aren't part of the application
+    private static final List<String> HARNESS_THREADS = List.of("MockWebServer", "load-", "HttpClient-");
+
+    private static MockWebServer llm;
+
+    @BeforeAll
+    static void startStub() throws IOException {
+        llm = new MockWebServer();
+        llm.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setHeadersDelay(LLM_DELAY_MS, TimeUnit.MILLISECONDS)
+                        .setBody("{\"choices\":[{\"message\":{\"content\":\"int f() { return 0; }\"}}]}");
+            }
+        });
+        llm.start();
+    }
+
+    @AfterAll
+    static void stopStub() throws IOException {
+        llm.shutdown();
+    }
+
+    @Test
+    void comparesPlatformAndVirtualThreads() throws Exception {
+        List<Run> runs = new ArrayList<>();
+        runs.add(run(false));
+        if (Runtime.version().feature() >= 21) {
+            runs.add(run(true));
+        } else {
+            System.out.println("Virtual threads need Java 21; measuring platform threads only");
+        }
+
+        System.out.printf("%n%d concurrent /refactor requests, LLM answering after %d ms%n", REQUESTS, LLM_DELAY_MS);
+        System.out.printf("%-9s %9s %9s %9s %9s %14s %17s%n",
+                "threads", "ok", "req/s", "p50 ms", "p99 ms", "peak heap MB", "platform threads");
+        for (Run run : runs) {
+            System.out.printf("%-9s %9d %9.1f %9d %9d %14d %17d%n", run.mode, run.succeeded, run.throughput(),
+                    run.percentile(50), run.percentile(99), run.peakHeapBytes >> 20, run.peakPlatformThreads);
+        }
+
+        for (Run run : runs) {
+            assertEquals(REQUESTS, run.succeeded, run.mode + " requests that succeeded");
+        }
+    }
+
+    private Run run(boolean virtual) throws Exception {
+        String mode = virtual ? "virtual" : "platform";
+        // Command-line arguments, so they win over the test application.properties
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(RefactorAiApplication.class).run(
+                "--server.port=0",
+                "--server.tomcat.accept-count=" + REQUESTS,
+                "--spring.threads.virtual.enabled=" + virtual,
+                "--spring.datasource.url=jdbc:h2:mem:load-" + mode + ";DB_CLOSE_DELAY=-1",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--groq.api.url=" + llm.url("/v1/chat/completions"),
+                // The stub accepts a burst of connections far slower than a real provider
+                "--groq.http.connect-timeout-ms=60000",
+                "--groq.http.max-requests=" + REQUESTS,
+                "--groq.bulkhead.max-concurrent=" + REQUESTS,
+                "--groq.rate-limit.requests-per-minute=1000000",
+                "--groq.retry.max-attempts=1",
+                "--refactorai.llm.cache.enabled=false");
+        ExecutorService clientThreads = Executors.newFixedThreadPool(4, new CustomizableThreadFactory("load-client-"));
+        Sampler sampler = new Sampler();
+        try {
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(clientThreads)
+                    .build();
+
+            System.gc();
+            sampler.start();
+            long start = System.nanoTime();
+            AtomicInteger succeeded = new AtomicInteger();
+            long[] latenciesMs = new long[REQUESTS];
+            List<CompletableFuture<?>> responses = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                int index = i;
+                long sent = System.nanoTime();
+                HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/refactor"))
+                        .timeout(Duration.ofMinutes(5))
+                        .header("Content-Type", "text/plain")
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "class Load" + i + " {\n    int f() {\n        return " + (100 + i) + ";\n    }\n}\n"))
+                        .build();
+                responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+                    latenciesMs[index] = (System.nanoTime() - sent) / 1_000_000;
+                    if (error == null && response.statusCode() == 200) {
+                        succeeded.incrementAndGet();
+                    }
+                }));
+            }
+            CompletableFuture.allOf(responses.toArray(new CompletableFuture[0]))
+                    .exceptionally(error -> null)
+                    .get(10, TimeUnit.MINUTES);
+            long elapsedNanos = System.nanoTime() - start;
+            sampler.stop();
+            return new Run(mode, succeeded.get(), elapsedNanos, latenciesMs, sampler.peakHeapBytes.get(),
+                    sampler.peakPlatformThreads.get());
+        } finally {
+            sampler.stop();
+            clientThreads.shutdownNow();
+            app.close();
+        }
+    }
+
+    /**
+     * Polls heap use and the application's platform threads while a run is in progress.
+     */
+    private static final class Sampler {
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peakHeapBytes = new AtomicLong();
+        private final AtomicInteger peakPlatformThreads = new AtomicInteger();
+        private volatile boolean running;
+        private Thread thread;
+
+        void start() {
+            running = true;
+            thread = new Thread(() -> {
+                while (running) {
+                    peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    // Virtual threads aren't listed here, only platform threads
+                    int applicationThreads = (int) Thread.getAllStackTraces().keySet().stream()
+                            .filter(thread -> HARNESS_THREADS.stream().noneMatch(thread.getName()::startsWith))
+                            .count();
+                    peakPlatformThreads.accumulateAndGet(applicationThreads, Math::max);
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "load-sampler");
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            if (thread != null) {
+                thread.join();
+            }
+        }
+    }
+
+    private static final class Run {
+
+        private final String mode;
+        private final int succeeded;
+        private final long elapsedNanos;
+        private final long[] latenciesMs;
+        private final long peakHeapBytes;
+        private final int peakPlatformThreads;
+
+        private Run(String mode, int succeeded, long elapsedNanos, long[] latenciesMs,
+                    long peakHeapBytes, int peakPlatformThreads) {
+            this.mode = mode;
+            this.succeeded = succeeded;
+            this.elapsedNanos = elapsedNanos;
+            this.latenciesMs = latenciesMs;
+            this.peakHeapBytes = peakHeapBytes;
+            this.peakPlatformThreads = peakPlatformThreads;
+        }
+
+        double throughput() {
+            return succeeded / (elapsedNanos / 1e9);
+        }
+
+        long percentile(int percentile) {
+            long[] sorted = latenciesMs.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+        }
+    }
+}
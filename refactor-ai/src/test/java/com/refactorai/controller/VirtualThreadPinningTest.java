@@ -0,0 +1,192 @@
+package com.refactorai.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.service.WorkerThreads;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives every endpoint that blocks on the LLM or the database, concurrently, with request
+ * handling on virtual threads, and fails if JFR saw one of them pinned to its carrier in our code.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.threads.virtual.enabled=true",
+        // Small enough that the disk tier is pruned during the run
+        "refactorai.llm.cache.max-disk-entries=10"
+})
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadPinningTest {
+
+    private static final int CLIENTS = 24;
+    private static final String ANSWER = "int f() {\n    return ANSWER;\n}\n\nprivate static final int ANSWER = 0;";
+
+    private static MockWebServer llm;
+
+    private static Path cacheDir;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WorkerThreads workerThreads;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @DynamicPropertySource
+    static void llmStub(DynamicPropertyRegistry registry) throws IOException {
+        llm = new MockWebServer();
+        llm.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String text = ANSWER.replace("\n", "\\n");
+                if (request.getBody().readUtf8().contains("\"stream\":true")) {
+                    return new MockResponse().setBodyDelay(50, TimeUnit.MILLISECONDS)
+                            .setBody("data: {\"choices\":[{\"delta\":{\"content\":\"" + text + "\"}}]}\n\ndata: [DONE]\n\n");
+                }
+                return new MockResponse().setBodyDelay(50, TimeUnit.MILLISECONDS)
+                        .setBody("{\"choices\":[{\"message\":{\"content\":\"" + text + "\"}}]}");
+            }
+        });
+        llm.start();
+        cacheDir = Files.createTempDirectory("llm-cache");
+        registry.add("groq.api.url", () -> llm.url("/v1/chat/completions").toString());
+        registry.add("groq.bulkhead.max-concurrent", () -> CLIENTS * 4);
+        registry.add("groq.rate-limit.requests-per-minute", () -> 100_000);
+        registry.add("refactorai.llm.cache.dir", () -> cacheDir.toString());
+    }
+
+    @AfterAll
+    static void stopStub() throws IOException {
+        llm.shutdown();
+        FileSystemUtils.deleteRecursively(cacheDir);
+    }
+
+    @Test
+    void noEndpointPinsItsCarrierThread() throws Exception {
+        assertTrue(workerThreads.isVirtual());
+        String token = objectMapper.readTree(send("/api/auth/signup",
+                "{\"username\":\"pinning\",\"email\":\"pinning@example.com\",\"password\":\"secret\"}",
+                "application/json", null).body()).get("token").asText();
+
+        Path dump = Files.createTempFile("pinning", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+            try {
+                List<Future<?>> runs = new ArrayList<>();
+                for (int i = 0; i < CLIENTS; i++) {
+                    int client = i;
+                    runs.add(clients.submit(() -> {
+                        exercise(client, token);
+                        return null;
+                    }));
+                }
+                for (Future<?> run : runs) {
+                    run.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                clients.shutdownNow();
+            }
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<String> pinnedInOurCode = RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> event.getStackTrace() != null)
+                .filter(event -> event.getStackTrace().getFrames().stream()
+                        .anyMatch(frame -> frame.getMethod().getType().getName().startsWith("com.refactorai.")))
+                .map(VirtualThreadPinningTest::describe)
+                .toList();
+        Files.deleteIfExists(dump);
+        assertEquals(List.of(), pinnedInOurCode);
+    }
+
+    /**
+     * One of each blocking call, on code no other client sends, so the LLM cache can't answer it.
+     */
+    private void exercise(int client, String token) throws Exception {
+        String code = "class Client" + client + " {\n    int f() {\n        return " + (100 + client) + ";\n    }\n}\n";
+
+        assertEquals(200, send("/api/refactor", code, "text/plain", token).statusCode());
+        assertEquals(200, send("/api/refactor?mode=all", code.replace("Client", "All"), "text/plain", token).statusCode());
+        assertTrue(send("/api/refactor/stream", code.replace("Client", "Stream"), "text/plain", token)
+                .body().contains("event:done"));
+        assertEquals(200, send("/api/history", null, null, token).statusCode());
+
+        JsonNode job = objectMapper.readTree(send("/api/jobs", code.replace("Client", "Job"), "text/plain", token).body());
+        String status = job.get("status").asText();
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!status.equals("SUCCEEDED") && !status.equals("FAILED") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            status = objectMapper.readTree(send("/api/jobs/" + job.get("id").asText(), null, null, token).body())
+                    .get("status").asText();
+        }
+        assertEquals("SUCCEEDED", status);
+    }
+
+    private HttpResponse<String> send(String path, String body, String contentType, String token) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(30));
+        if (body == null) {
+            request.GET();
+        } else {
+            request.POST(HttpRequest.BodyPublishers.ofString(body)).header("Content-Type", contentType);
+        }
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String describe(RecordedEvent event) {
+        return event.getThread().getJavaName() + " pinned for " + event.getDuration().toMillis() + "ms at\n"
+                + event.getStackTrace().getFrames().stream()
+                .map(VirtualThreadPinningTest::describe)
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return "    " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+}
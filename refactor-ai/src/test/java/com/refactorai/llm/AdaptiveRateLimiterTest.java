@@ -0,0 +1,74 @@
+package com.refactorai.llm;
+
+import okhttp3.Headers;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long now = 1_000 * SECOND;
+
+    @Test
+    void spacesRequestsOutOnceTheBucketIsEmpty() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(60, () -> now);
+
+        for (int i = 0; i < 60; i++) {
+            assertEquals(0, limiter.tryReserve(0));
+        }
+        // One token per second from here on, queued behind each other
+        assertEquals(-1, limiter.tryReserve(0));
+        assertEquals(SECOND, limiter.tryReserve(10 * SECOND), SECOND / 1000);
+        assertEquals(2 * SECOND, limiter.tryReserve(10 * SECOND), SECOND / 1000);
+
+        now += 3 * SECOND;
+        assertEquals(0, limiter.tryReserve(0));
+    }
+
+    @Test
+    void followsTheProvidersRemainingBudget() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(600, () -> now);
+
+        limiter.update(Headers.of("x-ratelimit-remaining-requests", "2", "x-ratelimit-reset-requests", "1m0s"));
+        assertEquals(0, limiter.tryReserve(0));
+        assertEquals(0, limiter.tryReserve(0));
+        assertEquals(-1, limiter.tryReserve(0));
+
+        limiter.update(Headers.of("x-ratelimit-remaining-tokens", "0", "x-ratelimit-reset-tokens", "7.5s"));
+        long wait = limiter.tryReserve(60 * SECOND);
+        assertEquals(7_500_000_000L, wait);
+    }
+
+    @Test
+    void backsOffOnRateLimitsAndRecoversOnSuccess() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(60, () -> now);
+
+        limiter.onRateLimited(Duration.ofSeconds(5));
+        assertEquals(30, limiter.getRequestsPerMinute(), 0.01);
+        assertTrue(limiter.tryReserve(10 * SECOND) >= 5 * SECOND);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(60, limiter.getRequestsPerMinute(), 0.01);
+    }
+
+    @Test
+    void parsesProviderDurations() {
+        assertEquals(Duration.ofMillis(179_560), AdaptiveRateLimiter.parseResetDuration("2m59.56s"));
+        assertEquals(Duration.ofMillis(7_660), AdaptiveRateLimiter.parseResetDuration("7.66s"));
+        assertEquals(Duration.ofMillis(450), AdaptiveRateLimiter.parseResetDuration("450ms"));
+        assertEquals(Duration.ofMinutes(62), AdaptiveRateLimiter.parseResetDuration("1h2m"));
+        assertNull(AdaptiveRateLimiter.parseResetDuration("soon"));
+
+        assertEquals(Duration.ofSeconds(30), AdaptiveRateLimiter.parseRetryAfter("30"));
+        assertNull(AdaptiveRateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+}
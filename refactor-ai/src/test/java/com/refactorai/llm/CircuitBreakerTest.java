@@ -0,0 +1,68 @@
+package com.refactorai.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long now = 1_000 * SECOND;
+
+    @Test
+    void ignoresALateSuccessFromBeforeTheCircuitOpened() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 10_000, () -> now);
+        CircuitBreaker.Permit slow = breaker.tryAcquire();
+
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        breaker.onSuccess(slow);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void letsOnlyTheTrialDecideAHalfOpenCircuit() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 10_000, () -> now);
+        CircuitBreaker.Permit slow = breaker.tryAcquire();
+        breaker.onFailure(breaker.tryAcquire());
+
+        now += 10 * SECOND;
+        CircuitBreaker.Permit trial = breaker.tryAcquire();
+        assertNotNull(trial);
+        assertTrue(trial.isTrial());
+
+        // A late failure neither reopens the circuit nor frees the trial's place
+        breaker.onFailure(slow);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+
+        breaker.onSuccess(trial);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void reopensWhenTheTrialFails() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 10_000, () -> now);
+        breaker.onFailure(breaker.tryAcquire());
+
+        now += 10 * SECOND;
+        breaker.onFailure(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+
+        now += 10 * SECOND;
+        CircuitBreaker.Permit trial = breaker.tryAcquire();
+        breaker.release(trial);
+        assertTrue(breaker.tryAcquire().isTrial());
+    }
+}
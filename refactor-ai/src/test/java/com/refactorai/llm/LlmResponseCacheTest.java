@@ -0,0 +1,141 @@
+package com.refactorai.llm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmResponseCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void normalizesWhitespaceAndCommentsButNotLiterals() {
+        assertEquals(
+                LlmResponseCache.normalize("class A { int f() { return a - -b; } }"),
+                LlmResponseCache.normalize("/** Docs */\nclass A {\n    // note\n    int f() {\n        return a - - b; /* why */\n    }\n}\n")
+        );
+        assertEquals("int x=a- -b;", LlmResponseCache.normalize("int x = a - -b;"));
+        assertNotEquals(
+                LlmResponseCache.normalize("String s = \"a  b\";"),
+                LlmResponseCache.normalize("String s = \"a b\";")
+        );
+        assertEquals("String s=\"// not a comment\";", LlmResponseCache.normalize("String s = \"// not a comment\";"));
+        assertEquals("String s=\"\"\"\n   keep  this\n\"\"\";",
+                LlmResponseCache.normalize("String s = \"\"\"\n   keep  this\n\"\"\";"));
+    }
+
+    @Test
+    void keysIncludeEveryParameter() {
+        LlmResponseCache cache = new LlmResponseCache(true, 10, "", 0);
+
+        String key = cache.key("class A {}", List.of("Magic Number", "model", 1, 0.0));
+        assertEquals(key, cache.key("class  A  { }", List.of("Magic Number", "model", 1, 0.0)));
+        assertNotEquals(key, cache.key("class A {}", List.of("Long Method", "model", 1, 0.0)));
+        assertNotEquals(key, cache.key("class A {}", List.of("Magic Number", "model", 2, 0.0)));
+        assertNotEquals(key, cache.key("class A {}", List.of("Magic Number", "model", 1, 0.7)));
+    }
+
+    @Test
+    void keepsAnswersAcrossRestartsOnDisk() {
+        AtomicInteger calls = new AtomicInteger();
+        LlmResponseCache first = new LlmResponseCache(true, 10, directory.toString(), 100);
+        String key = first.key("class A {}", List.of("Magic Number"));
+
+        assertEquals("answer", first.get(key, () -> completion(calls, "answer")).join());
+        assertEquals("answer", first.get(key, () -> completion(calls, "other")).join());
+
+        LlmResponseCache restarted = new LlmResponseCache(true, 10, directory.toString(), 100);
+        assertEquals("answer", restarted.get(key, () -> completion(calls, "other")).join());
+
+        assertEquals(1, calls.get());
+        assertEquals(1L, first.stats().get("memoryHits"));
+        assertEquals(1L, restarted.stats().get("diskHits"));
+        assertEquals(1, restarted.stats().get("diskEntries"));
+    }
+
+    @Test
+    void sharesOneProviderCallBetweenConcurrentRequests() {
+        LlmResponseCache cache = new LlmResponseCache(true, 10, "", 0);
+        CompletableFuture<String> provider = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> first = cache.get("k", () -> {
+            calls.incrementAndGet();
+            return provider;
+        });
+        CompletableFuture<String> second = cache.get("k", () -> completion(calls, "other"));
+        // Detaching one caller leaves the call running for the other
+        first.cancel(false);
+        provider.complete("answer");
+
+        assertEquals("answer", second.join());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void cancelsTheProviderCallOnceEveryCallerHasLeft() {
+        LlmResponseCache cache = new LlmResponseCache(true, 10, "", 0);
+        CompletableFuture<String> provider = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> first = cache.get("k", () -> {
+            calls.incrementAndGet();
+            return provider;
+        });
+        CompletableFuture<String> second = cache.get("k", () -> completion(calls, "other"));
+        first.cancel(false);
+        assertFalse(provider.isCancelled());
+        second.cancel(false);
+        assertTrue(provider.isCancelled());
+        assertEquals(1L, cache.stats().get("cancelledCalls"));
+
+        // The next request starts a call of its own
+        assertEquals("answer", cache.get("k", () -> completion(calls, "answer")).join());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void doesNotCacheFailures() {
+        LlmResponseCache cache = new LlmResponseCache(true, 10, directory.toString(), 100);
+        AtomicInteger calls = new AtomicInteger();
+        String key = cache.key("class A {}", List.of());
+
+        CompletableFuture<String> failed = cache.get(key, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(new LlmException.Timeout("timeout", null));
+        });
+        assertThrows(Exception.class, failed::join);
+
+        assertEquals("answer", cache.get(key, () -> completion(calls, "answer")).join());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void prunesTheOldestEntriesBeyondTheDiskLimit() {
+        LlmResponseCache cache = new LlmResponseCache(true, 1, directory.toString(), 10);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 11; i++) {
+            cache.get(cache.key("class A" + i + " {}", List.of()), () -> completion(calls, "answer")).join();
+        }
+
+        assertEquals(9, cache.stats().get("diskEntries"));
+        assertEquals(9, new LlmResponseCache(true, 1, directory.toString(), 10).stats().get("diskEntries"));
+    }
+
+    private static CompletableFuture<String> completion(AtomicInteger calls, String answer) {
+        calls.incrementAndGet();
+        return CompletableFuture.completedFuture(answer);
+    }
+}
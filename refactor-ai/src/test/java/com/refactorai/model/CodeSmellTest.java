@@ -0,0 +1,57 @@
+package com.refactorai.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CodeSmellTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void keepsTheLegacyJsonShape() throws Exception {
+        CodeSmell smell = new CodeSmell(SmellType.LONG_METHOD, 12, 5, 60, 5, "run", "49", "30");
+
+        assertEquals("{\"type\":\"Long Method\",\"location\":\"Line 12 (Method: run)\",\"severity\":\"Medium\","
+                        + "\"description\":\"Method has 49 lines, exceeds maximum of 30 lines. "
+                        + "Long methods are harder to understand and maintain. Consider extracting smaller methods.\"}",
+                objectMapper.writeValueAsString(smell));
+        assertEquals("N/A", CodeSmell.of(SmellType.PARSING_ERROR).getLocation());
+    }
+
+    @Test
+    void formatsTemplatesWithoutMessageFormatQuoting() {
+        CodeSmell smell = new CodeSmell(SmellType.MAGIC_NUMBER, 3, 20, 3, 21, null, "42");
+
+        assertEquals("Line 3", smell.getLocation());
+        assertEquals("Magic number '42' found. Consider extracting to a named constant. "
+                        + "Magic numbers make code harder to understand and maintain. "
+                        + "Use descriptive constant names like 'MAX_RETRIES' or 'TAX_RATE'.",
+                smell.getDescription());
+        assertEquals(13, smell.withPosition(13, 8, 13, 9).getLine());
+        assertEquals("Line 13", smell.withPosition(13, 8, 13, 9).getLocation());
+    }
+
+    @Test
+    void compactReportSendsEachTemplateOnce() throws Exception {
+        List<CodeSmell> smells = List.of(
+                new CodeSmell(SmellType.MAGIC_NUMBER, 3, 20, 3, 21, null, "42"),
+                new CodeSmell(SmellType.MAGIC_NUMBER, 4, 20, 4, 22, null, "100")
+        );
+
+        JsonNode json = objectMapper.valueToTree(CompactSmellReport.of(smells));
+
+        assertEquals(1, json.get("templates").size());
+        assertEquals("Magic Number", json.get("templates").get("MAGIC_NUMBER").get("type").asText());
+        assertEquals("MAGIC_NUMBER", json.get("smells").get(1).get("type").asText());
+        assertEquals(4, json.get("smells").get(1).get("line").asInt());
+        assertEquals("100", json.get("smells").get(1).get("args").get(0).asText());
+        assertFalse(json.get("smells").get(1).has("description"));
+        assertFalse(json.get("smells").get(1).has("symbol"));
+    }
+}
@@ -0,0 +1,73 @@
+package com.refactorai.security;
+
+import com.refactorai.entity.User;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "test-secret-key-that-is-long-enough-for-hs256-signing";
+
+    @Test
+    void carriesTheUserIdAndVerifiesEachTokenOnce() {
+        JwtUtil jwtUtil = jwtUtil(60_000);
+        String token = jwtUtil.generateToken(user(7L, "ada"));
+
+        AuthenticatedUser first = jwtUtil.verify(token);
+        assertEquals(7L, first.getId());
+        assertEquals("ada", first.getUsername());
+        // Served from the verified-token cache
+        assertSame(first, jwtUtil.verify(token));
+        assertEquals("ada", jwtUtil.extractUsername(token));
+    }
+
+    @Test
+    void refusesForgedAndExpiredTokens() {
+        JwtUtil jwtUtil = jwtUtil(60_000);
+        String token = jwtUtil.generateToken(user(7L, "ada"));
+        String forged = token.substring(0, token.lastIndexOf('.') + 1) + "c2lnbmF0dXJl";
+
+        assertThrows(JwtException.class, () -> jwtUtil.verify(forged));
+        assertThrows(ExpiredJwtException.class, () -> jwtUtil.verify(jwtUtil(-1_000).generateToken(user(7L, "ada"))));
+    }
+
+    @Test
+    void acceptsTokensIssuedBeforeTheyCarriedTheId() {
+        String legacy = Jwts.builder()
+                .setSubject("ada")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+
+        AuthenticatedUser user = jwtUtil(60_000).verify(legacy);
+        assertNull(user.getId());
+        assertEquals("ada", user.getUsername());
+    }
+
+    private static JwtUtil jwtUtil(long expirationMs) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "expiration", expirationMs);
+        ReflectionTestUtils.setField(jwtUtil, "maxCachedTokens", 100L);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    private static User user(Long id, String username) {
+        User user = new User(username, username + "@example.com", "hash");
+        user.setId(id);
+        return user;
+    }
+}
@@ -0,0 +1,73 @@
+package com.refactorai.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHasherTest {
+
+    @Test
+    void rehashesAMatchingPasswordStoredAtAnotherCost() throws Exception {
+        PasswordHasher hasher = new PasswordHasher(5, 1, 4, 10, 10, 60_000);
+        try {
+            String current = hasher.encode("secret").get(5, TimeUnit.SECONDS);
+            assertEquals(5, PasswordHasher.cost(current));
+            assertNull(hasher.verify("secret", current).get(5, TimeUnit.SECONDS).getRehashed());
+
+            // Both a cheaper and a dearer hash move to the configured cost
+            for (int cost : new int[]{4, 6}) {
+                String stored = new BCryptPasswordEncoder(cost).encode("secret");
+                PasswordHasher.Verification verification = hasher.verify("secret", stored).get(5, TimeUnit.SECONDS);
+                assertTrue(verification.matches());
+                assertEquals(5, PasswordHasher.cost(verification.getRehashed()));
+            }
+
+            PasswordHasher.Verification wrong = hasher.verify("guess", new BCryptPasswordEncoder(4).encode("secret"))
+                    .get(5, TimeUnit.SECONDS);
+            assertFalse(wrong.matches());
+            assertNull(wrong.getRehashed());
+            assertEquals(2L, hasher.stats().get("rehashed"));
+        } finally {
+            hasher.shutdown();
+        }
+    }
+
+    @Test
+    void refusesHashesBeyondTheQueue() {
+        // One hash running, one waiting; at cost 13 neither finishes before the third arrives
+        PasswordHasher hasher = new PasswordHasher(13, 1, 1, 10, 10, 60_000);
+        try {
+            hasher.encode("first");
+            hasher.encode("second");
+            assertThrows(RejectedExecutionException.class, () -> hasher.encode("third"));
+            assertEquals(1L, hasher.stats().get("rejectedBusy"));
+        } finally {
+            hasher.shutdown();
+        }
+    }
+
+    @Test
+    void capsAttemptsPerAddressAndPerUsername() {
+        PasswordHasher hasher = new PasswordHasher(4, 1, 1, 2, 2, 60_000);
+        try {
+            assertTrue(hasher.admit("10.0.0.1", "ada"));
+            assertTrue(hasher.admit("10.0.0.2", "ada"));
+            assertFalse(hasher.admit("10.0.0.3", "ada"));
+            // Another user from an address that still has attempts left
+            assertTrue(hasher.admit("10.0.0.1", "grace"));
+            assertFalse(hasher.admit("10.0.0.1", "linus"));
+            assertEquals(1L, hasher.stats().get("throttledAddress"));
+            assertEquals(1L, hasher.stats().get("throttledUsername"));
+        } finally {
+            hasher.shutdown();
+        }
+    }
+}
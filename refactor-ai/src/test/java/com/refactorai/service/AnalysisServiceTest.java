@@ -0,0 +1,42 @@
+package com.refactorai.service;
+
+import com.refactorai.analyzer.MagicNumberDetector;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import com.refactorai.model.CodeSmell;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisServiceTest {
+
+    private final AnalysisCache cache = new AnalysisCache(1024 * 1024);
+    private final AnalysisService service = new AnalysisService(
+            new ParserService(),
+            new SmellDetectorEngine(List.of(new MagicNumberDetector())),
+            cache
+    );
+
+    @Test
+    void servesRepeatSubmissionsFromCache() {
+        String code = "class A { int f() { return 42; } }";
+
+        List<CodeSmell> first = service.analyze(code).orElseThrow();
+        List<CodeSmell> second = service.analyze(code).orElseThrow();
+
+        assertSame(first, second);
+        assertEquals(1L, cache.stats().get("hits"));
+        assertEquals(1L, cache.stats().get("misses"));
+    }
+
+    @Test
+    void doesNotCacheUnparseableCode() {
+        assertTrue(service.analyze("class {").isEmpty());
+        assertTrue(service.analyze("class {").isEmpty());
+
+        assertEquals(0L, cache.stats().get("entries"));
+    }
+}
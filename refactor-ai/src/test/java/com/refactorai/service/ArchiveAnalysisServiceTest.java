@@ -0,0 +1,173 @@
+package com.refactorai.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.analyzer.MagicNumberDetector;
+import com.refactorai.analyzer.SmellDetectorEngine;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveAnalysisServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ArchiveAnalysisService service = new ArchiveAnalysisService(
+            new AnalysisService(
+                    new ParserService(),
+                    new SmellDetectorEngine(List.of(new MagicNumberDetector())),
+                    new AnalysisCache(1024 * 1024)),
+            objectMapper,
+            4, 2, 200
+    );
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    @Test
+    void streamsOneLinePerJavaFileFromZip() throws Exception {
+        Map<String, String> files = sampleFiles();
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                out.putArchiveEntry(new ZipArchiveEntry(file.getKey()));
+                out.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+                out.closeArchiveEntry();
+            }
+        }
+
+        assertResults(analyze(zip.toByteArray()));
+    }
+
+    @Test
+    void streamsOneLinePerJavaFileFromTarGz() throws Exception {
+        Map<String, String> files = sampleFiles();
+
+        ByteArrayOutputStream tarGz = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(tarGz))) {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                byte[] content = file.getValue().getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(content.length);
+                out.putArchiveEntry(entry);
+                out.write(content);
+                out.closeArchiveEntry();
+            }
+        }
+
+        assertResults(analyze(tarGz.toByteArray()));
+    }
+
+    @Test
+    void endsATruncatedArchiveWithAnErrorAndTheSummary() throws Exception {
+        ByteArrayOutputStream tarGz = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(tarGz))) {
+            for (Map.Entry<String, String> file : sampleFiles().entrySet()) {
+                byte[] content = file.getValue().getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(content.length);
+                out.putArchiveEntry(entry);
+                out.write(content);
+                out.closeArchiveEntry();
+            }
+        }
+        byte[] truncated = Arrays.copyOf(tarGz.toByteArray(), tarGz.size() / 2);
+
+        List<JsonNode> lines = analyze(truncated);
+
+        JsonNode error = lines.get(lines.size() - 2);
+        assertFalse(error.has("path"));
+        assertTrue(error.get("error").asText().startsWith("Failed to read archive: "), error.toString());
+        JsonNode summary = lines.get(lines.size() - 1).get("summary");
+        assertFalse(summary.get("complete").asBoolean());
+        assertEquals(lines.size() - 2, summary.get("files").asInt() + summary.get("skipped").asInt());
+    }
+
+    @Test
+    void endsTheScanWhenTheWorkersAreShutDown() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+            out.putArchiveEntry(new ZipArchiveEntry("src/A.java"));
+            out.write("class A { int f() { return 42; } }".getBytes(StandardCharsets.UTF_8));
+            out.closeArchiveEntry();
+        }
+        service.shutdown();
+
+        List<JsonNode> lines = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> analyze(zip.toByteArray()));
+
+        assertEquals("Analysis stopped: the server is shutting down", lines.get(0).get("error").asText());
+        assertFalse(lines.get(1).get("summary").get("complete").asBoolean());
+    }
+
+    @Test
+    void rejectsUnknownFormats() {
+        assertThrows(IllegalArgumentException.class, () -> analyze("class A {}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Map<String, String> sampleFiles() {
+        Map<String, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            files.put("src/A" + i + ".java", "class A" + i + " { int f() { return " + (100 + i) + "; } }");
+        }
+        files.put("src/Broken.java", "class {");
+        files.put("src/Huge.java", "class Huge { /*" + "x".repeat(300) + "*/ }");
+        files.put("README.md", "not java");
+        return files;
+    }
+
+    private void assertResults(List<JsonNode> lines) {
+        Map<String, String> byPath = new TreeMap<>();
+        for (JsonNode line : lines.subList(0, lines.size() - 1)) {
+            String result = line.has("error")
+                    ? line.get("error").asText()
+                    : line.get("smells").get(0).get("description").asText().split("'")[1];
+            byPath.put(line.get("path").asText(), result);
+        }
+
+        assertEquals(22, byPath.size());
+        assertEquals("107", byPath.get("src/A7.java"));
+        assertEquals("Failed to parse Java code", byPath.get("src/Broken.java"));
+        assertEquals("File exceeds 200 bytes", byPath.get("src/Huge.java"));
+
+        JsonNode summary = lines.get(lines.size() - 1).get("summary");
+        assertEquals(21, summary.get("files").asInt());
+        assertEquals(20, summary.get("smells").asInt());
+        assertEquals(1, summary.get("failed").asInt());
+        assertEquals(1, summary.get("skipped").asInt());
+        assertTrue(summary.get("complete").asBoolean());
+    }
+
+    private List<JsonNode> analyze(byte[] archive) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.analyze(new ByteArrayInputStream(archive), out);
+
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,57 @@
+package com.refactorai.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CodeFenceStripperTest {
+
+    @Test
+    void stripsFencesAndTrailingProse() {
+        assertEquals("class A {}", strip("```java\nclass A {}\n```"));
+        assertEquals("class A {}", strip("  ```\n\n  class A {}\n```  \n"));
+        assertEquals("class A {}", strip("```java\nclass A {}\n```\n\nThis extracts a constant."));
+        assertEquals("class A {}", strip("class A {}"));
+        assertEquals("class A {}", strip("\nclass A {}```"));
+        assertEquals("", strip("```java\n```"));
+    }
+
+    @Test
+    void keepsBackticksInsideTheCode() {
+        assertEquals("String s = \"```\";\nint x;", strip("```java\nString s = \"```\";\nint x;\n```"));
+        assertEquals("// see ```\nint x;", strip("```\n// see ```\nint x;\n```"));
+    }
+
+    @Test
+    void givesTheSameCodeWhateverTheChunking() {
+        String completion = "```java\npublic class A {\n\n    int f() {\n        return 42;\n    }\n}\n```\nDone.";
+        String expected = "public class A {\n\n    int f() {\n        return 42;\n    }\n}";
+
+        for (int size = 1; size <= completion.length(); size++) {
+            CodeFenceStripper stripper = new CodeFenceStripper();
+            StringBuilder emitted = new StringBuilder();
+            for (int i = 0; i < completion.length(); i += size) {
+                emitted.append(stripper.accept(completion.substring(i, Math.min(completion.length(), i + size))));
+            }
+            emitted.append(stripper.finish());
+
+            assertEquals(expected, emitted.toString(), "chunks of " + size);
+            assertEquals(expected, stripper.getCode());
+        }
+    }
+
+    @Test
+    void emitsCodeBeforeTheCompletionEnds() {
+        CodeFenceStripper stripper = new CodeFenceStripper();
+
+        assertEquals("", stripper.accept("```ja"));
+        assertEquals("class A {", stripper.accept("va\nclass A {\n"));
+        assertEquals("\n}", stripper.accept("}\n``"));
+        assertEquals("", stripper.accept("`\nmore prose"));
+        assertEquals("", stripper.finish());
+    }
+
+    private static String strip(String completion) {
+        return new DiffService().extractJavaCode(completion);
+    }
+}
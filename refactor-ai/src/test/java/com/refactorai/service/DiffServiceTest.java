@@ -0,0 +1,87 @@
+package com.refactorai.service;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.UnifiedDiffUtils;
+import com.github.difflib.patch.Patch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DiffServiceTest {
+
+    private final DiffService diffService = new DiffService();
+
+    @Test
+    void matchesMyersOutputForTypicalRewrites() throws Exception {
+        String original = source(300);
+        List<String> lines = new ArrayList<>(Arrays.asList(original.split("\n")));
+        for (int i = 5; i < lines.size(); i += 23) {
+            lines.set(i, lines.get(i).replace("System.out.println", "log.info"));
+        }
+        lines.add(40, "        // extracted helper");
+        lines.subList(120, 124).clear();
+        String refactored = String.join("\n", lines);
+
+        assertEquals(
+                diffService.generateDiff(original, refactored, DiffService.Engine.MYERS),
+                diffService.generateDiff(original, refactored, DiffService.Engine.HISTOGRAM)
+        );
+        assertEquals(diffService.generateDiff(original, original, DiffService.Engine.MYERS),
+                diffService.generateDiff(original, original));
+        assertEquals(diffService.generateDiff("", original, DiffService.Engine.MYERS),
+                diffService.generateDiff("", original));
+        assertEquals(diffService.generateDiff(original, "", DiffService.Engine.MYERS),
+                diffService.generateDiff(original, ""));
+    }
+
+    @Test
+    void producesPatchesThatRebuildTheRevisedText() throws Exception {
+        Random random = new Random(42);
+
+        for (int run = 0; run < 2000; run++) {
+            // A small alphabet makes lines repeat, which exercises anchoring and the Myers fallback
+            List<String> original = randomLines(random, random.nextInt(40), 1 + random.nextInt(6));
+            List<String> revised = randomLines(random, random.nextInt(40), 1 + random.nextInt(6));
+
+            Patch<String> patch = HistogramDiff.diff(original, revised);
+            assertEquals(revised, patch.applyTo(original));
+
+            List<String> unified = UnifiedDiffUtils.generateUnifiedDiff("a", "b", original, patch, 3);
+            assertEquals(revised, DiffUtils.patch(original, UnifiedDiffUtils.parseUnifiedDiff(unified)));
+        }
+    }
+
+    @Test
+    void selectsTheEngineFromConfiguration() {
+        String original = "a\nb\nc";
+        String refactored = "a\nx\nc";
+
+        assertEquals(new DiffService(DiffService.Engine.MYERS).generateDiff(original, refactored),
+                new DiffService(" myers ").generateDiff(original, refactored));
+        assertEquals(new DiffService(DiffService.Engine.HISTOGRAM).generateDiff(original, refactored),
+                new DiffService("histogram").generateDiff(original, refactored));
+    }
+
+    private static List<String> randomLines(Random random, int size, int alphabet) {
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lines.add("line " + random.nextInt(alphabet));
+        }
+        return lines;
+    }
+
+    private static String source(int methods) {
+        StringBuilder code = new StringBuilder("public class Example {\n");
+        for (int i = 0; i < methods; i++) {
+            code.append("    public void step").append(i).append("() {\n")
+                    .append("        System.out.println(\"step ").append(i).append("\");\n")
+                    .append("    }\n\n");
+        }
+        return code.append("}\n").toString();
+    }
+}
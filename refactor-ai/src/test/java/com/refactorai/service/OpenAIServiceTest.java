@@ -0,0 +1,376 @@
+package com.refactorai.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.refactorai.llm.CircuitBreaker;
+import com.refactorai.llm.LlmCallGuard;
+import com.refactorai.llm.LlmException;
+import com.refactorai.llm.LlmResponseCache;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the client against a local stub of the provider that can answer, stall, fail or rate limit.
+ */
+class OpenAIServiceTest {
+
+    private static final String COMPLETION = "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"class A {}\"}}]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MockWebServer server;
+    private OpenAIService service;
+    private LlmCallGuard guard;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        // No retries unless a test asks for them
+        useGuard(new LlmCallGuard(4, 5, 30_000, 600, 2000, 1, 10, 50));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        service.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    void sendsThePromptAndReusesTheConnection() throws Exception {
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        assertEquals("class A {}", service.getRefactoringSuggestion("class A { int x = 42; }", "Magic Number", "42"));
+        assertEquals("class A {}", suggestAsync().get(5, TimeUnit.SECONDS));
+
+        RecordedRequest first = server.takeRequest();
+        assertEquals("Bearer test-key", first.getHeader("Authorization"));
+        JsonNode body = objectMapper.readTree(first.getBody().readUtf8());
+        assertEquals("llama-3.3-70b-versatile", body.get("model").asText());
+        assertTrue(body.get("messages").get(1).get("content").asText().contains("int x = 42"));
+
+        // Second request on the same keep-alive connection
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    void sendsOnlyTheSlicedMethodWithABudgetSizedForIt() throws Exception {
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+        String code = "class A {\n    int f() { return 42; }\n\n    void g() { System.out.println(\"unrelated\"); }\n}\n";
+        PromptSlicer.Slice slice = new PromptSlicer(new ParserService())
+                .slice(code, new CodeSmell(SmellType.MAGIC_NUMBER, 2, 25, 2, 26, null, "42"));
+
+        service.getRefactoringSuggestion(slice, "Magic Number", "42");
+
+        JsonNode body = objectMapper.readTree(server.takeRequest().getBody().readUtf8());
+        String prompt = body.get("messages").get(1).get("content").asText();
+        assertTrue(prompt.contains("int f() { return 42; }"));
+        assertTrue(prompt.contains("void g();"));
+        assertFalse(prompt.contains("unrelated"));
+        assertEquals(slice.getMaxTokens(), body.get("max_tokens").asInt());
+    }
+
+    @Test
+    void doesNotHoldACallerThreadWhileTheProviderIsSlow() throws Exception {
+        server.enqueue(new MockResponse().setBody(COMPLETION).setHeadersDelay(200, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<String> suggestion = suggestAsync();
+
+        assertFalse(suggestion.isDone());
+        assertEquals("class A {}", suggestion.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void timesOutOnAStalledProvider() {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        long start = System.nanoTime();
+        assertThrows(LlmException.Timeout.class, this::suggest);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+    }
+
+    @Test
+    void enforcesTheTotalTimeoutOnATrickle() {
+        // Each chunk arrives within the read timeout, but the whole body takes longer than the call timeout
+        server.enqueue(new MockResponse().setBody(COMPLETION).throttleBody(8, 200, TimeUnit.MILLISECONDS));
+
+        long start = System.nanoTime();
+        assertThrows(LlmException.Timeout.class, this::suggest);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+    }
+
+    @Test
+    void reportsErrorStatusesDroppedConnectionsAndBadBodies() {
+        // A drop on a pooled connection is retried on a fresh one, so the drop goes first
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":\"bad model\"}"));
+        server.enqueue(new MockResponse().setBody("{\"choices\":[]}"));
+
+        LlmException.Upstream dropped = assertThrows(LlmException.Upstream.class, this::suggest);
+        assertEquals(0, dropped.getStatus());
+        assertTrue(dropped.isRetryable());
+
+        LlmException.Upstream rejected = assertThrows(LlmException.Upstream.class, this::suggest);
+        assertEquals(400, rejected.getStatus());
+        assertFalse(rejected.isRetryable());
+        assertTrue(rejected.getMessage().contains("bad model"));
+
+        assertThrows(LlmException.BadResponse.class, this::suggest);
+    }
+
+    @Test
+    void retriesServerErrorsWithBackoff() {
+        useGuard(new LlmCallGuard(4, 5, 30_000, 600, 2000, 3, 10, 50));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        assertEquals("class A {}", suggest());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        useGuard(new LlmCallGuard(4, 5, 30_000, 600, 2000, 3, 10, 50));
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        assertThrows(LlmException.Upstream.class, this::suggest);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void waitsOutRetryAfterOnRateLimits() {
+        useGuard(new LlmCallGuard(4, 5, 30_000, 600, 5000, 2, 10, 50));
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        long start = System.nanoTime();
+        assertEquals("class A {}", suggest());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertTrue(guard.getRateLimiter().getRequestsPerMinute() < 600);
+    }
+
+    @Test
+    void answersRateLimitsAtOnceWhenRetryAfterIsTooLong() {
+        useGuard(new LlmCallGuard(4, 5, 30_000, 600, 500, 3, 10, 50));
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "60"));
+
+        LlmException.RateLimited limited = assertThrows(LlmException.RateLimited.class, this::suggest);
+        assertEquals(Duration.ofSeconds(60), limited.getRetryAfter());
+        assertEquals(1, server.getRequestCount());
+
+        // The provider said to wait a minute, so the next call doesn't reach it
+        assertThrows(LlmException.Unavailable.class, this::suggest);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void holdsRequestsWhenTheProviderReportsAnExhaustedBudget() {
+        useGuard(new LlmCallGuard(4, 5, 30_000, 600, 5000, 1, 10, 50));
+        server.enqueue(new MockResponse().setBody(COMPLETION)
+                .setHeader("x-ratelimit-remaining-requests", "0")
+                .setHeader("x-ratelimit-reset-requests", "0.8s"));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        suggest();
+        long start = System.nanoTime();
+        suggest();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(700));
+    }
+
+    @Test
+    void opensTheCircuitAfterRepeatedFailures() {
+        useGuard(new LlmCallGuard(4, 2, 30_000, 600, 2000, 1, 10, 50));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        assertThrows(LlmException.Upstream.class, this::suggest);
+        assertThrows(LlmException.Upstream.class, this::suggest);
+
+        assertEquals(CircuitBreaker.State.OPEN, guard.getCircuitBreaker().getState());
+        assertThrows(LlmException.Unavailable.class, this::suggest);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void refusesCallsBeyondTheBulkhead() throws Exception {
+        useGuard(new LlmCallGuard(1, 5, 30_000, 600, 2000, 1, 10, 50));
+        server.enqueue(new MockResponse().setBody(COMPLETION).setHeadersDelay(150, TimeUnit.MILLISECONDS));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        CompletableFuture<String> first = suggestAsync();
+        ExecutionException refused = assertThrows(ExecutionException.class, () -> suggestAsync().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(LlmException.Unavailable.class, refused.getCause());
+
+        assertEquals("class A {}", first.get(5, TimeUnit.SECONDS));
+        assertEquals("class A {}", suggest());
+    }
+
+    @Test
+    void cancellingTheFutureCancelsTheCall() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        CompletableFuture<String> suggestion = suggestAsync();
+        server.takeRequest(5, TimeUnit.SECONDS);
+        suggestion.cancel(false);
+
+        // The cancelled exchange is abandoned and its bulkhead slot returned
+        assertEquals("class A {}", suggest());
+        assertEquals(CircuitBreaker.State.CLOSED, guard.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void cancellingAStreamCancelsTheCall() throws Exception {
+        useGuard(new LlmCallGuard(1, 5, 30_000, 600, 2000, 1, 10, 50));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setBody(COMPLETION));
+
+        CompletableFuture<String> suggestion = service.streamRefactoringSuggestion(
+                PromptSlicer.Slice.wholeFile("class A { int x = 42; }"), "Magic Number", "42", token -> { });
+        server.takeRequest(5, TimeUnit.SECONDS);
+        suggestion.cancel(false);
+
+        // The only bulkhead slot is free again
+        assertEquals("class A {}", suggest());
+    }
+
+    @Test
+    void servesRepeatedRequestsFromTheCacheInDeterministicMode() throws Exception {
+        LlmResponseCache cache = new LlmResponseCache(true, 100, "", 0);
+        service.shutdown();
+        service = new OpenAIService(objectMapper, guard, cache, WorkerThreads.platform(), "test-key",
+                server.url("/v1/chat/completions").toString(), true, 1000, 300, 1500, 8, 4);
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setBody(COMPLETION));
+        }
+
+        assertEquals("class A {}", service.getRefactoringSuggestion("class A { int x = 42; }", "Magic Number", "42"));
+        assertEquals("class A {}", service.getRefactoringSuggestion("class A {\n    // answer\n    int x = 42;\n}", "Magic Number", "42"));
+        // Another smell is another question
+        assertEquals("class A {}", service.getRefactoringSuggestion("class A { int x = 42; }", "Long Method", "42"));
+        // So is another finding of the same type in the same code
+        assertEquals("class A {}", service.getRefactoringSuggestion("class A { int x = 42; int y = 7; }", "Magic Number", "42"));
+        assertEquals("class A {}", service.getRefactoringSuggestion("class A { int x = 42; int y = 7; }", "Magic Number", "7"));
+
+        JsonNode body = objectMapper.readTree(server.takeRequest().getBody().readUtf8());
+        assertEquals(0.0, body.get("temperature").asDouble());
+        assertEquals(0, body.get("seed").asInt());
+        assertEquals(4, server.getRequestCount());
+        assertEquals(1.0 / 5, (double) cache.stats().get("hitRate"), 0.001);
+    }
+
+    @Test
+    void streamsTokensAsTheProviderSendsThem() throws Exception {
+        String first = chunk("```java\nclass A {");
+        // The stub throttles the request too, so one period must fit it; padding the first event
+        // with a comment makes the pause come right after it
+        int period = 4096;
+        String padding = ": " + "x".repeat(period - first.length() - 4) + "\n\n";
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(padding + first + chunk(" int x = ANSWER; }") + chunk("\n```") + "data: [DONE]\n\n")
+                .throttleBody(period, 150, TimeUnit.MILLISECONDS));
+
+        List<String> tokens = new CopyOnWriteArrayList<>();
+        AtomicLong firstTokenAt = new AtomicLong();
+        long start = System.nanoTime();
+        String completion = service.getRefactoringSuggestion(PromptSlicer.Slice.wholeFile("class A { int x = 42; }"),
+                "Magic Number", "42", token -> {
+                    firstTokenAt.compareAndSet(0, System.nanoTime());
+                    tokens.add(token);
+                });
+        long total = System.nanoTime() - start;
+
+        assertEquals(List.of("```java\nclass A {", " int x = ANSWER; }", "\n```"), tokens);
+        assertEquals("```java\nclass A { int x = ANSWER; }\n```", completion);
+        assertTrue(firstTokenAt.get() - start < total - TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(objectMapper.readTree(server.takeRequest().getBody().readUtf8()).get("stream").asBoolean());
+    }
+
+    @Test
+    void doesNotRetryAStreamThatBrokeOffAfterItsFirstTokens() throws Exception {
+        useGuard(new LlmCallGuard(4, 5, 30_000, 600, 2000, 3, 10, 50));
+        server.enqueue(new MockResponse()
+                .setBody(chunk("class A {") + chunk(" int x; }") + "data: [DONE]\n\n")
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        server.enqueue(new MockResponse().setBody(chunk("class B {}") + "data: [DONE]\n\n"));
+
+        List<String> tokens = new CopyOnWriteArrayList<>();
+        LlmException failure = assertThrows(LlmException.class, () -> service.getRefactoringSuggestion(
+                PromptSlicer.Slice.wholeFile("class A {}"), "Magic Number", "42", tokens::add));
+
+        assertInstanceOf(LlmException.BadResponse.class, failure);
+        assertFalse(tokens.isEmpty());
+        assertFalse(tokens.contains("class B {}"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void streamsACachedAnswerInOnePiece() throws Exception {
+        LlmResponseCache cache = new LlmResponseCache(true, 100, "", 0);
+        service.shutdown();
+        service = new OpenAIService(objectMapper, guard, cache, WorkerThreads.platform(), "test-key",
+                server.url("/v1/chat/completions").toString(), true, 1000, 300, 1500, 8, 4);
+        server.enqueue(new MockResponse().setBody(chunk("class A") + chunk(" {}") + "data: [DONE]\n\n"));
+
+        PromptSlicer.Slice slice = PromptSlicer.Slice.wholeFile("class A { int x = 42; }");
+        List<String> streamed = new CopyOnWriteArrayList<>();
+        List<String> cached = new CopyOnWriteArrayList<>();
+        service.getRefactoringSuggestion(slice, "Magic Number", "42", streamed::add);
+        service.getRefactoringSuggestion(slice, "Magic Number", "42", cached::add);
+
+        assertEquals(List.of("class A", " {}"), streamed);
+        assertEquals(List.of("class A {}"), cached);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private String chunk(String content) throws IOException {
+        return "data: " + objectMapper.writeValueAsString(
+                Map.of("choices", List.of(Map.of("delta", Map.of("content", content))))) + "\n\n";
+    }
+
+    private void useGuard(LlmCallGuard callGuard) {
+        if (service != null) {
+            service.shutdown();
+        }
+        guard = callGuard;
+        service = new OpenAIService(objectMapper, guard, new LlmResponseCache(false, 0, "", 0),
+                WorkerThreads.platform(), "test-key",
+                server.url("/v1/chat/completions").toString(), false, 1000, 300, 1500, 8, 4);
+    }
+
+    private String suggest() {
+        return service.getRefactoringSuggestion("class A {}", "Magic Number", "42");
+    }
+
+    private CompletableFuture<String> suggestAsync() {
+        return service.getRefactoringSuggestionAsync("class A {}", "Magic Number", "42");
+    }
+}
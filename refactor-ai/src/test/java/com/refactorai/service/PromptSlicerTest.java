@@ -0,0 +1,156 @@
+package com.refactorai.service;
+
+import com.refactorai.llm.LlmException;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptSlicerTest {
+
+    private final PromptSlicer slicer = new PromptSlicer(new ParserService());
+
+    private static final String SOURCE = """
+            package demo;
+
+            import java.util.List;
+
+            /**
+             * Orders.
+             */
+            public class Orders {
+
+                private final List<String> ids = List.of("a");
+
+                // Untouched comment
+                public int total(int count) {
+                    int sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += i * 42;
+                    }
+                    return sum;
+                }
+
+                public  String   name() { return "orders"; }
+            }
+            """;
+
+    @Test
+    void slicesTheMethodAroundTheSmell() {
+        PromptSlicer.Slice slice = slicer.slice(SOURCE, smellAt(16, 28));
+
+        assertEquals(PromptSlicer.Kind.MEMBER, slice.getKind());
+        assertEquals("total", slice.getTargetName());
+        assertTrue(slice.getCode().startsWith("    public int total(int count) {\n"));
+        assertTrue(slice.getCode().endsWith("        return sum;\n    }\n"));
+
+        String context = slice.getContext();
+        assertTrue(context.contains("package demo;"));
+        assertTrue(context.contains("import java.util.List;"));
+        assertTrue(context.contains("public class Orders {"));
+        assertTrue(context.contains("private final List<String> ids;"));
+        assertTrue(context.contains("public String name();"));
+        assertFalse(context.contains("orders\""));
+        assertFalse(context.contains("sum +="));
+    }
+
+    @Test
+    void splicesTheAnswerBackLeavingEverythingElseAsWritten() {
+        PromptSlicer.Slice slice = slicer.slice(SOURCE, smellAt(16, 28));
+
+        String spliced = slicer.splice(slice, """
+                public int total(int count) {
+                    int sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += weight(i);
+                    }
+                    return sum;
+                }
+
+                private static int weight(int i) {
+                    return i * WEIGHT;
+                }""");
+
+        assertEquals(SOURCE.replace("""
+                        sum += i * 42;
+                """, """
+                        sum += weight(i);
+                """).replace("""
+                        return sum;
+                    }
+                """, """
+                        return sum;
+                    }
+
+                    private static int weight(int i) {
+                        return i * WEIGHT;
+                    }
+                """), spliced);
+    }
+
+    @Test
+    void acceptsAWholeFileAnswerForAMethodSlice() {
+        PromptSlicer.Slice slice = slicer.slice(SOURCE, smellAt(16, 28));
+        String answer = "package demo;\n\npublic class Orders {\n}\n";
+
+        assertEquals(answer, slicer.splice(slice, answer));
+    }
+
+    @Test
+    void slicesTheTypeForSmellsOutsideMethods() {
+        PromptSlicer.Slice slice = slicer.slice(SOURCE, smellAt(10, 5));
+        assertEquals(PromptSlicer.Kind.TYPE, slice.getKind());
+        assertEquals("Orders", slice.getTargetName());
+
+        String spliced = slicer.splice(slice, """
+                import java.util.Set;
+
+                public class Orders {
+                    private final Set<String> ids = Set.of("a");
+                }""");
+
+        assertEquals("""
+                package demo;
+
+                import java.util.List;
+                import java.util.Set;
+
+                /**
+                 * Orders.
+                 */
+                public class Orders {
+                    private final Set<String> ids = Set.of("a");
+                }
+                """, spliced);
+    }
+
+    @Test
+    void sendsTheWholeFileForSmellsOutsideTypes() {
+        assertEquals(PromptSlicer.Kind.FILE, slicer.slice(SOURCE, smellAt(3, 1)).getKind());
+        assertEquals(PromptSlicer.Kind.FILE, slicer.slice(SOURCE, CodeSmell.of(SmellType.GOD_CLASS)).getKind());
+        assertEquals(PromptSlicer.Kind.FILE, slicer.slice("class {", smellAt(1, 1)).getKind());
+    }
+
+    @Test
+    void rejectsAnswersThatDoNotFit() {
+        PromptSlicer.Slice slice = slicer.slice(SOURCE, smellAt(16, 28));
+
+        assertThrows(LlmException.BadResponse.class, () -> slicer.splice(slice, "public int total(int count) {"));
+        assertThrows(LlmException.BadResponse.class, () -> slicer.splice(slice, "private int other;"));
+    }
+
+    @Test
+    void sizesTheCompletionBudgetFromTheSlice() {
+        assertEquals(256, slicer.slice(SOURCE, smellAt(16, 28)).getMaxTokens());
+        assertEquals(8192, PromptSlicer.Slice.wholeFile("x".repeat(100_000)).getMaxTokens());
+        assertEquals(1500, PromptSlicer.Slice.wholeFile("x".repeat(3500)).getMaxTokens());
+    }
+
+    private static CodeSmell smellAt(int line, int column) {
+        return new CodeSmell(SmellType.MAGIC_NUMBER, line, column, line, column + 1, null, "42");
+    }
+}
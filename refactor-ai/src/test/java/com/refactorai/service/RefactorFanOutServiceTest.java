@@ -0,0 +1,162 @@
+package com.refactorai.service;
+
+import com.refactorai.llm.LlmException;
+import com.refactorai.model.CodeSmell;
+import com.refactorai.model.SmellType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RefactorFanOutServiceTest {
+
+    private static final String SOURCE = """
+            class Prices {
+
+                int a() {
+                    return 11;
+                }
+
+                int b() {
+                    return 12;
+                }
+
+                int c() {
+                    return 13;
+                }
+            }
+            """;
+
+    private static final long CALL_MS = 400;
+
+    private final ParserService parserService = new ParserService();
+    private final PromptSlicer promptSlicer = new PromptSlicer(parserService);
+    private final OpenAIService openAIService = mock(OpenAIService.class);
+
+    @Test
+    void callsConcurrentlyAndMergesIntoOneFile() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        answer(slice -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            String name = slice.getTargetName();
+            String constant = name.toUpperCase() + "_PRICE";
+            String answer = "int " + name + "() {\n    return " + constant + ";\n}\n\n"
+                    + "private static final int " + constant + " = " + slice.getCode().replaceAll("\\D", "") + ";";
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                return answer;
+            }, CompletableFuture.delayedExecutor(CALL_MS, TimeUnit.MILLISECONDS));
+        });
+
+        long start = System.nanoTime();
+        RefactorFanOutService.Result result = service(3).refactorAll(SOURCE, smells(3, 7, 11)).get(5, TimeUnit.SECONDS);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Close to one call, not three
+        assertTrue(elapsedMs < CALL_MS * 2, "took " + elapsedMs + "ms");
+        assertEquals(3, maxInFlight.get());
+        assertEquals(3, result.getApplied());
+        assertTrue(result.getRefactoredCode().contains("    int a() {\n        return A_PRICE;\n    }\n\n"
+                + "    private static final int A_PRICE = 11;\n"));
+        assertTrue(result.getRefactoredCode().contains("private static final int C_PRICE = 13;"));
+        assertTrue(result.getDiff().contains("+        return B_PRICE;"));
+        assertEquals(List.of("applied", "applied", "applied"),
+                result.getGroups().stream().map(group -> group.get("status")).toList());
+    }
+
+    @Test
+    void neverHasMoreCallsInFlightThanTheCap() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        answer(slice -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                return "int " + slice.getTargetName() + "() { return 0; }";
+            }, CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        });
+
+        RefactorFanOutService.Result result = service(2).refactorAll(SOURCE, smells(3, 7, 11)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, maxInFlight.get());
+        assertEquals(3, result.getApplied());
+    }
+
+    @Test
+    void reportsConflictingEditsAndKeepsTheOthers() throws Exception {
+        // a() and b() both add the same constant
+        answer(slice -> CompletableFuture.completedFuture(
+                "int " + slice.getTargetName() + "() { return PRICE; }\n\nprivate static final int PRICE = 1;"));
+
+        RefactorFanOutService.Result result = service(4).refactorAll(SOURCE, smells(3, 7)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, result.getApplied());
+        Map<String, Object> second = result.getGroups().get(1);
+        assertEquals("b", second.get("target"));
+        assertEquals("conflict", second.get("status"));
+        assertTrue(second.get("error").toString().contains("PRICE twice"));
+        assertTrue(result.getRefactoredCode().contains("int b() {\n        return 12;"));
+    }
+
+    @Test
+    void reportsAnEditOverlappingANarrowerOne() throws Exception {
+        answer(slice -> CompletableFuture.completedFuture(slice.getKind() == PromptSlicer.Kind.TYPE
+                ? "class Prices { }"
+                : "int a() { return 0; }"));
+        CodeSmell onClass = new CodeSmell(SmellType.GOD_CLASS, 1, 1, 1, 6, "Prices", "Prices", "3 methods");
+
+        RefactorFanOutService.Result result = service(4)
+                .refactorAll(SOURCE, List.of(onClass, smells(3).get(0))).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, result.getApplied());
+        assertEquals("conflict", result.getGroups().get(0).get("status"));
+        assertEquals("Overlaps the change to a", result.getGroups().get(0).get("error"));
+        assertEquals("applied", result.getGroups().get(1).get("status"));
+    }
+
+    @Test
+    void keepsPartialResultsButFailsWhenNothingCouldBeApplied() throws Exception {
+        answer(slice -> slice.getTargetName().equals("a")
+                ? CompletableFuture.completedFuture("int a() { return 0; }")
+                : CompletableFuture.failedFuture(new LlmException.Timeout("LLM call timed out", null)));
+
+        RefactorFanOutService.Result partial = service(4).refactorAll(SOURCE, smells(3, 7)).get(5, TimeUnit.SECONDS);
+        assertEquals(1, partial.getApplied());
+        assertEquals("failed", partial.getGroups().get(1).get("status"));
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> service(4).refactorAll(SOURCE, smells(7)).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(LlmException.Timeout.class, failure.getCause());
+    }
+
+    private RefactorFanOutService service(int maxConcurrent) {
+        return new RefactorFanOutService(promptSlicer, openAIService, new DiffService(), parserService, maxConcurrent);
+    }
+
+    private void answer(Function<PromptSlicer.Slice, CompletableFuture<String>> answers) {
+        when(openAIService.getRefactoringSuggestionAsync(any(PromptSlicer.Slice.class), anyString(), anyString()))
+                .thenAnswer(invocation -> answers.apply(invocation.getArgument(0)));
+    }
+
+    private static List<CodeSmell> smells(int... lines) {
+        return Arrays.stream(lines)
+                .mapToObj(line -> new CodeSmell(SmellType.MAGIC_NUMBER, line + 1, 16, line + 1, 18, null, "1" + line))
+                .toList();
+    }
+}
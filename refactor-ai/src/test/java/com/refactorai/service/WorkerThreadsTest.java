@@ -0,0 +1,59 @@
+package com.refactorai.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkerThreadsTest {
+
+    @Test
+    void namesPlatformThreadsAfterTheirPool() throws Exception {
+        ExecutorService pool = WorkerThreads.platform().newPool("worker-", 2);
+        try {
+            Thread thread = pool.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            assertEquals("worker-1", thread.getName());
+            assertFalse(isVirtual(thread));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void fallsBackToPlatformThreadsBeforeJava21() {
+        assertFalse(new WorkerThreads(true).isVirtual());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void startsAVirtualThreadPerTask() throws Exception {
+        WorkerThreads workerThreads = new WorkerThreads(true);
+        ExecutorService pool = workerThreads.newPool("worker-", 1);
+        try {
+            Thread first = pool.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            Thread second = pool.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            assertTrue(workerThreads.isVirtual());
+            assertTrue(isVirtual(first));
+            assertTrue(first.getName().startsWith("worker-"));
+            assertFalse(first == second);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Thread.isVirtual() doesn't exist before Java 21
+    private static boolean isVirtual(Thread thread) throws Exception {
+        try {
+            return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}